@@ -8,6 +8,7 @@ import { useWebSocket } from '../../../shared/hooks/useWebSocket';
 import { useMessages } from './useMessages';
 import { useMessageTranslation } from './useMessageTranslation';
 import { useUserPresence } from './useUserPresence';
+import { useChannelStore } from '../stores/channelStore';
 
 interface User { 
     userId: string; 
@@ -24,17 +25,21 @@ export function useMessageWall({ user, isAdmin }: UseMessageWallProps) {
     const messages = useMessages({ user, isAdmin });
     const translation = useMessageTranslation();
     const presence = useUserPresence();
+    const activeChannelId = useChannelStore(state => state.activeChannelId);
 
     // Combine WebSocket handlers
     const webSocketHandlers = useMemo(() => ({
+        channelId: activeChannelId || 'general',
+        userId: user?.userId,
         onMessage: messages.handleWebSocketMessage,
         onPresenceUpdate: presence.handlePresenceUpdate,
         onConnect: () => {
             console.log('WebSocket connected');
             presence.fetchOnlineCount();
         },
-        onDisconnect: () => console.log('WebSocket disconnected')
-    }), [messages.handleWebSocketMessage, presence.handlePresenceUpdate, presence.fetchOnlineCount]);
+        onDisconnect: () => console.log('WebSocket disconnected'),
+        onResyncRequired: messages.fetchMessages
+    }), [activeChannelId, user?.userId, messages.handleWebSocketMessage, messages.fetchMessages, presence.handlePresenceUpdate, presence.fetchOnlineCount]);
 
     // Connect to WebSocket
     const { isConnected } = useWebSocket(webSocketHandlers);
@@ -1,16 +1,43 @@
-import { useState, useEffect, useCallback } from 'react';
+import { useState, useEffect, useCallback, useRef } from 'react';
 import { useTranslation } from 'react-i18next';
 import { API_ENDPOINTS } from '../../../shared/constants/endpoints';
 import { STORAGE_KEYS } from '../../../shared/constants/config';
 import { useConnectionState, ConnectionState } from '../../../shared/hooks/useConnectionState';
 import { useChannelStore } from '../stores/channelStore';
 import type { Message } from '../types';
+import type { Reaction } from '../types/reaction.types';
 
 interface User {
     userId: string;
     username: string;
 }
 
+interface ReactionDelta {
+    messageId: string;
+    emoji: string;
+    userId: string;
+    username?: string;
+    delta: number;
+    count: number;
+}
+
+/**
+ * Applique un événement REACTION_DELTA (+1 / -1) à la liste des réactions d'un message
+ */
+function applyReactionDelta(reactions: Reaction[], delta: ReactionDelta): Reaction[] {
+    const existing = reactions.find(r => r.emoji === delta.emoji);
+    const users = (existing?.users || []).filter(u => u.userId !== delta.userId);
+    if (delta.delta > 0) {
+        users.push({ userId: delta.userId, username: delta.username || '', reactedAt: new Date() });
+    }
+    if (!existing) {
+        return users.length > 0 ? [...reactions, { emoji: delta.emoji, count: users.length, users }] : reactions;
+    }
+    return reactions
+        .map(r => r.emoji === delta.emoji ? { ...r, count: users.length, users } : r)
+        .filter(r => r.count > 0);
+}
+
 interface UseMessagesProps {
     user?: User | null;
     isAdmin: boolean;
@@ -30,6 +57,7 @@ export function useMessages({ user, isAdmin }: UseMessagesProps) {
     const [isGlobalMute, setIsGlobalMute] = useState(false);
     const [highlightedMessageId, setHighlightedMessageId] = useState<string | null>(null);
     const [isLoading, setIsLoading] = useState(false);
+    const allMessagesRef = useRef<Message[]>([]);
 
     // Récupérer le channel actif depuis le store
     const activeChannelId = useChannelStore(state => state.activeChannelId);
@@ -55,7 +83,7 @@ export function useMessages({ user, isAdmin }: UseMessagesProps) {
         setCurrentUserId(userId);
     }, []);
 
-    // Fetch Messages avec gestion d'erreur sans boucle - charge TOUS les messages UNE SEULE FOIS
+    // Fetch Messages avec gestion d'erreur sans boucle - charge les messages du channel actif
     const fetchMessages = useCallback(async () => {
         if (isLoading) return;
 
@@ -63,7 +91,8 @@ export function useMessages({ user, isAdmin }: UseMessagesProps) {
             setIsLoading(true);
             connectionState.setReconnecting();
 
-            const response = await fetch(API_ENDPOINTS.MESSAGES.LIST);
+            // Seuls les messages du channel affiché sont chargés ; les autres arrivent sur leur propre topic
+            const response = await fetch(API_ENDPOINTS.MESSAGES.LIST_CHANNEL(activeChannelId || 'general'));
 
             if (response.ok) {
                 const data = await response.json();
@@ -92,16 +121,16 @@ export function useMessages({ user, isAdmin }: UseMessagesProps) {
         } finally {
             setIsLoading(false);
         }
-    }, [isLoading, connectionState, t]);
+    }, [isLoading, connectionState, activeChannelId, t]);
 
-    // Initial fetch - UNE SEULE FOIS au démarrage
+    // Fetch au démarrage puis à chaque changement de channel
     useEffect(() => {
         const timer = setTimeout(() => {
             fetchMessages();
         }, 100);
 
         return () => clearTimeout(timer);
-    }, []); // eslint-disable-line react-hooks/exhaustive-deps
+    }, [activeChannelId]); // eslint-disable-line react-hooks/exhaustive-deps
 
     // Filtrer les messages par channel actif (côté client, SANS refetch)
     useEffect(() => {
@@ -236,14 +265,33 @@ export function useMessages({ user, isAdmin }: UseMessagesProps) {
         ));
     }, []);
 
+    useEffect(() => {
+        allMessagesRef.current = allMessages;
+    }, [allMessages]);
+
+    // Recharger l'état complet des réactions d'un message désynchronisé
+    const fetchReactionSnapshot = useCallback(async (messageId: string) => {
+        try {
+            const response = await fetch(API_ENDPOINTS.MESSAGES.REACTIONS(messageId));
+            if (!response.ok) return;
+            const result = await response.json();
+            updateMessageReactions(messageId, result.data || []);
+        } catch (error) {
+            console.error('Failed to resync reactions:', error);
+        }
+    }, [updateMessageReactions]);
+
     // WebSocket event handlers (basic version) avec support des channels et réactions
     const handleWebSocketMessage = useCallback((event: { type: string; payload: unknown }) => {
         try {
             switch (event.type) {
                 case 'NEW_MESSAGE': {
                     const newMessage = event.payload as Message;
+                    // Déjà présent (rejoué après une reconnexion et déjà rechargé)
+                    if (allMessagesRef.current.some(m => m.id === newMessage.id)) break;
                     // Ajouter le message à TOUS les messages
-                    setAllMessages(prev => [...prev, newMessage]);
+                    allMessagesRef.current = [...allMessagesRef.current, newMessage];
+                    setAllMessages(prev => prev.some(m => m.id === newMessage.id) ? prev : [...prev, newMessage]);
 
                     // Mettre à jour les métadonnées du channel
                     const msgChannelId = newMessage.channelId || 'general';
@@ -260,6 +308,27 @@ export function useMessages({ user, isAdmin }: UseMessagesProps) {
                 case 'CLEAR_ALL':
                     setAllMessages([]);
                     break;
+                case 'REACTION_DELTA': {
+                    // Appliquer uniquement le changement ; resynchroniser si le compteur diverge
+                    const delta = event.payload as ReactionDelta;
+                    const current = allMessagesRef.current.find(m => m.id === delta.messageId);
+                    if (!current) break;
+                    const next = applyReactionDelta(current.reactions || [], delta);
+                    const applied = next.find(r => r.emoji === delta.emoji)?.count ?? 0;
+                    // Tenir la référence à jour pour les deltas suivants d'un même lot
+                    allMessagesRef.current = allMessagesRef.current.map(msg =>
+                        msg.id === delta.messageId ? { ...msg, reactions: next } : msg
+                    );
+                    setAllMessages(prev => prev.map(msg =>
+                        msg.id === delta.messageId
+                            ? { ...msg, reactions: applyReactionDelta(msg.reactions || [], delta) }
+                            : msg
+                    ));
+                    if (applied !== delta.count) {
+                        fetchReactionSnapshot(delta.messageId);
+                    }
+                    break;
+                }
                 case 'REACTION_ADDED':
                 case 'REACTION_REMOVED':
                 case 'REACTION_UPDATED': {
@@ -276,7 +345,7 @@ export function useMessages({ user, isAdmin }: UseMessagesProps) {
         } catch (error) {
             console.error('WebSocket error:', error);
         }
-    }, [incrementMessageCount, updateLastMessageAt]);
+    }, [incrementMessageCount, updateLastMessageAt, fetchReactionSnapshot]);
 
     return {
         // State
@@ -7,11 +7,14 @@ export const API_ENDPOINTS = {
     // Messages
     MESSAGES: {
         LIST: `${API_BASE}/messages`,
+        LIST_CHANNEL: (channelId: string) => `${API_BASE}/messages?channelId=${encodeURIComponent(channelId)}`,
         ADD: `${API_BASE}/messages`,
         DELETE: (id: string) => `${API_BASE}/messages/${id}`,
         CLEAR: `${API_BASE}/messages/clear`,
         TOGGLE_MUTE: `${API_BASE}/messages/toggle-mute`,
-        IS_MUTED: `${API_BASE}/messages/is-muted`
+        IS_MUTED: `${API_BASE}/messages/is-muted`,
+        REACTIONS: (id: string) => `${API_BASE}/messages/${id}/reactions`,
+        SEARCH: (query: string) => `${API_BASE}/messages/search?q=${encodeURIComponent(query)}`
     },
 
     // Presence
@@ -4,11 +4,21 @@
  */
 
 import { useEffect, useRef, useCallback, useState } from 'react';
-import { Client, IMessage } from '@stomp/stompjs';
+import { Client, IMessage, StompSubscription } from '@stomp/stompjs';
+import { WallEventSequencer } from '../utils/wallEventSequencer';
 
 interface WebSocketMessageEvent<T = unknown> {
-    type: 'NEW_MESSAGE' | 'DELETE_MESSAGE' | 'MUTE_STATUS' | 'CLEAR_ALL';
+    type: 'NEW_MESSAGE' | 'DELETE_MESSAGE' | 'MUTE_STATUS' | 'CLEAR_ALL' | 'REACTION_UPDATED' | 'REACTION_DELTA' | 'BATCH';
     payload: T;
+    /** Numéro de séquence du journal d'événements du serveur */
+    seq?: number | null;
+}
+
+interface EventReplay {
+    logId: string;
+    latestSeq: number;
+    snapshotRequired: boolean;
+    events: WebSocketMessageEvent[];
 }
 
 interface PresenceUpdate {
@@ -17,24 +27,41 @@ interface PresenceUpdate {
 }
 
 interface UseWebSocketOptions {
+    /** Channel dont on reçoit les messages ('general' par défaut) */
+    channelId?: string;
+    /** Utilisateur connecté : ses onglets ne comptent qu'une fois dans la présence */
+    userId?: string;
     onMessage?: (event: WebSocketMessageEvent) => void;
     onPresenceUpdate?: (update: PresenceUpdate) => void;
     onConnect?: () => void;
     onDisconnect?: () => void;
+    /** Appelé quand les événements manqués ne peuvent pas être rejoués : recharger les messages */
+    onResyncRequired?: () => void;
     enabled?: boolean;
 }
 
+const CHANNEL_TOPIC_PREFIX = '/topic/messages/';
+const CONTROL_TOPIC = '/topic/wall/control';
+const REPLAY_QUEUE = '/user/queue/replay';
+const RESUME_DESTINATION = '/app/events.resume';
+
 export function useWebSocket(options: UseWebSocketOptions = {}) {
-    const { enabled = true } = options;
+    const { enabled = true, channelId = 'general', userId } = options;
     const clientRef = useRef<Client | null>(null);
+    const channelSubscriptionRef = useRef<StompSubscription | null>(null);
     const [isConnected, setIsConnected] = useState(false);
     const mountedRef = useRef(true);
 
+    // Position dans le journal d'événements du serveur, pour reprendre après une reconnexion
+    const logIdRef = useRef<string | null>(null);
+    const positionChannelRef = useRef<string | null>(null);
+
     // Use refs for callbacks to avoid reconnection on callback changes
     const onMessageRef = useRef(options.onMessage);
     const onPresenceUpdateRef = useRef(options.onPresenceUpdate);
     const onConnectRef = useRef(options.onConnect);
     const onDisconnectRef = useRef(options.onDisconnect);
+    const onResyncRequiredRef = useRef(options.onResyncRequired);
 
     // Update refs when callbacks change
     useEffect(() => {
@@ -42,7 +69,75 @@ export function useWebSocket(options: UseWebSocketOptions = {}) {
         onPresenceUpdateRef.current = options.onPresenceUpdate;
         onConnectRef.current = options.onConnect;
         onDisconnectRef.current = options.onDisconnect;
-    }, [options.onMessage, options.onPresenceUpdate, options.onConnect, options.onDisconnect]);
+        onResyncRequiredRef.current = options.onResyncRequired;
+    }, [options.onMessage, options.onPresenceUpdate, options.onConnect, options.onDisconnect, options.onResyncRequired]);
+
+    // Ignorer les événements déjà appliqués, destination par destination : chacune a sa fenêtre d'envoi
+    const sequencerRef = useRef<WallEventSequencer<WebSocketMessageEvent> | null>(null);
+    if (!sequencerRef.current) {
+        sequencerRef.current = new WallEventSequencer((event) => onMessageRef.current?.(event));
+    }
+    const sequencer = sequencerRef.current;
+
+    // Le serveur regroupe les événements d'une même fenêtre dans un BATCH
+    const dispatchMessage = useCallback((message: IMessage) => {
+        console.log('[WebSocket] Received message:', message.body);
+        try {
+            const event: WebSocketMessageEvent = JSON.parse(message.body);
+            const events = event.type === 'BATCH' ? event.payload as WebSocketMessageEvent[] : [event];
+            sequencer.receive(message.headers['destination'], events);
+        } catch (error) {
+            console.error('[WebSocket] Failed to parse message:', error);
+        }
+    }, [sequencer]);
+
+    // Réponse à une demande de reprise : rejouer les événements manqués, ou tout recharger
+    const handleReplay = useCallback((message: IMessage) => {
+        try {
+            const replay: EventReplay = JSON.parse(message.body);
+            logIdRef.current = replay.logId;
+
+            if (replay.snapshotRequired) {
+                console.log('[WebSocket] Missed events are gone, reloading messages');
+                onResyncRequiredRef.current?.();
+            }
+            sequencer.completeResume(replay.latestSeq, replay.snapshotRequired ? null : replay.events);
+        } catch (error) {
+            console.error('[WebSocket] Failed to parse replay:', error);
+            sequencer.cancelResume();
+        }
+    }, [sequencer]);
+
+    // S'abonner uniquement au channel affiché, et changer d'abonnement avec lui
+    useEffect(() => {
+        const client = clientRef.current;
+        if (!isConnected || !client?.connected) return;
+
+        channelSubscriptionRef.current = client.subscribe(CHANNEL_TOPIC_PREFIX + channelId, dispatchMessage);
+
+        // Reprendre là où on s'était arrêté sur ce channel ; un autre channel est rechargé
+        // en entier par useMessages, on ne reprend alors que le topic de contrôle
+        const channelTopic = CHANNEL_TOPIC_PREFIX + channelId;
+        const sameChannel = positionChannelRef.current === channelId;
+        positionChannelRef.current = channelId;
+        sequencer.beginResume([channelTopic, CONTROL_TOPIC], sameChannel ? [] : [channelTopic]);
+        client.publish({
+            destination: RESUME_DESTINATION,
+            body: JSON.stringify({
+                logId: logIdRef.current,
+                lastSeq: sequencer.lastSeq(channelTopic),
+                controlLastSeq: sequencer.lastSeq(CONTROL_TOPIC),
+                channelId
+            })
+        });
+
+        return () => {
+            if (client.connected) {
+                channelSubscriptionRef.current?.unsubscribe();
+            }
+            channelSubscriptionRef.current = null;
+        };
+    }, [isConnected, channelId, dispatchMessage, sequencer]);
 
     useEffect(() => {
         if (!enabled) return;
@@ -72,6 +167,7 @@ export function useWebSocket(options: UseWebSocketOptions = {}) {
                 const client = new Client({
                     brokerURL: wsUrl,
                     reconnectDelay: 5000,
+                    connectHeaders: userId ? { 'user-id': userId } : {},
                     heartbeatIncoming: 4000,
                     heartbeatOutgoing: 4000,
                     debug: (str) => {
@@ -97,16 +193,9 @@ export function useWebSocket(options: UseWebSocketOptions = {}) {
                         setIsConnected(true);
                         onConnectRef.current?.();
 
-                        // Subscribe to messages topic
-                        client.subscribe('/topic/messages', (message: IMessage) => {
-                            console.log('[WebSocket] Received message:', message.body);
-                            try {
-                                const event: WebSocketMessageEvent = JSON.parse(message.body);
-                                onMessageRef.current?.(event);
-                            } catch (error) {
-                                console.error('[WebSocket] Failed to parse message:', error);
-                            }
-                        });
+                        // Événements globaux du mur (mute, clear all) ; le channel est abonné à part
+                        client.subscribe(CONTROL_TOPIC, dispatchMessage);
+                        client.subscribe(REPLAY_QUEUE, handleReplay);
 
                         // Subscribe to presence updates
                         client.subscribe('/topic/presence', (message: IMessage) => {
@@ -122,6 +211,7 @@ export function useWebSocket(options: UseWebSocketOptions = {}) {
 
                     onDisconnect: () => {
                         console.log('[WebSocket] Disconnected');
+                        sequencer.cancelResume();
                         setIsConnected(false);
                         onDisconnectRef.current?.();
                     },
@@ -161,7 +251,7 @@ export function useWebSocket(options: UseWebSocketOptions = {}) {
                 setIsConnected(false);
             }
         };
-    }, [enabled]);
+    }, [enabled, userId, dispatchMessage, handleReplay, sequencer]);
 
     const disconnect = useCallback(() => {
         if (clientRef.current) {
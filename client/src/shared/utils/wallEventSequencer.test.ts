@@ -0,0 +1,85 @@
+import { describe, it, expect, beforeEach } from 'vitest';
+import { WallEventSequencer } from './wallEventSequencer';
+
+const CHANNEL = '/topic/messages/general';
+const CONTROL = '/topic/wall/control';
+
+interface TestEvent {
+    type: string;
+    seq?: number | null;
+}
+
+const event = (type: string, seq: number | null): TestEvent => ({ type, seq });
+
+describe('WallEventSequencer', () => {
+    let applied: string[];
+    let sequencer: WallEventSequencer<TestEvent>;
+
+    beforeEach(() => {
+        applied = [];
+        sequencer = new WallEventSequencer((e) => applied.push(`${e.type}:${e.seq}`));
+    });
+
+    it('applies interleaved destinations flushed on different windows', () => {
+        // The control frame (seq 2) is flushed before the channel frame (seq 1, 3)
+        sequencer.receive(CONTROL, [event('MUTE_STATUS', 2)]);
+        sequencer.receive(CHANNEL, [event('NEW_MESSAGE', 1), event('NEW_MESSAGE', 3)]);
+        sequencer.receive(CONTROL, [event('CLEAR_ALL', 5)]);
+        sequencer.receive(CHANNEL, [event('NEW_MESSAGE', 4)]);
+
+        expect(applied).toEqual(['MUTE_STATUS:2', 'NEW_MESSAGE:1', 'NEW_MESSAGE:3', 'CLEAR_ALL:5', 'NEW_MESSAGE:4']);
+        expect(sequencer.lastSeq(CHANNEL)).toBe(4);
+        expect(sequencer.lastSeq(CONTROL)).toBe(5);
+    });
+
+    it('ignores frames already applied on the same destination', () => {
+        sequencer.receive(CHANNEL, [event('NEW_MESSAGE', 1), event('NEW_MESSAGE', 3)]);
+        sequencer.receive(CHANNEL, [event('DELETE_MESSAGE', 3)]);
+
+        expect(applied).toEqual(['NEW_MESSAGE:1', 'NEW_MESSAGE:3']);
+    });
+
+    it('applies a replay, then only the held frames it did not contain', () => {
+        sequencer.receive(CHANNEL, [event('NEW_MESSAGE', 1)]);
+        sequencer.receive(CONTROL, [event('MUTE_STATUS', 2)]);
+        applied = [];
+
+        // Reconnect: frames arrive live while the replay is on its way
+        sequencer.beginResume([CHANNEL, CONTROL]);
+        sequencer.receive(CHANNEL, [event('NEW_MESSAGE', 4)]);
+        sequencer.receive(CONTROL, [event('CLEAR_ALL', 5)]);
+        sequencer.receive(CHANNEL, [event('NEW_MESSAGE', 6)]);
+        sequencer.completeResume(5, [event('NEW_MESSAGE', 3), event('NEW_MESSAGE', 4), event('CLEAR_ALL', 5)]);
+
+        expect(applied).toEqual(['NEW_MESSAGE:3', 'NEW_MESSAGE:4', 'CLEAR_ALL:5', 'NEW_MESSAGE:6']);
+        expect(sequencer.lastSeq(CHANNEL)).toBe(6);
+        expect(sequencer.lastSeq(CONTROL)).toBe(5);
+    });
+
+    it('applies held frames of a reloaded channel and keeps resuming the control topic', () => {
+        sequencer.receive(CHANNEL, [event('NEW_MESSAGE', 7)]);
+        sequencer.receive(CONTROL, [event('MUTE_STATUS', 2)]);
+        applied = [];
+
+        // Switch to another channel, which is reloaded rather than replayed
+        const other = '/topic/messages/other';
+        sequencer.beginResume([other, CONTROL], [other]);
+        sequencer.receive(other, [event('NEW_MESSAGE', 8)]);
+        sequencer.completeResume(8, []);
+
+        expect(applied).toEqual(['NEW_MESSAGE:8']);
+        expect(sequencer.lastSeq(other)).toBe(8);
+        expect(sequencer.lastSeq(CONTROL)).toBe(8);
+    });
+
+    it('starts over after a reload, as numbering may have restarted', () => {
+        sequencer.receive(CHANNEL, [event('NEW_MESSAGE', 40)]);
+        applied = [];
+
+        sequencer.beginResume([CHANNEL, CONTROL]);
+        sequencer.completeResume(3, null);
+        sequencer.receive(CHANNEL, [event('NEW_MESSAGE', 4)]);
+
+        expect(applied).toEqual(['NEW_MESSAGE:4']);
+    });
+});
@@ -0,0 +1,97 @@
+/**
+ * Wall Event Sequencer
+ * Applies numbered wall events once each, tracking the last sequence number per destination.
+ *
+ * The server numbers events with one sequence shared by every destination, but flushes each
+ * destination on its own window: a frame of the control topic can carry higher numbers than a
+ * channel frame sent after it. Comparing against a single last number would drop the channel events.
+ */
+
+export interface SequencedEvent {
+    seq?: number | null;
+}
+
+export class WallEventSequencer<E extends SequencedEvent> {
+    private readonly lastSeqs = new Map<string, number>();
+    // Frames received during a resume, applied after the replay
+    private pending: Array<{ destination: string; events: E[] }> | null = null;
+    // Destinations of the current resume, and those of them resumed from a known position
+    private destinations: string[] = [];
+    private resuming: string[] = [];
+
+    constructor(private readonly apply: (event: E) => void) {}
+
+    /**
+     * Last sequence number applied on a destination, or null if none.
+     */
+    lastSeq(destination: string): number | null {
+        return this.lastSeqs.get(destination) ?? null;
+    }
+
+    /**
+     * Frame received on a destination; the events of a frame are applied together.
+     */
+    receive(destination: string, events: E[]): void {
+        if (this.pending) {
+            this.pending.push({ destination, events });
+        } else {
+            this.applyFrame(destination, events);
+        }
+    }
+
+    /**
+     * Hold incoming frames until the replay of the given destinations has been applied.
+     * Destinations in `reloaded` are reloaded by the caller instead, and start over.
+     */
+    beginResume(destinations: string[], reloaded: string[] = []): void {
+        reloaded.forEach((destination) => this.lastSeqs.delete(destination));
+        this.destinations = destinations;
+        this.resuming = destinations.filter((destination) => this.lastSeqs.has(destination));
+        this.pending = [];
+    }
+
+    cancelResume(): void {
+        this.pending = null;
+        this.destinations = [];
+        this.resuming = [];
+    }
+
+    /**
+     * Apply a replay, then the frames held meanwhile. A null replay means the caller reloads
+     * everything, and the numbering may have restarted.
+     */
+    completeResume(latestSeq: number, replayed: E[] | null): void {
+        const pending = this.pending ?? [];
+        const resumed = this.resuming;
+        // After a reload, also keep a position on destinations that were not being resumed
+        const destinations = new Set([...this.destinations, ...(replayed ? [] : this.lastSeqs.keys())]);
+        this.cancelResume();
+        if (replayed) {
+            replayed.forEach(this.apply);
+            // Everything up to latestSeq on these destinations was in the replay
+            resumed.forEach((destination) => this.lastSeqs.set(destination, latestSeq));
+        } else {
+            this.lastSeqs.clear();
+        }
+        pending.forEach(({ destination, events }) => this.applyFrame(destination, events));
+        // Whatever came before latestSeq was replayed, reloaded or held: the next resume starts here
+        destinations.forEach((destination) =>
+            this.lastSeqs.set(destination, Math.max(this.lastSeqs.get(destination) ?? latestSeq, latestSeq)));
+    }
+
+    private applyFrame(destination: string, events: E[]): void {
+        const last = this.lastSeqs.get(destination);
+        let highest = last;
+        for (const event of events) {
+            if (event.seq != null) {
+                // Already applied: replayed, then received live
+                if (last != null && event.seq <= last) continue;
+                highest = Math.max(highest ?? event.seq, event.seq);
+            }
+            this.apply(event);
+        }
+        if (highest != null) {
+            this.lastSeqs.set(destination, highest);
+        }
+    }
+}
@@ -1,18 +1,23 @@
 package com.changrui.mysterious.domain.game.controller;
 
+import com.changrui.mysterious.domain.game.dto.PlayerRankDTO;
 import com.changrui.mysterious.domain.game.dto.ScoreSubmissionDTO;
 import com.changrui.mysterious.domain.game.model.Score;
 import com.changrui.mysterious.domain.game.service.ScoreMaintenanceService;
 import com.changrui.mysterious.domain.game.service.ScoreService;
 import com.changrui.mysterious.domain.user.service.AdminService;
+import com.changrui.mysterious.shared.cache.ResourceVersions;
 import com.changrui.mysterious.shared.dto.ApiResponse;
 import com.changrui.mysterious.shared.exception.UnauthorizedException;
+import com.changrui.mysterious.shared.ratelimit.RateLimiter;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import java.util.List;
 import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * Controller for managing game scores.
@@ -30,9 +35,45 @@ public class ScoreController {
     @Autowired
     private AdminService adminService;
 
+    @Autowired
+    private ResourceVersions resourceVersions;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    /**
+     * Leaderboard of a game type, one score per user; the top 3 by default.
+     */
     @GetMapping("/top/{gameType}")
-    public ResponseEntity<ApiResponse<List<Score>>> getTopScores(@PathVariable String gameType) {
-        return ResponseEntity.ok(ApiResponse.success(scoreService.getTopScores(gameType)));
+    public ResponseEntity<ApiResponse<List<Score>>> getTopScores(
+            @PathVariable String gameType,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "3") int limit,
+            WebRequest request) {
+        String etag = resourceVersions.etag(ResourceVersions.SCORES, gameType, offset, limit);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag)
+                .body(ApiResponse.success(scoreService.getTopScores(gameType, offset, limit)));
+    }
+
+    /**
+     * Rank of a player in a game type with the players around it; 5 above
+     * and below by default.
+     */
+    @GetMapping("/rank/{gameType}/{userId}")
+    public ResponseEntity<ApiResponse<PlayerRankDTO>> getPlayerRank(
+            @PathVariable String gameType,
+            @PathVariable String userId,
+            @RequestParam(defaultValue = "5") int around,
+            WebRequest request) {
+        String etag = resourceVersions.etag(ResourceVersions.SCORES, gameType, userId, around);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag)
+                .body(ApiResponse.success(scoreService.getPlayerRank(gameType, userId, around)));
     }
 
     @GetMapping("/user/{userId}/{gameType}")
@@ -44,7 +85,9 @@ public class ScoreController {
 
     @PostMapping
     public ResponseEntity<ApiResponse<Map<String, Object>>> submitScore(
-            @Valid @RequestBody ScoreSubmissionDTO dto) {
+            @Valid @RequestBody ScoreSubmissionDTO dto,
+            HttpServletRequest request) {
+        rateLimiter.check(RateLimiter.SCORE_SUBMIT, rateLimiter.clientKey(request));
         var result = scoreService.submitScore(dto);
         return ResponseEntity.ok(ApiResponse.success(
                 result.message(),
@@ -0,0 +1,22 @@
+package com.changrui.mysterious.domain.game.dto;
+
+import com.changrui.mysterious.domain.game.model.Score;
+import java.util.List;
+
+/**
+ * DTO for a player's rank in a game and the scores around it.
+ * Rank is null when the player has no score.
+ */
+public record PlayerRankDTO(
+        String gameType,
+        String userId,
+        Integer rank,
+        int totalPlayers,
+        List<RankedScore> neighbours
+) {
+
+    /**
+     * A score with its rank, from 1 for the best.
+     */
+    public record RankedScore(int rank, Score score) {}
+}
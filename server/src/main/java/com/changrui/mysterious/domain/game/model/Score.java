@@ -7,6 +7,7 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -19,8 +20,9 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "scores", indexes = {
-        @Index(name = "idx_user_game", columnList = "user_id, game_type"),
+@Table(name = "scores", uniqueConstraints = {
+        @UniqueConstraint(name = "uq_scores_user_game", columnNames = { "user_id", "game_type" })
+}, indexes = {
         @Index(name = "idx_game_score", columnList = "game_type, score")
 })
 public class Score {
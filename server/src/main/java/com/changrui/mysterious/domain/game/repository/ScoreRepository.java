@@ -3,6 +3,9 @@ package com.changrui.mysterious.domain.game.repository;
 import com.changrui.mysterious.domain.game.model.Score;
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -11,15 +14,39 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface ScoreRepository extends JpaRepository<Score, String> {
 
-    List<Score> findTop50ByGameTypeOrderByScoreDesc(String gameType);
-
-    List<Score> findTop50ByGameTypeOrderByScoreAsc(String gameType);
-
     List<Score> findByGameType(String gameType);
 
     List<Score> findByUserIdAndGameType(String userId, String gameType);
 
-    Score findTopByUserIdAndGameTypeOrderByScoreDesc(String userId, String gameType);
-
-    Score findTopByUserIdAndGameTypeOrderByScoreAsc(String userId, String gameType);
+    /**
+     * Insert the score of a user for a game type, or replace the user's
+     * score if the new one is better, in a single statement that is safe
+     * under concurrent submissions. Relies on the unique (user_id, game_type)
+     * constraint. For the maze, lower is better and 0 means no score (as in
+     * {@code Leaderboard}). A replaced score keeps its id, so that references
+     * to it stay valid; the given id is only used for a new row.
+     *
+     * @return 1 if the score was saved, 0 if the existing score is as good or better
+     */
+    @Modifying
+    @Query(value = "INSERT INTO scores (id, username, user_id, game_type, score, timestamp, attempts) "
+            + "VALUES (:id, :username, :userId, :gameType, :score, :timestamp, :attempts) "
+            + "ON CONFLICT (user_id, game_type) DO UPDATE SET username = EXCLUDED.username, "
+            + "score = EXCLUDED.score, timestamp = EXCLUDED.timestamp, attempts = EXCLUDED.attempts "
+            + "WHERE CASE WHEN scores.game_type = 'maze' "
+            + "THEN EXCLUDED.score > 0 AND (scores.score = 0 OR EXCLUDED.score < scores.score) "
+            + "ELSE EXCLUDED.score > scores.score END", nativeQuery = true)
+    int upsertIfBetter(@Param("id") String id, @Param("username") String username,
+            @Param("userId") String userId, @Param("gameType") String gameType,
+            @Param("score") int score, @Param("timestamp") long timestamp,
+            @Param("attempts") Integer attempts);
+
+    /**
+     * Delete every score of a game type in a single statement.
+     *
+     * @return number of scores deleted
+     */
+    @Modifying
+    @Query("DELETE FROM Score s WHERE s.gameType = :gameType")
+    int deleteAllByGameTypeInBulk(@Param("gameType") String gameType);
 }
@@ -0,0 +1,165 @@
+package com.changrui.mysterious.domain.game.service;
+
+import com.changrui.mysterious.domain.game.model.Score;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Leaderboard of one game type: the best score of each user, in ranking
+ * order. For the maze, lower scores are better and 0 means no score.
+ *
+ * The ranking is an immutable sorted array replaced on every change, so
+ * reads take no lock: a page of N scores costs O(N) and the rank of a user
+ * O(log n). Changes cost O(n) in the number of users, which suits boards
+ * read far more often than they are written. Equal scores are ranked by
+ * who got there first.
+ */
+public final class Leaderboard {
+
+    /**
+     * Rank of a user and the scores around it, read from one ranking.
+     *
+     * @param rank      rank of the user from 1, or 0 if the user has no score
+     * @param total     number of users with a score
+     * @param firstRank rank of the first of the scores
+     * @param scores    the user's score and its neighbours, best first
+     */
+    public record Standing(int rank, int total, int firstRank, List<Score> scores) {
+    }
+
+    private final boolean lowerIsBetter;
+    private final Comparator<Score> order;
+    // Written under this
+    private final Map<String, Score> byUser = new ConcurrentHashMap<>();
+    private volatile Score[] ranked = new Score[0];
+
+    Leaderboard(String gameType) {
+        this.lowerIsBetter = lowerIsBetter(gameType);
+        Comparator<Score> byScore = Comparator.comparingInt(Score::getScore);
+        // Ties go to the earlier score
+        this.order = (lowerIsBetter ? byScore : byScore.reversed())
+                .thenComparingLong(Score::getTimestamp)
+                .thenComparing(Score::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+    }
+
+    /**
+     * Leaderboard of the given scores, keeping the best one of each user.
+     */
+    static Leaderboard of(String gameType, Collection<Score> scores) {
+        Leaderboard leaderboard = new Leaderboard(gameType);
+        for (Score score : scores) {
+            if (leaderboard.isRanked(score)) {
+                leaderboard.byUser.merge(score.getUserId(), score, leaderboard::better);
+            }
+        }
+        Score[] sorted = leaderboard.byUser.values().toArray(new Score[0]);
+        Arrays.sort(sorted, leaderboard.order);
+        leaderboard.ranked = sorted;
+        return leaderboard;
+    }
+
+    /**
+     * Whether lower scores are better in a game type.
+     */
+    public static boolean lowerIsBetter(String gameType) {
+        return "maze".equals(gameType);
+    }
+
+    /**
+     * Replace the entry of a user with the best of the given scores, or
+     * remove it if none is ranked.
+     */
+    synchronized void replace(String userId, Collection<Score> scores) {
+        Score best = scores.stream().filter(this::isRanked).min(order).orElse(null);
+        Score[] current = ranked;
+        Score previous = best != null ? byUser.put(userId, best) : byUser.remove(userId);
+        if (previous != null) {
+            current = without(current, Arrays.binarySearch(current, previous, order));
+        }
+        if (best != null) {
+            current = with(current, -Arrays.binarySearch(current, best, order) - 1, best);
+        }
+        ranked = current;
+    }
+
+    /**
+     * Scores ranked from offset (0 for the best) on; empty past the end.
+     */
+    public List<Score> page(int offset, int limit) {
+        Score[] snapshot = ranked;
+        int from = Math.min(Math.max(0, offset), snapshot.length);
+        int to = (int) Math.min((long) from + Math.max(0, limit), snapshot.length);
+        return List.of(Arrays.copyOfRange(snapshot, from, to));
+    }
+
+    /**
+     * Rank of a user with up to radius scores above and below it.
+     */
+    public Standing standing(String userId, int radius) {
+        Score[] snapshot = ranked;
+        int index = indexOf(snapshot, userId);
+        if (index < 0) {
+            // The user's entry and the ranking may be caught mid-change
+            synchronized (this) {
+                snapshot = ranked;
+                index = indexOf(snapshot, userId);
+            }
+        }
+        if (index < 0) {
+            return new Standing(0, snapshot.length, 0, List.of());
+        }
+        int from = Math.max(0, index - Math.max(0, radius));
+        int to = (int) Math.min((long) index + Math.max(0, radius) + 1, snapshot.length);
+        return new Standing(index + 1, snapshot.length, from + 1, List.of(Arrays.copyOfRange(snapshot, from, to)));
+    }
+
+    /**
+     * Best score of a user, or null if the user has none.
+     */
+    public Score get(String userId) {
+        return userId != null ? byUser.get(userId) : null;
+    }
+
+    /**
+     * Number of users with a score.
+     */
+    public int size() {
+        return ranked.length;
+    }
+
+    private int indexOf(Score[] snapshot, String userId) {
+        Score score = get(userId);
+        if (score == null) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(snapshot, score, order);
+        return index >= 0 && snapshot[index] == score ? index : -1;
+    }
+
+    private boolean isRanked(Score score) {
+        return score.getUserId() != null && !(lowerIsBetter && score.getScore() == 0);
+    }
+
+    private Score better(Score a, Score b) {
+        return order.compare(a, b) <= 0 ? a : b;
+    }
+
+    private static Score[] without(Score[] scores, int index) {
+        Score[] result = new Score[scores.length - 1];
+        System.arraycopy(scores, 0, result, 0, index);
+        System.arraycopy(scores, index + 1, result, index, scores.length - index - 1);
+        return result;
+    }
+
+    private static Score[] with(Score[] scores, int index, Score score) {
+        Score[] result = new Score[scores.length + 1];
+        System.arraycopy(scores, 0, result, 0, index);
+        result[index] = score;
+        System.arraycopy(scores, index, result, index + 1, scores.length - index);
+        return result;
+    }
+}
@@ -0,0 +1,152 @@
+package com.changrui.mysterious.domain.game.service;
+
+import com.changrui.mysterious.domain.game.repository.ScoreRepository;
+import com.changrui.mysterious.shared.cluster.EventRelay;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-memory leaderboards, one per game type, so that rankings and best
+ * scores are read without querying scores.
+ *
+ * A leaderboard is loaded on first use and kept only if it has scores, since
+ * game types come from request paths; at most {@code maxLeaderboards} are
+ * kept, an arbitrary one being dropped to make room. Every code path
+ * changing scores must then call {@link #refresh} for changes to a user's
+ * scores, or {@link #invalidate} for bulk changes. Both apply once the
+ * transaction has committed and are relayed to the other instances, which
+ * re-read what changed.
+ */
+@Service
+public class LeaderboardIndex {
+
+    private static final String RELAY_TOPIC = "leaderboards";
+
+    private final ScoreRepository scoreRepository;
+    private final EventRelay eventRelay;
+    private final int maxLeaderboards;
+    private final Map<String, Leaderboard> leaderboards = new ConcurrentHashMap<>();
+    // Guarded by leaderboards: loads started before a change are not kept
+    private long generation;
+
+    public LeaderboardIndex(ScoreRepository scoreRepository, EventRelay eventRelay,
+            @Value("${app.game.leaderboard-cache-size:32}") int maxLeaderboards) {
+        this.scoreRepository = scoreRepository;
+        this.eventRelay = eventRelay;
+        this.maxLeaderboards = Math.max(1, maxLeaderboards);
+        eventRelay.subscribe(RELAY_TOPIC, (origin, payload) -> {
+            String gameType = payload.path("gameType").asText(null);
+            String userId = payload.path("userId").asText(null);
+            if (gameType != null && userId != null) {
+                applyRefresh(gameType, userId);
+            } else {
+                applyInvalidate(gameType);
+            }
+        });
+        // Changes may have been missed: load everything again
+        eventRelay.onResync(() -> applyInvalidate(null));
+    }
+
+    /**
+     * Leaderboard of a game type, loading it if needed.
+     */
+    public Leaderboard get(String gameType) {
+        Leaderboard leaderboard = leaderboards.get(gameType);
+        if (leaderboard != null) {
+            return leaderboard;
+        }
+        long loadedAt;
+        synchronized (leaderboards) {
+            loadedAt = generation;
+        }
+        Leaderboard loaded = Leaderboard.of(gameType, scoreRepository.findByGameType(gameType));
+        synchronized (leaderboards) {
+            if (generation != loadedAt || loaded.size() == 0) {
+                // Changed while loading, or nothing worth keeping: serve this once
+                return loaded;
+            }
+            Leaderboard existing = leaderboards.get(gameType);
+            if (existing != null) {
+                return existing;
+            }
+            if (leaderboards.size() >= maxLeaderboards) {
+                leaderboards.remove(leaderboards.keySet().iterator().next());
+            }
+            leaderboards.put(gameType, loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * Re-read the scores of a user once the current transaction has
+     * committed, on every instance.
+     */
+    public void refresh(String gameType, String userId) {
+        afterCommit(() -> {
+            applyRefresh(gameType, userId);
+            eventRelay.publish(RELAY_TOPIC, new LeaderboardChange(gameType, userId));
+        });
+    }
+
+    /**
+     * Forget a leaderboard once the current transaction has committed, on
+     * every instance; it is loaded again on next use.
+     *
+     * @param gameType the game type, or null for every game type
+     */
+    public void invalidate(String gameType) {
+        afterCommit(() -> {
+            applyInvalidate(gameType);
+            eventRelay.publish(RELAY_TOPIC, new LeaderboardChange(gameType, null));
+        });
+    }
+
+    private void applyRefresh(String gameType, String userId) {
+        Leaderboard leaderboard;
+        synchronized (leaderboards) {
+            generation++;
+            leaderboard = leaderboards.get(gameType);
+        }
+        if (leaderboard != null) {
+            // Read under the leaderboard's lock, so concurrent refreshes apply in order
+            synchronized (leaderboard) {
+                leaderboard.replace(userId, scoreRepository.findByUserIdAndGameType(userId, gameType));
+            }
+        }
+    }
+
+    private void applyInvalidate(String gameType) {
+        synchronized (leaderboards) {
+            generation++;
+            if (gameType == null) {
+                leaderboards.clear();
+            } else {
+                leaderboards.remove(gameType);
+            }
+        }
+    }
+
+    /**
+     * Relayed change; a null user id stands for the whole game type, a null
+     * game type for every game type.
+     */
+    private record LeaderboardChange(String gameType, String userId) {
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.changrui.mysterious.domain.game.service;
 
 import com.changrui.mysterious.domain.game.model.Score;
 import com.changrui.mysterious.domain.game.repository.ScoreRepository;
+import com.changrui.mysterious.shared.cache.ResourceVersions;
 import java.util.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,6 +12,8 @@ import org.springframework.transaction.annotation.Transactional;
 /**
  * Service for administrative maintenance of game scores.
  * Handles deduplication, cleanup, and reporting.
+ * Duplicates predate the unique (user_id, game_type) constraint; new ones
+ * cannot be created.
  */
 @Slf4j
 @Service
@@ -18,6 +21,8 @@ import org.springframework.transaction.annotation.Transactional;
 public class ScoreMaintenanceService {
 
     private final ScoreRepository scoreRepository;
+    private final ResourceVersions resourceVersions;
+    private final LeaderboardIndex leaderboardIndex;
 
     /**
      * Delete all scores for a specific game type.
@@ -31,20 +36,13 @@ public class ScoreMaintenanceService {
         log.info("Starting deletion of all scores for game: {}", gameType);
 
         try {
-            // Get all scores for this game type (not just top 50)
-            List<Score> scores = scoreRepository.findByGameType(gameType);
-            int totalCount = scores.size();
+            // One DELETE statement; no score is loaded into the persistence context
+            int deletedCount = scoreRepository.deleteAllByGameTypeInBulk(gameType);
+            resourceVersions.bump(ResourceVersions.SCORES, gameType);
+            leaderboardIndex.invalidate(gameType);
 
-            if (totalCount == 0) {
-                log.info("No scores found for game: {}", gameType);
-                return 0;
-            }
-
-            // Delete all scores for this game type
-            scoreRepository.deleteAll(scores);
-
-            log.info("Deleted {} scores for game: {}", totalCount, gameType);
-            return totalCount;
+            log.info("Deleted {} scores for game: {}", deletedCount, gameType);
+            return deletedCount;
         } catch (Exception e) {
             log.error("Error deleting scores for game {}: ", gameType, e);
             throw new RuntimeException("Failed to delete scores for game: " + gameType, e);
@@ -106,6 +104,8 @@ public class ScoreMaintenanceService {
             }
         }
 
+        resourceVersions.bumpAll(ResourceVersions.SCORES);
+        leaderboardIndex.invalidate(null);
         log.info("Cleanup completed. Found {} groups with duplicates, removed {} duplicate scores.",
                 duplicateGroups, duplicatesRemoved);
         return duplicatesRemoved;
@@ -192,6 +192,8 @@ public class ScoreMaintenanceService {
             }
         }
 
+        resourceVersions.bumpAll(ResourceVersions.SCORES);
+        leaderboardIndex.invalidate(null);
         log.info("FORCE cleanup completed. Deleted {} duplicate scores.", totalDeleted);
         return totalDeleted;
     }
@@ -1,9 +1,11 @@
 package com.changrui.mysterious.domain.game.service;
 
+import com.changrui.mysterious.domain.game.dto.PlayerRankDTO;
 import com.changrui.mysterious.domain.game.dto.ScoreSubmissionDTO;
 import com.changrui.mysterious.domain.game.model.Score;
 import com.changrui.mysterious.domain.game.repository.ScoreRepository;
 import com.changrui.mysterious.domain.profile.service.ActivityService;
+import com.changrui.mysterious.shared.cache.ResourceVersions;
 import com.changrui.mysterious.shared.exception.EntityNotFoundException;
 import java.util.*;
 import lombok.RequiredArgsConstructor;
@@ -21,10 +23,14 @@ import org.springframework.transaction.annotation.Transactional;
 @RequiredArgsConstructor
 public class ScoreService {
 
-    private static final int TOP_SCORES_LIMIT = 3;
+    public static final int TOP_SCORES_LIMIT = 3;
+    public static final int MAX_PAGE_SIZE = 100;
+    public static final int MAX_RANK_RADIUS = 50;
 
     private final ScoreRepository scoreRepository;
     private final ActivityService activityService;
+    private final ResourceVersions resourceVersions;
+    private final LeaderboardIndex leaderboardIndex;
 
     /**
      * Get top scores for a specific game type.
@@ -33,21 +39,39 @@ public class ScoreService {
      * For other games, higher scores are better (descending).
      */
     public List<Score> getTopScores(String gameType) {
-        boolean isAscending = isMazeGame(gameType);
-        List<Score> rawScores = isAscending
-                ? scoreRepository.findTop50ByGameTypeOrderByScoreAsc(gameType)
-                : scoreRepository.findTop50ByGameTypeOrderByScoreDesc(gameType);
+        return getTopScores(gameType, 0, TOP_SCORES_LIMIT);
+    }
+
+    /**
+     * Get a page of the leaderboard of a game type, one score per user.
+     *
+     * @param offset rank of the first score, 0 for the best
+     * @param limit  number of scores, at most {@link #MAX_PAGE_SIZE}
+     */
+    public List<Score> getTopScores(String gameType, int offset, int limit) {
+        return leaderboardIndex.get(gameType).page(offset, Math.min(limit, MAX_PAGE_SIZE));
+    }
 
-        return deduplicateByUser(rawScores, isAscending);
+    /**
+     * Get a user's rank in a game type, with up to {@code radius} players
+     * above and below (at most {@link #MAX_RANK_RADIUS}).
+     */
+    public PlayerRankDTO getPlayerRank(String gameType, String userId, int radius) {
+        Leaderboard.Standing standing = leaderboardIndex.get(gameType)
+                .standing(userId, Math.min(radius, MAX_RANK_RADIUS));
+        List<PlayerRankDTO.RankedScore> neighbours = new ArrayList<>(standing.scores().size());
+        for (int i = 0; i < standing.scores().size(); i++) {
+            neighbours.add(new PlayerRankDTO.RankedScore(standing.firstRank() + i, standing.scores().get(i)));
+        }
+        return new PlayerRankDTO(gameType, userId, standing.rank() > 0 ? standing.rank() : null,
+                standing.total(), neighbours);
     }
 
     /**
      * Get user's best score for a specific game type.
      */
     public Score getUserBestScore(String userId, String gameType) {
-        Score score = isMazeGame(gameType)
-                ? scoreRepository.findTopByUserIdAndGameTypeOrderByScoreAsc(userId, gameType)
-                : scoreRepository.findTopByUserIdAndGameTypeOrderByScoreDesc(userId, gameType);
+        Score score = leaderboardIndex.get(gameType).get(userId);
 
         if (score == null) {
             return createEmptyScore(userId, gameType);
@@ -58,37 +82,34 @@ public class ScoreService {
     /**
      * Submit a new score for a user.
      * Ensures only one score per user per game type.
-     * Updates existing score if new score is better.
+     * Updates existing score if new score is better, in a single statement.
      */
     @Transactional
     public ScoreSubmissionResult submitScore(ScoreSubmissionDTO dto) {
         log.info("Processing {} score: {} for user: {}", dto.gameType(), dto.score(), dto.userId());
 
-        List<Score> existingScores = scoreRepository.findByUserIdAndGameType(dto.userId(), dto.gameType());
-
-        if (!existingScores.isEmpty()) {
-            // Find the best existing score
-            Score bestScore = findBestScore(existingScores, dto.gameType());
-
-            // Check if new score is better
-            if (!isNewScoreBetter(dto.score(), bestScore.getScore(), dto.gameType())) {
-                log.debug("Score {} is not better than existing {}", dto.score(), bestScore.getScore());
-                return new ScoreSubmissionResult(false, "Score not high enough");
-            }
-
-            // Delete all existing scores for this user and game type
-            scoreRepository.deleteAll(existingScores);
-            log.info("Deleted {} existing scores for user {} in game {}", existingScores.size(), dto.userId(),
-                    dto.gameType());
-
-            // Create new score
-            createNewScore(dto);
-            log.info("Created new score for user {} in game {}: {}", dto.userId(), dto.gameType(), dto.score());
-            return new ScoreSubmissionResult(true, "Score updated successfully");
+        Score score = new Score(
+                dto.username(),
+                dto.userId(),
+                dto.gameType(),
+                dto.score(),
+                System.currentTimeMillis(),
+                dto.attempts());
+        score.setId(UUID.randomUUID().toString());
+
+        // One statement: inserts the score, replaces a worse one, or keeps a better one
+        int saved = scoreRepository.upsertIfBetter(score.getId(), score.getUsername(), score.getUserId(),
+                score.getGameType(), score.getScore(), score.getTimestamp(), score.getAttempts());
+        if (saved == 0) {
+            log.debug("Score {} is not better than the best score of user {} in game {}", dto.score(),
+                    dto.userId(), dto.gameType());
+            return new ScoreSubmissionResult(false, "Score not high enough");
         }
 
-        // No existing score, create new one
-        createNewScore(dto);
+        resourceVersions.bump(ResourceVersions.SCORES, score.getGameType());
+        // An improved score keeps the id of the row it replaced: read it back
+        leaderboardIndex.refresh(score.getGameType(), score.getUserId());
+        recordGameActivity(score);
         log.info("Score saved successfully for user {} in game {}: {}", dto.userId(), dto.gameType(), dto.score());
         return new ScoreSubmissionResult(true, "Score submitted successfully");
     }
@@ -98,36 +119,16 @@ public class ScoreService {
      */
     @Transactional
     public void deleteScore(String id) {
-        if (!scoreRepository.existsById(id)) {
-            throw new EntityNotFoundException("Score", id);
-        }
-        scoreRepository.deleteById(id);
+        Score score = scoreRepository.findById(id)
+                .orElseThrow(() -> new EntityNotFoundException("Score", id));
+        scoreRepository.delete(score);
+        resourceVersions.bumpAll(ResourceVersions.SCORES);
+        leaderboardIndex.refresh(score.getGameType(), score.getUserId());
         log.info("Deleted score: {}", id);
     }
 
     // --- Private helper methods ---
 
-    private boolean isMazeGame(String gameType) {
-        return "maze".equals(gameType);
-    }
-
-    private List<Score> deduplicateByUser(List<Score> scores, boolean isAscending) {
-        List<Score> topScores = new ArrayList<>();
-        Set<String> seenUsers = new HashSet<>();
-
-        for (Score s : scores) {
-            if (s.getUserId() != null && !seenUsers.contains(s.getUserId())) {
-                if (isAscending && s.getScore() == 0)
-                    continue;
-                seenUsers.add(s.getUserId());
-                topScores.add(s);
-                if (topScores.size() >= TOP_SCORES_LIMIT)
-                    break;
-            }
-        }
-        return topScores;
-    }
-
     private Score createEmptyScore(String userId, String gameType) {
         Score emptyScore = new Score();
         emptyScore.setUserId(userId);
@@ -136,32 +137,7 @@ public class ScoreService {
         return emptyScore;
     }
 
-    private Score findBestScore(List<Score> scores, String gameType) {
-        if (isMazeGame(gameType)) {
-            scores.sort(Comparator.comparingInt(Score::getScore));
-        } else {
-            scores.sort((s1, s2) -> Integer.compare(s2.getScore(), s1.getScore()));
-        }
-        return scores.get(0);
-    }
-
-    private boolean isNewScoreBetter(int newScore, int existingScore, String gameType) {
-        if (isMazeGame(gameType)) {
-            return existingScore == 0 || newScore < existingScore;
-        }
-        return newScore > existingScore;
-    }
-
-    private void createNewScore(ScoreSubmissionDTO dto) {
-        Score newScore = new Score(
-                dto.username(),
-                dto.userId(),
-                dto.gameType(),
-                dto.score(),
-                System.currentTimeMillis(),
-                dto.attempts());
-        Score savedScore = scoreRepository.save(newScore);
-
+    private void recordGameActivity(Score savedScore) {
         // Record activity for profile statistics
         if (savedScore.getUserId() != null && !savedScore.getUserId().isEmpty()) {
             try {
@@ -2,6 +2,8 @@ package com.changrui.mysterious.domain.media.controller;
 
 import com.changrui.mysterious.domain.media.model.MediaUploadResult;
 import com.changrui.mysterious.domain.media.service.MediaService;
+import com.changrui.mysterious.shared.ratelimit.RateLimiter;
+import jakarta.servlet.http.HttpServletRequest;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -27,12 +29,17 @@ public class MediaController {
     
     @Autowired
     private MediaService mediaService;
+
+    @Autowired
+    private RateLimiter rateLimiter;
     
     /**
      * Upload un fichier image
      */
     @PostMapping("/upload")
-    public ResponseEntity<?> uploadImage(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<?> uploadImage(@RequestParam("file") MultipartFile file, HttpServletRequest request) {
+        // Hors du try : le refus doit remonter en 429
+        rateLimiter.check(RateLimiter.MEDIA_UPLOAD, rateLimiter.clientKey(request));
         try {
             MediaUploadResult result = mediaService.uploadImage(file);
             return ResponseEntity.ok(result);
@@ -1,16 +1,27 @@
 package com.changrui.mysterious.domain.messagewall.controller;
 
+import com.changrui.mysterious.domain.messagewall.dto.MessageHistoryResponse;
 import com.changrui.mysterious.domain.messagewall.dto.MessageResponse;
+import com.changrui.mysterious.domain.messagewall.dto.MessageSearchResponse;
 import com.changrui.mysterious.domain.messagewall.model.Message;
+import com.changrui.mysterious.domain.messagewall.model.MessageReaction;
 import com.changrui.mysterious.domain.messagewall.service.MessageService;
+import com.changrui.mysterious.domain.messagewall.service.MessageService.ReactionChange;
+import com.changrui.mysterious.domain.messagewall.service.RecentMessageBuffer;
+import com.changrui.mysterious.domain.messagewall.service.RecentMessageSnapshots;
 import com.changrui.mysterious.domain.user.service.AdminService;
-import com.changrui.mysterious.domain.user.service.UserVerificationService;
+import com.changrui.mysterious.shared.cache.ResourceVersions;
 import com.changrui.mysterious.shared.dto.ApiResponse;
 import com.changrui.mysterious.shared.exception.UnauthorizedException;
+import com.changrui.mysterious.shared.ratelimit.RateLimiter;
+import jakarta.servlet.http.HttpServletRequest;
 import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * Controller for chat messages.
@@ -24,52 +35,110 @@ public class MessageController {
     @Autowired
     private MessageService messageService;
 
-    @Autowired
-    private UserVerificationService userVerificationService;
-
     @Autowired
     private AdminService adminService;
 
     @Autowired
     private MessageWebSocketController webSocketController;
 
-    @GetMapping
-    public ResponseEntity<List<MessageResponse>> getAllMessages() {
-        List<MessageResponse> messages = messageService.getAllMessages();
+    @Autowired
+    private ResourceVersions resourceVersions;
 
-        return ResponseEntity.ok()
-                .header("X-System-Muted", String.valueOf(messageService.isMuted()))
-                .body(messages);
-    }
+    @Autowired
+    private RateLimiter rateLimiter;
 
-    @PostMapping
-    public ResponseEntity<ApiResponse<MessageResponse>> addMessage(
-            @RequestBody Message message,
-            @RequestParam(required = false) String adminCode) {
+    @Autowired
+    private RecentMessageSnapshots recentMessageSnapshots;
 
-        if (messageService.isMuted() && !adminService.isValidAdminCode(adminCode)) {
-            throw new UnauthorizedException("Chat is muted by admin");
+    /**
+     * Initial load: the most recent page of messages, oldest first.
+     * Older history is fetched through {@code /history}.
+     * Answers 304 when the channel has not changed since the client's ETag.
+     * The JSON array is served from a pre-serialized snapshot, gzipped when
+     * the client accepts it.
+     */
+    @GetMapping
+    public ResponseEntity<byte[]> getRecentMessages(
+            @RequestParam(required = false) String channelId,
+            @RequestParam(required = false) Integer limit,
+            WebRequest request) {
+        String key = RecentMessageBuffer.keyFor(channelId);
+        String channelEtag = resourceVersions.etag(ResourceVersions.MESSAGES, key);
+        boolean gzipped = RecentMessageSnapshots.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        // Each page size and content coding is its own representation
+        String etag = resourceVersions.etag(ResourceVersions.MESSAGES, key, limit, gzipped ? "gzip" : "identity");
+        if (request.checkNotModified(etag)) {
+            return null;
         }
 
-        if (userVerificationService.userExists(message.getUserId()) || adminService.isValidAdminCode(adminCode)) {
-            message.setVerified(true);
-        } else {
-            message.setVerified(false);
+        RecentMessageSnapshots.Snapshot snapshot = recentMessageSnapshots.get(channelId, limit, channelEtag);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .header("X-System-Muted", String.valueOf(messageService.isMuted()));
+        if (gzipped) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
         }
+        return response.body(snapshot.body(gzipped));
+    }
 
-        if (message.getQuotedMessageId() != null && !message.getQuotedMessageId().isEmpty()) {
-            Message quoted = messageService.getMessageById(message.getQuotedMessageId());
-            if (quoted != null) {
-                message.setQuotedName(quoted.getName());
-                message.setQuotedMessage(quoted.getMessage());
-            } else {
-                message.setQuotedMessageId(null);
-            }
+    /**
+     * Keyset-paginated message history.
+     * Pass the returned {@code beforeCursor} as {@code before} to scroll back,
+     * or {@code afterCursor} as {@code after} to catch up.
+     */
+    @GetMapping("/history")
+    public ResponseEntity<ApiResponse<MessageHistoryResponse>> getMessageHistory(
+            @RequestParam(required = false) String channelId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit,
+            WebRequest request) {
+        String etag = resourceVersions.etag(ResourceVersions.MESSAGES, RecentMessageBuffer.keyFor(channelId),
+                before, after, limit);
+        if (request.checkNotModified(etag)) {
+            return null;
         }
 
-        MessageResponse saved = messageService.addMessage(message);
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .body(ApiResponse.success(messageService.getMessageHistory(channelId, before, after, limit)));
+    }
+
+    /**
+     * Full-text search, newest first.
+     * Pass the returned {@code nextCursor} as {@code before} to load older matches.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<ApiResponse<MessageSearchResponse>> searchMessages(
+            @RequestParam String q,
+            @RequestParam(required = false) String channelId,
+            @RequestParam(required = false) String authorId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) Integer limit,
+            WebRequest request) {
+        String etag = resourceVersions.etag(ResourceVersions.MESSAGES, RecentMessageBuffer.keyFor(channelId),
+                q, authorId, before, limit);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .body(ApiResponse.success(messageService.searchMessages(q, channelId, authorId, before, limit)));
+    }
+
+    @PostMapping
+    public ResponseEntity<ApiResponse<MessageResponse>> addMessage(
+            @RequestBody Message message,
+            @RequestParam(required = false) String adminCode,
+            HttpServletRequest httpRequest) {
+        rateLimiter.check(RateLimiter.MESSAGE_POST, rateLimiter.clientKey(httpRequest));
+        MessageResponse saved = messageService.postMessage(message, adminCode);
 
-        // Broadcast to WebSocket subscribers
+        // Broadcast to the channel's subscribers
         webSocketController.broadcastNewMessage(saved);
 
         return ResponseEntity.ok(ApiResponse.success(saved));
@@ -97,75 +166,92 @@ public class MessageController {
             @RequestParam(required = false) String adminCode) {
 
         if (adminService.isValidAdminCode(adminCode)) {
-            messageService.deleteMessageById(id);
-            webSocketController.broadcastDelete(id);
+            Message deleted = messageService.deleteMessageById(id);
+            if (deleted == null) {
+                return ResponseEntity.notFound().build();
+            }
+            webSocketController.broadcastDelete(deleted.getChannelId(), id);
             return ResponseEntity.ok(ApiResponse.successMessage("Message deleted"));
         }
 
-        boolean deleted = messageService.deleteMessage(id, userId);
-        if (!deleted) {
+        Message deleted = messageService.deleteMessage(id, userId);
+        if (deleted == null) {
             return ResponseEntity.notFound().build();
         }
 
-        // Broadcast deletion to all clients
-        webSocketController.broadcastDelete(id);
+        // Broadcast deletion to the message's channel
+        webSocketController.broadcastDelete(deleted.getChannelId(), id);
 
         return ResponseEntity.ok(ApiResponse.successMessage("Message deleted"));
     }
 
     @PostMapping("/clear")
-    public ResponseEntity<ApiResponse<Void>> clearAllMessages(@RequestParam String adminCode) {
+    public ResponseEntity<ApiResponse<Integer>> clearAllMessages(@RequestParam String adminCode) {
         if (!adminService.isValidAdminCode(adminCode)) {
             throw new UnauthorizedException("Invalid admin code");
         }
 
-        messageService.clearAllMessages();
+        int deletedCount = messageService.clearAllMessages();
 
         // Broadcast clear to all clients
         webSocketController.broadcastClearAll();
 
-        return ResponseEntity.ok(ApiResponse.successMessage("All messages cleared"));
+        return ResponseEntity.ok(ApiResponse.success("All messages cleared", deletedCount));
     }
 
     /**
      * Add a reaction to a message
      */
     @PostMapping("/reactions/add")
-    public ResponseEntity<ApiResponse<MessageResponse>> addReaction(@RequestBody ReactionRequest request) {
-        MessageResponse updated = messageService.addReaction(
+    public ResponseEntity<ApiResponse<MessageResponse>> addReaction(@RequestBody ReactionRequest request,
+            HttpServletRequest httpRequest) {
+        rateLimiter.check(RateLimiter.REACTION, rateLimiter.clientKey(httpRequest));
+        ReactionChange change = messageService.addReaction(
                 request.getMessageId(),
                 request.getUserId(),
                 request.getUsername(),
                 request.getEmoji());
 
-        if (updated == null) {
+        if (change == null) {
             return ResponseEntity.notFound().build();
         }
 
-        // Broadcast reaction update to all clients
-        webSocketController.broadcastReactionUpdate(updated.getId(), updated.getReactions());
+        webSocketController.broadcastReactionChange(change, request);
 
-        return ResponseEntity.ok(ApiResponse.success(updated));
+        return ResponseEntity.ok(ApiResponse.success(change.message()));
     }
 
     /**
      * Remove a reaction from a message
      */
     @PostMapping("/reactions/remove")
-    public ResponseEntity<ApiResponse<MessageResponse>> removeReaction(@RequestBody ReactionRequest request) {
-        MessageResponse updated = messageService.removeReaction(
+    public ResponseEntity<ApiResponse<MessageResponse>> removeReaction(@RequestBody ReactionRequest request,
+            HttpServletRequest httpRequest) {
+        rateLimiter.check(RateLimiter.REACTION, rateLimiter.clientKey(httpRequest));
+        ReactionChange change = messageService.removeReaction(
                 request.getMessageId(),
                 request.getUserId(),
                 request.getEmoji());
 
-        if (updated == null) {
+        if (change == null) {
             return ResponseEntity.notFound().build();
         }
 
-        // Broadcast reaction update to all clients
-        webSocketController.broadcastReactionUpdate(updated.getId(), updated.getReactions());
+        webSocketController.broadcastReactionChange(change, request);
+
+        return ResponseEntity.ok(ApiResponse.success(change.message()));
+    }
 
-        return ResponseEntity.ok(ApiResponse.success(updated));
+    /**
+     * Get the full reaction snapshot of a message
+     */
+    @GetMapping("/{id}/reactions")
+    public ResponseEntity<ApiResponse<List<MessageReaction>>> getReactions(@PathVariable String id) {
+        List<MessageReaction> reactions = messageService.getReactions(id);
+        if (reactions == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(ApiResponse.success(reactions));
     }
 
     /**
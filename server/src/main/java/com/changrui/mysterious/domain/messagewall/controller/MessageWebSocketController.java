@@ -1,70 +1,371 @@
 package com.changrui.mysterious.domain.messagewall.controller;
 
+import com.changrui.mysterious.domain.messagewall.controller.MessageController.ReactionRequest;
+import com.changrui.mysterious.domain.messagewall.dto.CommandAck;
+import com.changrui.mysterious.domain.messagewall.dto.DeleteMessageCommand;
+import com.changrui.mysterious.domain.messagewall.dto.EventReplay;
 import com.changrui.mysterious.domain.messagewall.dto.MessageResponse;
+import com.changrui.mysterious.domain.messagewall.dto.ReactionDeltaPayload;
+import com.changrui.mysterious.domain.messagewall.dto.ReactionUpdatePayload;
+import com.changrui.mysterious.domain.messagewall.dto.ResumeRequest;
+import com.changrui.mysterious.domain.messagewall.dto.WebSocketEvent;
+import com.changrui.mysterious.domain.messagewall.model.Message;
+import com.changrui.mysterious.domain.messagewall.service.BroadcastCoalescer;
+import com.changrui.mysterious.domain.messagewall.service.MessageService;
+import com.changrui.mysterious.domain.messagewall.service.MessageService.ReactionChange;
+import com.changrui.mysterious.domain.messagewall.service.WallEventLog;
+import com.changrui.mysterious.domain.user.service.AdminService;
+import com.changrui.mysterious.shared.cluster.EventRelay;
+import com.changrui.mysterious.shared.config.SlowConsumerGuard;
+import com.changrui.mysterious.shared.exception.BadRequestException;
+import com.changrui.mysterious.shared.exception.RateLimitExceededException;
+import com.changrui.mysterious.shared.exception.UnauthorizedException;
+import com.changrui.mysterious.shared.ratelimit.RateLimiter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.stereotype.Controller;
 
 /**
  * WebSocket controller for real-time message broadcasting.
- * Handles broadcasting events to all connected clients.
+ * Message events go to the destination of their channel, so clients only
+ * receive traffic for the channel they view; wall-wide events go to the
+ * control topic. Everything passes through the {@link BroadcastCoalescer},
+ * which batches events into one frame per window. Events are also relayed
+ * to the other server instances, which send them to their own subscribers.
+ *
+ * Also accepts chat commands on {@code /app/...} over the already open socket,
+ * with the same rules as {@link MessageController}. Each command is answered
+ * on the issuing session's {@code /user/queue/acks}.
  */
+@Slf4j
 @Controller
 public class MessageWebSocketController {
 
+    /**
+     * Prefix of the per-channel destinations: {@code /topic/messages/{channelId}}.
+     */
+    public static final String CHANNEL_TOPIC_PREFIX = "/topic/messages/";
+
+    /**
+     * Destination of wall-wide events (mute, clear all).
+     */
+    public static final String CONTROL_TOPIC = "/topic/wall/control";
+
+    /**
+     * Session queue receiving command receipts.
+     */
+    public static final String ACK_QUEUE = "/queue/acks";
+
+    /**
+     * Session queue receiving event replays.
+     */
+    public static final String REPLAY_QUEUE = "/queue/replay";
+
+    private static final String RELAY_TOPIC = "wall";
+    private static final String REQUEST_ID_HEADER = "request-id";
+    private static final String ADMIN_CODE_HEADER = "admin-code";
+
+    @Autowired
+    private BroadcastCoalescer broadcastCoalescer;
+
+    @Autowired
+    private WallEventLog wallEventLog;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private EventRelay eventRelay;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AdminService adminService;
+
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    // ==================== Inbound commands ====================
+
+    /**
+     * Post a message.
+     */
+    @MessageMapping("/messages.send")
+    @SendToUser(destinations = ACK_QUEUE, broadcast = false)
+    public CommandAck sendMessage(@Payload Message message,
+            @Header(name = ADMIN_CODE_HEADER, required = false) String adminCode,
+            @Header(name = REQUEST_ID_HEADER, required = false) String requestId,
+            @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId,
+            @Header(name = SimpMessageHeaderAccessor.SESSION_ATTRIBUTES, required = false) Map<String, Object> sessionAttributes) {
+        rateLimiter.check(RateLimiter.MESSAGE_POST, RateLimiter.sessionClientKey(sessionAttributes, sessionId));
+        MessageResponse saved = messageService.postMessage(message, adminCode);
+        broadcastNewMessage(saved);
+        return CommandAck.success(requestId, saved);
+    }
+
+    /**
+     * Add a reaction to a message.
+     */
+    @MessageMapping("/reactions.add")
+    @SendToUser(destinations = ACK_QUEUE, broadcast = false)
+    public CommandAck addReaction(@Payload ReactionRequest request,
+            @Header(name = REQUEST_ID_HEADER, required = false) String requestId,
+            @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId,
+            @Header(name = SimpMessageHeaderAccessor.SESSION_ATTRIBUTES, required = false) Map<String, Object> sessionAttributes) {
+        rateLimiter.check(RateLimiter.REACTION, RateLimiter.sessionClientKey(sessionAttributes, sessionId));
+        ReactionChange change = messageService.addReaction(
+                request.getMessageId(), request.getUserId(), request.getUsername(), request.getEmoji());
+        return acknowledgeReaction(change, request, requestId);
+    }
+
     /**
-     * Broadcast a new message to all subscribers.
+     * Remove a reaction from a message.
+     */
+    @MessageMapping("/reactions.remove")
+    @SendToUser(destinations = ACK_QUEUE, broadcast = false)
+    public CommandAck removeReaction(@Payload ReactionRequest request,
+            @Header(name = REQUEST_ID_HEADER, required = false) String requestId,
+            @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId,
+            @Header(name = SimpMessageHeaderAccessor.SESSION_ATTRIBUTES, required = false) Map<String, Object> sessionAttributes) {
+        rateLimiter.check(RateLimiter.REACTION, RateLimiter.sessionClientKey(sessionAttributes, sessionId));
+        ReactionChange change = messageService.removeReaction(
+                request.getMessageId(), request.getUserId(), request.getEmoji());
+        return acknowledgeReaction(change, request, requestId);
+    }
+
+    /**
+     * Delete a message: any message with an admin code, otherwise only the user's own.
+     */
+    @MessageMapping("/messages.delete")
+    @SendToUser(destinations = ACK_QUEUE, broadcast = false)
+    public CommandAck deleteMessage(@Payload DeleteMessageCommand command,
+            @Header(name = ADMIN_CODE_HEADER, required = false) String adminCode,
+            @Header(name = REQUEST_ID_HEADER, required = false) String requestId) {
+        Message deleted = adminService.isValidAdminCode(adminCode)
+                ? messageService.deleteMessageById(command.id())
+                : messageService.deleteMessage(command.id(), command.userId());
+        if (deleted == null) {
+            return CommandAck.failure(requestId, "Message not found");
+        }
+        broadcastDelete(deleted.getChannelId(), command.id());
+        return CommandAck.success(requestId, null);
+    }
+
+    /**
+     * Replay the events a reconnecting client missed on its channel and the
+     * control topic, each from the client's position on it, or tell it to
+     * reload if they are no longer in the log.
+     */
+    @MessageMapping("/events.resume")
+    @SendToUser(destinations = REPLAY_QUEUE, broadcast = false)
+    public EventReplay resume(@Payload ResumeRequest request) {
+        Map<String, Long> afterSeqs = new HashMap<>();
+        afterSeqs.put(channelTopic(request.channelId()), request.lastSeq());
+        afterSeqs.put(CONTROL_TOPIC,
+                request.controlLastSeq() != null ? request.controlLastSeq() : request.lastSeq());
+        return wallEventLog.replaySince(request.logId(), afterSeqs);
+    }
+
+    /**
+     * Tell a session that missed frames while lagging to reload.
+     */
+    @EventListener
+    public void onResyncRequired(SlowConsumerGuard.ResyncRequired event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(event.sessionId());
+        headers.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(event.sessionId(), REPLAY_QUEUE, wallEventLog.snapshotRequired(),
+                headers.getMessageHeaders());
+    }
+
+    /**
+     * Rejected commands, e.g. posting while muted or too fast.
+     */
+    @MessageExceptionHandler({ UnauthorizedException.class, BadRequestException.class,
+            RateLimitExceededException.class })
+    @SendToUser(destinations = ACK_QUEUE, broadcast = false)
+    public CommandAck handleRejectedCommand(RuntimeException ex,
+            @Header(name = REQUEST_ID_HEADER, required = false) String requestId) {
+        log.warn("WebSocket command rejected: {}", ex.getMessage());
+        return CommandAck.failure(requestId, ex.getMessage());
+    }
+
+    @MessageExceptionHandler
+    @SendToUser(destinations = ACK_QUEUE, broadcast = false)
+    public CommandAck handleFailedCommand(Exception ex,
+            @Header(name = REQUEST_ID_HEADER, required = false) String requestId) {
+        log.error("Unexpected error in WebSocket command", ex);
+        return CommandAck.failure(requestId, "An unexpected error occurred");
+    }
+
+    // ==================== Broadcasts ====================
+
+    /**
+     * Destination of a channel; messages without a channel belong to the default one.
+     */
+    public static String channelTopic(String channelId) {
+        return CHANNEL_TOPIC_PREFIX
+                + (channelId == null || channelId.isBlank() ? MessageService.DEFAULT_CHANNEL_ID : channelId);
+    }
+
+    /**
+     * Broadcast a new message to the subscribers of its channel.
      */
     public void broadcastNewMessage(MessageResponse message) {
-        messagingTemplate.convertAndSend("/topic/messages",
-                new WebSocketEvent("NEW_MESSAGE", message));
+        publish(channelTopic(message.getChannelId()), WebSocketEvent.NEW_MESSAGE, message);
     }
 
     /**
-     * Broadcast a message deletion event.
+     * Broadcast a message deletion event to its channel.
      */
-    public void broadcastDelete(String messageId) {
-        messagingTemplate.convertAndSend("/topic/messages",
-                new WebSocketEvent("DELETE_MESSAGE", messageId));
+    public void broadcastDelete(String channelId, String messageId) {
+        publish(channelTopic(channelId), WebSocketEvent.DELETE_MESSAGE, messageId);
     }
 
     /**
-     * Broadcast mute status change.
+     * Broadcast mute status change to the whole wall.
      */
     public void broadcastMuteStatus(boolean isMuted) {
-        messagingTemplate.convertAndSend("/topic/messages",
-                new WebSocketEvent("MUTE_STATUS", isMuted));
+        publish(CONTROL_TOPIC, WebSocketEvent.MUTE_STATUS, isMuted);
     }
 
     /**
-     * Broadcast clear all messages event.
+     * Broadcast clear all messages event to the whole wall.
      */
     public void broadcastClearAll() {
-        messagingTemplate.convertAndSend("/topic/messages",
-                new WebSocketEvent("CLEAR_ALL", null));
+        publish(CONTROL_TOPIC, WebSocketEvent.CLEAR_ALL, null);
+    }
+
+    /**
+     * Broadcast the full reaction list of a message to its channel.
+     * Kept for resyncs; regular clicks go through {@link #broadcastReactionDelta}.
+     */
+    public void broadcastReactionUpdate(String channelId, String messageId, Object reactions) {
+        publish(channelTopic(channelId), WebSocketEvent.REACTION_UPDATED,
+                new ReactionUpdatePayload(messageId, reactions));
+    }
+
+    /**
+     * Broadcast the change made by a reaction write, skipping no-op writes.
+     */
+    public void broadcastReactionChange(ReactionChange change, ReactionRequest request) {
+        if (change.delta() == 0) {
+            return;
+        }
+        MessageResponse message = change.message();
+        broadcastReactionDelta(message.getChannelId(), message.getId(), request.getEmoji(),
+                request.getUserId(), request.getUsername(), change.delta(), change.count());
     }
 
     /**
-     * Broadcast reaction update to all subscribers.
+     * Broadcast a single reaction change. The payload size does not depend on
+     * how many users reacted to the message.
      */
-    public void broadcastReactionUpdate(String messageId, Object reactions) {
-        messagingTemplate.convertAndSend("/topic/messages",
-                new WebSocketEvent("REACTION_UPDATED",
-                        new ReactionUpdatePayload(messageId, reactions)));
+    public void broadcastReactionDelta(String channelId, String messageId, String emoji, String userId,
+            String username, int delta, int count) {
+        publish(channelTopic(channelId), WebSocketEvent.REACTION_DELTA,
+                new ReactionDeltaPayload(messageId, emoji, userId, username, delta, count));
+    }
+
+    // ==================== Other nodes ====================
+
+    @PostConstruct
+    void subscribeToOtherNodes() {
+        eventRelay.subscribe(RELAY_TOPIC, (origin, event) -> applyRelayedEvent(event));
+        eventRelay.onResync(messageService::invalidateLocalCaches);
     }
 
     /**
-     * WebSocket event wrapper for type-safe messaging.
+     * Bring this node's caches up to date with an event published on another
+     * node, then send it to this node's subscribers.
      */
-    public record WebSocketEvent(String type, Object payload) {
+    private void applyRelayedEvent(JsonNode event) throws JsonProcessingException {
+        String destination = event.path("destination").asText();
+        String type = event.path("type").asText();
+        JsonNode payload = event.path("payload");
+
+        Object value;
+        switch (type) {
+            case WebSocketEvent.NEW_MESSAGE -> {
+                MessageResponse message = objectMapper.treeToValue(payload, MessageResponse.class);
+                messageService.applyRemoteMessageAdded(message);
+                value = message;
+            }
+            case WebSocketEvent.DELETE_MESSAGE -> {
+                String messageId = payload.asText();
+                messageService.applyRemoteMessageDeleted(messageId);
+                value = messageId;
+            }
+            case WebSocketEvent.REACTION_UPDATED -> {
+                ReactionUpdatePayload update = objectMapper.treeToValue(payload, ReactionUpdatePayload.class);
+                messageService.applyRemoteReactionChange(update.messageId());
+                value = update;
+            }
+            case WebSocketEvent.REACTION_DELTA -> {
+                ReactionDeltaPayload delta = objectMapper.treeToValue(payload, ReactionDeltaPayload.class);
+                messageService.applyRemoteReactionDelta(delta.messageId(), delta.emoji(), delta.userId(),
+                        delta.username(), delta.delta(), delta.count());
+                value = delta;
+            }
+            case WebSocketEvent.MUTE_STATUS -> {
+                boolean muted = payload.asBoolean();
+                messageService.applyRemoteMute(muted);
+                value = muted;
+            }
+            case WebSocketEvent.CLEAR_ALL -> {
+                messageService.applyRemoteClear();
+                value = null;
+            }
+            default -> {
+                log.warn("Ignoring relayed wall event of unknown type {}", type);
+                return;
+            }
+        }
+        publishLocally(destination, type, value);
+    }
+
+    private void publish(String destination, String type, Object payload) {
+        publishLocally(destination, type, payload);
+        eventRelay.publish(RELAY_TOPIC, new RelayedWallEvent(destination, type, payload));
     }
 
     /**
-     * Payload for reaction updates.
+     * Number and log an event, then hand it to the coalescer. Both steps run
+     * under one lock so frames never carry sequence numbers out of order.
      */
-    public record ReactionUpdatePayload(String messageId, Object reactions) {
+    private void publishLocally(String destination, String type, Object payload) {
+        synchronized (wallEventLog) {
+            broadcastCoalescer.enqueue(destination, wallEventLog.append(destination, type, payload));
+        }
+    }
+
+    private CommandAck acknowledgeReaction(ReactionChange change, ReactionRequest request, String requestId) {
+        if (change == null) {
+            return CommandAck.failure(requestId, "Message not found");
+        }
+        broadcastReactionChange(change, request);
+        return CommandAck.success(requestId, change.message());
+    }
+
+    private record RelayedWallEvent(String destination, String type, Object payload) {
     }
 }
@@ -0,0 +1,20 @@
+package com.changrui.mysterious.domain.messagewall.dto;
+
+/**
+ * Receipt sent to the session that issued a WebSocket command.
+ *
+ * @param requestId value of the client's {@code request-id} header, echoed back for correlation
+ * @param success   whether the command was applied
+ * @param message   error message when it was not
+ * @param data      command result, if any
+ */
+public record CommandAck(String requestId, boolean success, String message, Object data) {
+
+    public static CommandAck success(String requestId, Object data) {
+        return new CommandAck(requestId, true, null, data);
+    }
+
+    public static CommandAck failure(String requestId, String message) {
+        return new CommandAck(requestId, false, message, null);
+    }
+}
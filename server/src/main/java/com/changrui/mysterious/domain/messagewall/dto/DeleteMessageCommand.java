@@ -0,0 +1,7 @@
+package com.changrui.mysterious.domain.messagewall.dto;
+
+/**
+ * WebSocket command deleting a message. The admin code travels in a header.
+ */
+public record DeleteMessageCommand(String id, String userId) {
+}
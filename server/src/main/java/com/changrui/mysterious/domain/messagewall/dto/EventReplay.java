@@ -0,0 +1,14 @@
+package com.changrui.mysterious.domain.messagewall.dto;
+
+import java.util.List;
+
+/**
+ * Answer to a reconnecting client's resume request.
+ *
+ * @param logId            id of the server's event log; send it back with the next resume
+ * @param latestSeq        last sequence number issued by the log
+ * @param snapshotRequired true if the missed events are no longer in the log and the client must reload
+ * @param events           missed events of the client's destinations, oldest first
+ */
+public record EventReplay(String logId, long latestSeq, boolean snapshotRequired, List<WebSocketEvent> events) {
+}
@@ -0,0 +1,48 @@
+package com.changrui.mysterious.domain.messagewall.dto;
+
+import com.changrui.mysterious.shared.exception.BadRequestException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset cursor on (timestamp, id) for message history pagination.
+ * Serialized as an opaque URL-safe token so clients never build it by hand.
+ */
+public record MessageCursor(long timestamp, String id) {
+
+    private static final String SEPARATOR = ":";
+
+    /**
+     * Build the cursor pointing at a given message.
+     */
+    public static MessageCursor of(MessageResponse message) {
+        return new MessageCursor(message.getTimestamp(), message.getId());
+    }
+
+    /**
+     * Encode this cursor as an opaque token.
+     */
+    public String encode() {
+        String raw = timestamp + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a token produced by {@link #encode()}.
+     *
+     * @throws BadRequestException if the token is malformed
+     */
+    public static MessageCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separatorIndex = raw.indexOf(SEPARATOR);
+            if (separatorIndex <= 0 || separatorIndex == raw.length() - 1) {
+                throw new BadRequestException("Invalid message cursor");
+            }
+            long timestamp = Long.parseLong(raw.substring(0, separatorIndex));
+            return new MessageCursor(timestamp, raw.substring(separatorIndex + 1));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid message cursor", e);
+        }
+    }
+}
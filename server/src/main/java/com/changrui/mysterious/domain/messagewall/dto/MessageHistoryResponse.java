@@ -0,0 +1,22 @@
+package com.changrui.mysterious.domain.messagewall.dto;
+
+import java.util.List;
+
+/**
+ * One page of message history, always ordered oldest to newest.
+ *
+ * @param messages     the messages of this page
+ * @param beforeCursor cursor to pass as {@code before} to load older messages
+ * @param afterCursor  cursor to pass as {@code after} to load newer messages
+ * @param hasMore      whether more messages exist in the requested direction
+ */
+public record MessageHistoryResponse(
+        List<MessageResponse> messages,
+        String beforeCursor,
+        String afterCursor,
+        boolean hasMore) {
+
+    public static MessageHistoryResponse empty() {
+        return new MessageHistoryResponse(List.of(), null, null, false);
+    }
+}
@@ -0,0 +1,10 @@
+package com.changrui.mysterious.domain.messagewall.dto;
+
+/**
+ * A message matching a search.
+ *
+ * @param message the matching message
+ * @param snippet HTML-escaped excerpt, matched terms wrapped in {@code <mark>}
+ */
+public record MessageSearchHit(MessageResponse message, String snippet) {
+}
@@ -0,0 +1,20 @@
+package com.changrui.mysterious.domain.messagewall.dto;
+
+import java.util.List;
+
+/**
+ * One page of search results, newest first.
+ *
+ * @param hits       the matches of this page
+ * @param nextCursor cursor to pass as {@code before} to load older matches
+ * @param hasMore    whether older matches exist
+ */
+public record MessageSearchResponse(
+        List<MessageSearchHit> hits,
+        String nextCursor,
+        boolean hasMore) {
+
+    public static MessageSearchResponse empty() {
+        return new MessageSearchResponse(List.of(), null, false);
+    }
+}
@@ -0,0 +1,24 @@
+package com.changrui.mysterious.domain.messagewall.dto;
+
+/**
+ * Payload of a REACTION_DELTA event.
+ *
+ * @param delta +1 or -1
+ * @param count the emoji's total on the message once this change is applied
+ */
+public record ReactionDeltaPayload(
+        String messageId,
+        String emoji,
+        String userId,
+        String username,
+        int delta,
+        int count) {
+
+    public ReactionDeltaPayload withDelta(int newDelta) {
+        return new ReactionDeltaPayload(messageId, emoji, userId, username, newDelta, count);
+    }
+
+    public ReactionDeltaPayload withCount(int newCount) {
+        return new ReactionDeltaPayload(messageId, emoji, userId, username, delta, newCount);
+    }
+}
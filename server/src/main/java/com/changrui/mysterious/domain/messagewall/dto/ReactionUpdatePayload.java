@@ -0,0 +1,7 @@
+package com.changrui.mysterious.domain.messagewall.dto;
+
+/**
+ * Payload of a REACTION_UPDATED event: the full reaction list of a message.
+ */
+public record ReactionUpdatePayload(String messageId, Object reactions) {
+}
@@ -0,0 +1,14 @@
+package com.changrui.mysterious.domain.messagewall.dto;
+
+/**
+ * Sent by a client after (re)connecting to get the wall events it missed.
+ *
+ * @param logId          log id from the previous {@link EventReplay}, null on first connect
+ * @param lastSeq        highest sequence number the client has applied on its channel, null on first
+ *                       connect or after switching channels
+ * @param channelId      channel the client is subscribed to
+ * @param controlLastSeq highest sequence number the client has applied on the control topic; null
+ *                       falls back to {@code lastSeq}
+ */
+public record ResumeRequest(String logId, Long lastSeq, String channelId, Long controlLastSeq) {
+}
@@ -0,0 +1,34 @@
+package com.changrui.mysterious.domain.messagewall.dto;
+
+/**
+ * Event pushed to message wall subscribers.
+ *
+ * @param type    one of the event type constants below
+ * @param payload event-specific payload
+ * @param seq     position in the {@code WallEventLog}, or null for frames that are not logged (BATCH)
+ */
+public record WebSocketEvent(String type, Object payload, Long seq) {
+
+    public static final String NEW_MESSAGE = "NEW_MESSAGE";
+    public static final String DELETE_MESSAGE = "DELETE_MESSAGE";
+    public static final String MUTE_STATUS = "MUTE_STATUS";
+    public static final String CLEAR_ALL = "CLEAR_ALL";
+    public static final String REACTION_UPDATED = "REACTION_UPDATED";
+    public static final String REACTION_DELTA = "REACTION_DELTA";
+
+    /**
+     * Several events sent as one frame; the payload is the list of events in order.
+     */
+    public static final String BATCH = "BATCH";
+
+    public WebSocketEvent(String type, Object payload) {
+        this(type, payload, null);
+    }
+
+    /**
+     * Same event with another payload, keeping its sequence number.
+     */
+    public WebSocketEvent withPayload(Object newPayload) {
+        return new WebSocketEvent(type, newPayload, seq);
+    }
+}
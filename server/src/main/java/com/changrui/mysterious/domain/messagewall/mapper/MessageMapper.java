@@ -16,9 +16,11 @@ public abstract class MessageMapper {
 
     /**
      * Standard automatic mapping.
-     * We ignore avatarUrl here because it's not in the Message entity.
+     * We ignore avatarUrl and reactions here because they're not in the Message
+     * entity.
      */
     @Mapping(target = "avatarUrl", ignore = true)
+    @Mapping(target = "reactions", ignore = true)
     public abstract MessageResponse toDto(Message message);
 
     /**
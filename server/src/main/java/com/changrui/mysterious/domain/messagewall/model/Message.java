@@ -1,20 +1,25 @@
 package com.changrui.mysterious.domain.messagewall.model;
 
-import com.changrui.mysterious.domain.messagewall.converter.ReactionsConverter;
 import jakarta.persistence.*;
-import java.util.LinkedList;
-import java.util.List;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 /**
  * Entity representing a chat message.
  * Maps to the 'messages' table in the database.
+ * Reactions live in their own table, see {@link UserReaction}.
+ * The table is partitioned by month on timestamp, so the primary key in the
+ * database is (id, timestamp); see MessagePartitionMaintenanceService.
+ * The table also has a generated search_vector column, only read by native
+ * search queries and therefore not mapped here.
  */
 @Data
 @NoArgsConstructor
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        @Index(name = "idx_messages_timestamp", columnList = "timestamp, id"),
+        @Index(name = "idx_messages_channel_timestamp", columnList = "channel_id, timestamp, id")
+})
 public class Message {
 
     @Id
@@ -51,10 +56,6 @@ public class Message {
     @Column(name = "channel_id")
     private String channelId;
 
-    @Column(name = "reactions", columnDefinition = "TEXT")
-    @Convert(converter = ReactionsConverter.class)
-    private List<MessageReaction> reactions = new LinkedList<>();
-
     @Column(name = "image_url")
     private String imageUrl;
 
@@ -67,11 +68,5 @@ public class Message {
         this.timestamp = timestamp;
         this.isAnonymous = isAnonymous;
         this.isVerified = isVerified;
-        this.reactions = new LinkedList<>();
-    }
-
-    // Custom getter for reactions to ensure non-null
-    public List<MessageReaction> getReactions() {
-        return reactions != null ? reactions : new LinkedList<>();
     }
 }
@@ -7,8 +7,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 /**
- * Represents a reaction to a message.
- * Stored as JSON in the Message entity.
+ * Represents the aggregated reactions of one emoji on a message.
+ * Built from {@link UserReaction} rows for API responses.
  */
 @Data
 @NoArgsConstructor
@@ -0,0 +1,38 @@
+package com.changrui.mysterious.domain.messagewall.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Entity representing one user's emoji reaction to a message.
+ * Maps to the 'message_reactions' table in the database.
+ * The composite key (message_id, emoji, user_id) makes reacting idempotent.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "message_reactions")
+@IdClass(UserReactionId.class)
+public class UserReaction {
+
+    @Id
+    @Column(name = "message_id")
+    private String messageId;
+
+    @Id
+    @Column(name = "emoji", length = 64)
+    private String emoji;
+
+    @Id
+    @Column(name = "user_id")
+    private String userId;
+
+    @Column(name = "username")
+    private String username;
+
+    @Column(name = "reacted_at", nullable = false)
+    private long reactedAt;
+}
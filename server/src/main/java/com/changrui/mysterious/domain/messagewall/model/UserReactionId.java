@@ -0,0 +1,20 @@
+package com.changrui.mysterious.domain.messagewall.model;
+
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * Composite key for UserReaction entity.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class UserReactionId implements Serializable {
+    private String messageId;
+    private String emoji;
+    private String userId;
+}
@@ -1,17 +1,189 @@
 package com.changrui.mysterious.domain.messagewall.repository;
 
 import com.changrui.mysterious.domain.messagewall.model.Message;
+import java.util.Collection;
 import java.util.List;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
  * Repository for Message entity operations.
+ * History reads use keyset pagination on (timestamp, id), backed by the
+ * idx_messages_channel_timestamp and idx_messages_timestamp indexes.
+ * Search runs on the generated search_vector column and its GIN index.
+ *
+ * Months moved out of the partitioned messages table by
+ * MessagePartitionMaintenanceService live in messages_archive, which is only
+ * read and deleted from, through the native archive queries below.
  */
 @Repository
 public interface MessageRepository extends JpaRepository<Message, String> {
 
-    List<Message> findAllByOrderByTimestampAsc();
+    String MESSAGE_COLUMNS = "m.id, m.user_id, m.name, m.message, m.timestamp, m.is_anonymous, m.is_verified, "
+            + "m.quoted_message_id, m.quoted_name, m.quoted_message, m.channel_id, m.image_url";
 
-    void deleteByIdAndUserId(String id, String userId);
+    String ARCHIVE_COLUMNS = "a.id, a.user_id, a.name, a.message, a.timestamp, a.is_anonymous, a.is_verified, "
+            + "a.quoted_message_id, a.quoted_name, a.quoted_message, a.channel_id, a.image_url";
+
+    String SEARCH_FILTER = "WHERE m.search_vector @@ websearch_to_tsquery('simple', :query) "
+            + "AND (CAST(:channelId AS VARCHAR) IS NULL OR m.channel_id = :channelId) "
+            + "AND (CAST(:userId AS VARCHAR) IS NULL OR (m.user_id = :userId AND m.is_anonymous = false)) "
+            + "AND (m.timestamp, m.id) < (:timestamp, :id) "
+            + "ORDER BY m.timestamp DESC, m.id DESC LIMIT :rowCount";
+
+    long deleteByIdAndUserId(String id, String userId);
+
+    /**
+     * Delete every recent message in a single statement, without loading any entity.
+     *
+     * @return number of messages deleted
+     */
+    @Modifying
+    @Query("DELETE FROM Message m")
+    int deleteAllInBulk();
+
+    @Query("SELECT DISTINCT m.channelId FROM Message m WHERE m.channelId IS NOT NULL")
+    List<String> findDistinctChannelIds();
+
+    /**
+     * Newest messages across all channels (newest first).
+     */
+    @Query("SELECT m FROM Message m ORDER BY m.timestamp DESC, m.id DESC")
+    List<Message> findLatest(Pageable pageable);
+
+    /**
+     * Newest messages of a channel (newest first).
+     */
+    @Query("SELECT m FROM Message m WHERE m.channelId = :channelId ORDER BY m.timestamp DESC, m.id DESC")
+    List<Message> findLatestInChannel(@Param("channelId") String channelId, Pageable pageable);
+
+    /**
+     * Messages strictly older than the (timestamp, id) cursor (newest first).
+     * The row comparison is a range bound on the index, so a page costs the
+     * same however deep the cursor is.
+     */
+    @Query(value = "SELECT " + MESSAGE_COLUMNS + " FROM messages m "
+            + "WHERE (m.timestamp, m.id) < (:timestamp, :id) "
+            + "ORDER BY m.timestamp DESC, m.id DESC LIMIT :rowCount", nativeQuery = true)
+    List<Message> findBefore(@Param("timestamp") long timestamp, @Param("id") String id,
+            @Param("rowCount") int rowCount);
+
+    /**
+     * Messages of a channel strictly older than the (timestamp, id) cursor
+     * (newest first).
+     */
+    @Query(value = "SELECT " + MESSAGE_COLUMNS + " FROM messages m "
+            + "WHERE m.channel_id = :channelId AND (m.timestamp, m.id) < (:timestamp, :id) "
+            + "ORDER BY m.timestamp DESC, m.id DESC LIMIT :rowCount", nativeQuery = true)
+    List<Message> findBeforeInChannel(@Param("channelId") String channelId, @Param("timestamp") long timestamp,
+            @Param("id") String id, @Param("rowCount") int rowCount);
+
+    /**
+     * Messages strictly newer than the (timestamp, id) cursor (oldest first).
+     */
+    @Query(value = "SELECT " + MESSAGE_COLUMNS + " FROM messages m "
+            + "WHERE (m.timestamp, m.id) > (:timestamp, :id) "
+            + "ORDER BY m.timestamp ASC, m.id ASC LIMIT :rowCount", nativeQuery = true)
+    List<Message> findAfter(@Param("timestamp") long timestamp, @Param("id") String id,
+            @Param("rowCount") int rowCount);
+
+    /**
+     * Messages of a channel strictly newer than the (timestamp, id) cursor
+     * (oldest first).
+     */
+    @Query(value = "SELECT " + MESSAGE_COLUMNS + " FROM messages m "
+            + "WHERE m.channel_id = :channelId AND (m.timestamp, m.id) > (:timestamp, :id) "
+            + "ORDER BY m.timestamp ASC, m.id ASC LIMIT :rowCount", nativeQuery = true)
+    List<Message> findAfterInChannel(@Param("channelId") String channelId, @Param("timestamp") long timestamp,
+            @Param("id") String id, @Param("rowCount") int rowCount);
+
+    /**
+     * Full-text search over recent and archived messages, newest first,
+     * keyset-paginated on (timestamp, id).
+     * Snippets are only computed for the rows of the page.
+     * Anonymous messages never match an author filter.
+     *
+     * @param query           user input, parsed with websearch_to_tsquery
+     * @param channelId       channel to search, or null for all channels
+     * @param userId          author to search, or null for all authors
+     * @param timestamp       cursor timestamp; only older matches are returned
+     * @param id              cursor id, breaking timestamp ties
+     * @param headlineOptions ts_headline options
+     * @param rowCount        maximum number of rows
+     */
+    @Query(value = "SELECT page.id AS id, page.timestamp AS timestamp, "
+            + "ts_headline('simple', page.message, websearch_to_tsquery('simple', :query), :headlineOptions) "
+            + "AS snippet "
+            + "FROM ((SELECT m.id, m.message, m.timestamp FROM messages m " + SEARCH_FILTER + ") "
+            + "UNION ALL (SELECT m.id, m.message, m.timestamp FROM messages_archive m " + SEARCH_FILTER + ") "
+            + "ORDER BY timestamp DESC, id DESC LIMIT :rowCount) page "
+            + "ORDER BY page.timestamp DESC, page.id DESC", nativeQuery = true)
+    List<SearchRow> search(@Param("query") String query, @Param("channelId") String channelId,
+            @Param("userId") String userId, @Param("timestamp") long timestamp, @Param("id") String id,
+            @Param("headlineOptions") String headlineOptions, @Param("rowCount") int rowCount);
+
+    // ==================== Archive ====================
+
+    /**
+     * Archived messages strictly older than the (timestamp, id) cursor (newest first).
+     *
+     * @param channelId channel to read, or null for all channels
+     */
+    @Query(value = "SELECT " + ARCHIVE_COLUMNS + " FROM messages_archive a "
+            + "WHERE (CAST(:channelId AS VARCHAR) IS NULL OR a.channel_id = :channelId) "
+            + "AND (a.timestamp, a.id) < (:timestamp, :id) "
+            + "ORDER BY a.timestamp DESC, a.id DESC LIMIT :rowCount", nativeQuery = true)
+    List<Message> findArchivedBefore(@Param("channelId") String channelId, @Param("timestamp") long timestamp,
+            @Param("id") String id, @Param("rowCount") int rowCount);
+
+    /**
+     * Archived messages strictly newer than the (timestamp, id) cursor (oldest first).
+     *
+     * @param channelId channel to read, or null for all channels
+     */
+    @Query(value = "SELECT " + ARCHIVE_COLUMNS + " FROM messages_archive a "
+            + "WHERE (CAST(:channelId AS VARCHAR) IS NULL OR a.channel_id = :channelId) "
+            + "AND (a.timestamp, a.id) > (:timestamp, :id) "
+            + "ORDER BY a.timestamp ASC, a.id ASC LIMIT :rowCount", nativeQuery = true)
+    List<Message> findArchivedAfter(@Param("channelId") String channelId, @Param("timestamp") long timestamp,
+            @Param("id") String id, @Param("rowCount") int rowCount);
+
+    @Query(value = "SELECT " + ARCHIVE_COLUMNS + " FROM messages_archive a WHERE a.id IN :ids", nativeQuery = true)
+    List<Message> findArchivedByIds(@Param("ids") Collection<String> ids);
+
+    /**
+     * Delete an archived message.
+     *
+     * @param userId author the message must belong to, or null for any author
+     * @return 1 if the message was deleted, 0 otherwise
+     */
+    @Modifying
+    @Query(value = "DELETE FROM messages_archive a WHERE a.id = :id "
+            + "AND (CAST(:userId AS VARCHAR) IS NULL OR a.user_id = :userId)", nativeQuery = true)
+    int deleteArchived(@Param("id") String id, @Param("userId") String userId);
+
+    /**
+     * Delete every archived message in a single statement.
+     *
+     * @return number of messages deleted
+     */
+    @Modifying
+    @Query(value = "DELETE FROM messages_archive", nativeQuery = true)
+    int deleteAllArchivedInBulk();
+
+    /**
+     * One search match: the message id, its timestamp for the cursor, and the
+     * highlighted excerpt.
+     */
+    interface SearchRow {
+        String getId();
+
+        long getTimestamp();
+
+        String getSnippet();
+    }
 }
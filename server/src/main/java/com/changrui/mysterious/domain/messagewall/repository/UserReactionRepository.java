@@ -0,0 +1,91 @@
+package com.changrui.mysterious.domain.messagewall.repository;
+
+import com.changrui.mysterious.domain.messagewall.model.UserReaction;
+import com.changrui.mysterious.domain.messagewall.model.UserReactionId;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository for UserReaction entity operations.
+ * Writes are single statements so concurrent reactions never contend on the
+ * message row.
+ */
+@Repository
+public interface UserReactionRepository extends JpaRepository<UserReaction, UserReactionId> {
+
+    /**
+     * Insert a reaction unless the user already reacted with this emoji.
+     *
+     * @return 1 if the reaction was added, 0 if it already existed
+     */
+    @Modifying
+    @Query(value = "INSERT INTO message_reactions (message_id, emoji, user_id, username, reacted_at) "
+            + "VALUES (:messageId, :emoji, :userId, :username, :reactedAt) "
+            + "ON CONFLICT (message_id, emoji, user_id) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("messageId") String messageId, @Param("emoji") String emoji,
+            @Param("userId") String userId, @Param("username") String username,
+            @Param("reactedAt") long reactedAt);
+
+    /**
+     * Remove a user's reaction.
+     *
+     * @return 1 if the reaction was removed, 0 if there was none
+     */
+    @Modifying
+    @Query("DELETE FROM UserReaction r WHERE r.messageId = :messageId AND r.emoji = :emoji AND r.userId = :userId")
+    int deleteReaction(@Param("messageId") String messageId, @Param("emoji") String emoji,
+            @Param("userId") String userId);
+
+    /**
+     * Remove every reaction of a message, which has no foreign key to cascade from.
+     */
+    @Modifying
+    @Query("DELETE FROM UserReaction r WHERE r.messageId = :messageId")
+    int deleteByMessageIdInBulk(@Param("messageId") String messageId);
+
+    @Modifying
+    @Query("DELETE FROM UserReaction r")
+    int deleteAllInBulk();
+
+    /**
+     * Number of users who reacted to a message with an emoji.
+     */
+    @Query("SELECT COUNT(r) FROM UserReaction r WHERE r.messageId = :messageId AND r.emoji = :emoji")
+    long countByMessageIdAndEmoji(@Param("messageId") String messageId, @Param("emoji") String emoji);
+
+    /**
+     * Reaction counts of a message per emoji, in order of first reaction,
+     * without loading the reactors.
+     */
+    @Query("SELECT r.emoji AS emoji, COUNT(r) AS count FROM UserReaction r WHERE r.messageId = :messageId "
+            + "GROUP BY r.emoji ORDER BY MIN(r.reactedAt)")
+    List<EmojiCount> countByEmoji(@Param("messageId") String messageId);
+
+    /**
+     * Reactions of one user on a message.
+     */
+    @Query("SELECT r FROM UserReaction r WHERE r.messageId = :messageId AND r.userId = :userId ORDER BY r.reactedAt")
+    List<UserReaction> findByMessageIdAndUserId(@Param("messageId") String messageId,
+            @Param("userId") String userId);
+
+    /**
+     * All reactions of a set of messages in one query, ordered for display.
+     */
+    @Query("SELECT r FROM UserReaction r WHERE r.messageId IN :messageIds ORDER BY r.messageId, r.reactedAt")
+    List<UserReaction> findByMessageIds(@Param("messageIds") Collection<String> messageIds);
+
+    /**
+     * Row of {@link #countByEmoji}.
+     */
+    interface EmojiCount {
+
+        String getEmoji();
+
+        long getCount();
+    }
+}
@@ -0,0 +1,263 @@
+package com.changrui.mysterious.domain.messagewall.service;
+
+import com.changrui.mysterious.domain.messagewall.dto.MessageResponse;
+import com.changrui.mysterious.domain.messagewall.dto.ReactionDeltaPayload;
+import com.changrui.mysterious.domain.messagewall.dto.ReactionUpdatePayload;
+import com.changrui.mysterious.domain.messagewall.dto.WebSocketEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Broadcast stage between the controllers and the STOMP broker.
+ * Events are buffered per destination for a short window, events made
+ * redundant by later ones are dropped, and the rest go out as one frame.
+ * A window of 0 sends every event immediately.
+ *
+ * Each destination flushes on its own window, but clients apply frames in
+ * arrival order across destinations, so a clear is a barrier: everything
+ * queued before it, on any destination, is sent first, then the clear.
+ */
+@Slf4j
+@Component
+public class BroadcastCoalescer {
+
+    private static final String MESSAGE_KEY = "msg:";
+    private static final String DELTA_KEY = "delta:";
+    private static final String SNAPSHOT_KEY = "snapshot:";
+    private static final String CLEAR_KEY = "clear";
+    private static final String MUTE_KEY = "mute";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long windowMillis;
+    private final Map<String, PendingBatch> pending = new HashMap<>();
+    // Held from taking a batch to sending it, so that frames leave in that order
+    private final Object sendLock = new Object();
+    private final ScheduledExecutorService scheduler;
+    private final Timer flushLatency;
+    private final DistributionSummary batchSize;
+    private final Counter coalesced;
+
+    public BroadcastCoalescer(
+            SimpMessagingTemplate messagingTemplate,
+            @Value("${app.messagewall.broadcast-window-ms:25}") long windowMillis,
+            MeterRegistry meterRegistry) {
+        this.messagingTemplate = messagingTemplate;
+        this.windowMillis = Math.max(0, windowMillis);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "broadcast-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flushLatency = Timer.builder("messagewall.broadcast.flush.latency")
+                .description("Time between the first buffered event of a frame and its send")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("messagewall.broadcast.batch.size")
+                .description("Events carried by one broadcast frame")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("messagewall.broadcast.events.coalesced")
+                .description("Events dropped because a later event made them redundant")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue an event for a destination. The first event of a window schedules the flush.
+     */
+    public void enqueue(String destination, WebSocketEvent event) {
+        if (windowMillis == 0) {
+            send(destination, List.of(event), System.nanoTime());
+            return;
+        }
+
+        if (WebSocketEvent.CLEAR_ALL.equals(event.type())) {
+            enqueueBarrier(destination, event);
+            return;
+        }
+
+        boolean firstOfWindow;
+        int dropped;
+        synchronized (pending) {
+            PendingBatch batch = pending.get(destination);
+            firstOfWindow = batch == null;
+            if (firstOfWindow) {
+                batch = new PendingBatch(System.nanoTime());
+                pending.put(destination, batch);
+            }
+            dropped = batch.add(event);
+        }
+        coalesced.increment(dropped);
+
+        if (firstOfWindow) {
+            scheduler.schedule(() -> flush(destination), windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Send the pending events of a destination now.
+     */
+    public void flush(String destination) {
+        synchronized (sendLock) {
+            PendingBatch batch;
+            synchronized (pending) {
+                batch = pending.remove(destination);
+            }
+            // Every event of the window may have cancelled out
+            if (batch != null && !batch.events.isEmpty()) {
+                send(destination, new ArrayList<>(batch.events.values()), batch.firstEnqueuedNanos);
+            }
+        }
+    }
+
+    /**
+     * Send everything still pending, e.g. on shutdown.
+     */
+    public void flushAll() {
+        List<String> destinations;
+        synchronized (pending) {
+            destinations = new ArrayList<>(pending.keySet());
+        }
+        destinations.forEach(this::flush);
+    }
+
+    /**
+     * Send the pending events of every other destination, then the barrier
+     * with what its own destination had pending.
+     */
+    private void enqueueBarrier(String destination, WebSocketEvent event) {
+        synchronized (sendLock) {
+            List<String> others;
+            int dropped;
+            synchronized (pending) {
+                dropped = pending.computeIfAbsent(destination, key -> new PendingBatch(System.nanoTime()))
+                        .add(event);
+                others = pending.keySet().stream().filter(key -> !key.equals(destination)).toList();
+            }
+            coalesced.increment(dropped);
+            others.forEach(this::flush);
+            flush(destination);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        flushAll();
+    }
+
+    private void send(String destination, List<WebSocketEvent> events, long firstEnqueuedNanos) {
+        Object frame = events.size() == 1
+                ? events.get(0)
+                : new WebSocketEvent(WebSocketEvent.BATCH, events);
+        try {
+            messagingTemplate.convertAndSend(destination, frame);
+        } catch (Exception e) {
+            log.warn("Failed to broadcast {} event(s) to {}: {}", events.size(), destination, e.getMessage());
+        }
+        batchSize.record(events.size());
+        flushLatency.record(System.nanoTime() - firstEnqueuedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Events of one destination waiting for the end of the window, keyed by
+     * what they describe so that later events can replace or cancel earlier ones.
+     * Not thread-safe; guarded by the pending map.
+     */
+    private static final class PendingBatch {
+
+        private final long firstEnqueuedNanos;
+        private final LinkedHashMap<String, WebSocketEvent> events = new LinkedHashMap<>();
+        private int sequence;
+
+        private PendingBatch(long firstEnqueuedNanos) {
+            this.firstEnqueuedNanos = firstEnqueuedNanos;
+        }
+
+        /**
+         * Add an event, merging it with the pending ones.
+         *
+         * @return how many events were dropped as a result
+         */
+        private int add(WebSocketEvent event) {
+            int sizeIfAppended = events.size() + 1;
+            switch (event.type()) {
+                case WebSocketEvent.NEW_MESSAGE ->
+                    events.put(MESSAGE_KEY + ((MessageResponse) event.payload()).getId(), event);
+                case WebSocketEvent.DELETE_MESSAGE -> addDelete((String) event.payload(), event);
+                case WebSocketEvent.REACTION_DELTA -> addDelta(event);
+                case WebSocketEvent.REACTION_UPDATED -> {
+                    String messageId = ((ReactionUpdatePayload) event.payload()).messageId();
+                    dropReactions(messageId);
+                    events.put(SNAPSHOT_KEY + messageId, event);
+                }
+                case WebSocketEvent.CLEAR_ALL -> {
+                    // Message events before a clear are moot; mute changes are not
+                    events.keySet().removeIf(key -> !key.equals(MUTE_KEY));
+                    events.put(CLEAR_KEY, event);
+                }
+                case WebSocketEvent.MUTE_STATUS -> {
+                    events.remove(MUTE_KEY);
+                    events.put(MUTE_KEY, event);
+                }
+                default -> events.put("event:" + sequence++, event);
+            }
+            return sizeIfAppended - events.size();
+        }
+
+        private void addDelete(String messageId, WebSocketEvent event) {
+            WebSocketEvent previous = events.remove(MESSAGE_KEY + messageId);
+            dropReactions(messageId);
+            // A message created and deleted within the window is never shown
+            if (previous == null || !WebSocketEvent.NEW_MESSAGE.equals(previous.type())) {
+                events.put(MESSAGE_KEY + messageId, event);
+            }
+        }
+
+        /**
+         * Fold a reaction change into the pending change of the same user, then
+         * renumber the counts of that emoji's pending changes so that clients
+         * applying them in order end on the latest count.
+         */
+        private void addDelta(WebSocketEvent event) {
+            ReactionDeltaPayload delta = (ReactionDeltaPayload) event.payload();
+            String emojiPrefix = DELTA_KEY + delta.messageId() + "|" + delta.emoji() + "|";
+            String key = emojiPrefix + delta.userId();
+
+            WebSocketEvent previous = events.remove(key);
+            int net = delta.delta();
+            if (previous != null) {
+                net += ((ReactionDeltaPayload) previous.payload()).delta();
+            }
+            if (net != 0) {
+                events.put(key, event.withPayload(delta.withDelta(net)));
+            }
+
+            List<String> keys = events.keySet().stream().filter(k -> k.startsWith(emojiPrefix)).toList();
+            int count = delta.count();
+            for (int i = keys.size() - 1; i >= 0; i--) {
+                WebSocketEvent pending = events.get(keys.get(i));
+                ReactionDeltaPayload pendingDelta = (ReactionDeltaPayload) pending.payload();
+                events.put(keys.get(i), pending.withPayload(pendingDelta.withCount(count)));
+                count -= pendingDelta.delta();
+            }
+        }
+
+        private void dropReactions(String messageId) {
+            String deltaPrefix = DELTA_KEY + messageId + "|";
+            events.keySet().removeIf(key -> key.startsWith(deltaPrefix) || key.equals(SNAPSHOT_KEY + messageId));
+        }
+    }
+}
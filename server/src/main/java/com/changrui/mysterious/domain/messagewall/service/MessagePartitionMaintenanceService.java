@@ -0,0 +1,279 @@
+package com.changrui.mysterious.domain.messagewall.service;
+
+import com.changrui.mysterious.shared.cache.ResourceVersions;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Maintenance of the monthly partitions of the messages table (UTC months,
+ * named messages_pYYYYMM).
+ *
+ * Partitions are created ahead of time; rows that reached messages_default
+ * before their month had a partition are moved into it. Each partition is
+ * maintained on its own, so one failure does not hold back the others.
+ * Partitions older than the hot
+ * retention are detached and attached to messages_archive, where they stay
+ * readable through the history and search APIs but no longer weigh on the
+ * indexes used by recent reads and writes. Archived messages can only be read
+ * and deleted.
+ * Archived partitions past the archive retention are dropped, which removes a
+ * whole month without a mass DELETE.
+ *
+ * Every instance schedules the maintenance; a Postgres advisory lock lets
+ * only one of them run it at a time, the others skip their run.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MessagePartitionMaintenanceService {
+
+    static final String HOT_TABLE = "messages";
+    static final String ARCHIVE_TABLE = "messages_archive";
+    static final String DEFAULT_PARTITION = "messages_default";
+
+    // Every column but the generated search_vector
+    private static final String COLUMNS = "id, user_id, name, message, timestamp, is_anonymous, is_verified, "
+            + "quoted_message_id, quoted_name, quoted_message, channel_id, reactions, image_url";
+
+    private static final String PARTITION_PREFIX = "messages_p";
+    private static final Pattern PARTITION_NAME = Pattern.compile(PARTITION_PREFIX + "(\\d{6})");
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final String MAINTENANCE_LOCK = "messages_partition_maintenance";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RecentMessageBuffer recentMessageBuffer;
+    private final ResourceVersions resourceVersions;
+
+    @Value("${app.messagewall.partitions.months-ahead:3}")
+    private int monthsAhead;
+
+    @Value("${app.messagewall.partitions.hot-months:12}")
+    private int hotMonths;
+
+    @Value("${app.messagewall.partitions.archive-retention-months:0}")
+    private int archiveRetentionMonths;
+
+    /**
+     * Run at startup, so a long-stopped instance catches up, then daily.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${app.messagewall.partitions.maintenance-cron:0 30 3 * * *}")
+    public void maintainPartitions() {
+        try {
+            // The lock belongs to the session, so it is taken and released on
+            // one connection held for the whole run
+            Boolean ran = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+                if (!advisoryLock(connection, "pg_try_advisory_lock")) {
+                    return false;
+                }
+                try {
+                    maintainPartitions(YearMonth.now(ZoneOffset.UTC));
+                } finally {
+                    advisoryLock(connection, "pg_advisory_unlock");
+                }
+                return true;
+            });
+            if (!Boolean.TRUE.equals(ran)) {
+                log.info("Message partition maintenance is running on another instance, skipping");
+            }
+        } catch (Exception e) {
+            log.error("Message partition maintenance failed: ", e);
+        }
+    }
+
+    private static boolean advisoryLock(Connection connection, String function) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT " + function + "(hashtext(?))")) {
+            statement.setString(1, MAINTENANCE_LOCK);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() && result.getBoolean(1);
+            }
+        }
+    }
+
+    void maintainPartitions(YearMonth currentMonth) {
+        if (!isPartitioned(HOT_TABLE) || !isPartitioned(ARCHIVE_TABLE)) {
+            log.debug("messages is not partitioned, skipping partition maintenance");
+            return;
+        }
+
+        int created = createPartitions(currentMonth);
+        int archived = hotMonths > 0 ? archivePartitions(currentMonth.minusMonths(hotMonths)) : 0;
+        int dropped = archiveRetentionMonths > 0
+                ? dropArchivedPartitions(currentMonth.minusMonths(archiveRetentionMonths))
+                : 0;
+
+        if (dropped > 0) {
+            // Dropped messages may still be buffered, or cached by clients
+            recentMessageBuffer.invalidate();
+            resourceVersions.bumpAll(ResourceVersions.MESSAGES);
+        }
+        log.info("Message partitions: {} created, {} archived, {} dropped", created, archived, dropped);
+    }
+
+    /**
+     * Create the partitions of the current month and the next ones.
+     */
+    private int createPartitions(YearMonth currentMonth) {
+        List<String> existing = partitionsOf(HOT_TABLE);
+        boolean hasDefault = existing.contains(DEFAULT_PARTITION);
+        int created = 0;
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = currentMonth.plusMonths(i);
+            String partition = partitionName(month);
+            if (existing.contains(partition)) {
+                continue;
+            }
+            try {
+                if (hasDefault) {
+                    createPartitionFromDefault(partition, month);
+                } else {
+                    jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partition
+                            + " PARTITION OF " + HOT_TABLE + " " + boundsOf(month));
+                }
+                created++;
+            } catch (Exception e) {
+                log.error("Failed to create message partition {}: ", partition, e);
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Create the partition of a month when a default partition exists. Rows
+     * of that month already in the default partition would make a plain
+     * CREATE ... PARTITION OF fail, so the partition is created standalone,
+     * those rows are moved into it, and it is attached. The default partition
+     * is locked meanwhile so no new row of the month lands there.
+     */
+    private void createPartitionFromDefault(String partition, YearMonth month) {
+        String inMonth = " WHERE timestamp >= " + startMillis(month)
+                + " AND timestamp < " + startMillis(month.plusMonths(1));
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("LOCK TABLE " + DEFAULT_PARTITION + " IN ACCESS EXCLUSIVE MODE");
+            jdbcTemplate.execute("CREATE TABLE " + partition
+                    + " (LIKE " + HOT_TABLE + " INCLUDING DEFAULTS INCLUDING GENERATED)");
+            int moved = jdbcTemplate.update("INSERT INTO " + partition + " (" + COLUMNS + ") SELECT " + COLUMNS
+                    + " FROM " + DEFAULT_PARTITION + inMonth);
+            if (moved > 0) {
+                jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + inMonth);
+                log.info("Moving {} message(s) from {} to {}", moved, DEFAULT_PARTITION, partition);
+            }
+            jdbcTemplate.execute("ALTER TABLE " + HOT_TABLE + " ATTACH PARTITION " + partition + " "
+                    + boundsOf(month));
+        });
+    }
+
+    /**
+     * Move the partitions of months before {@code firstHotMonth} to the archive.
+     * Detach and attach run in one transaction so rows are never invisible.
+     */
+    private int archivePartitions(YearMonth firstHotMonth) {
+        int archived = 0;
+        for (String partition : partitionsOf(HOT_TABLE)) {
+            Optional<YearMonth> month = monthOf(partition);
+            if (month.isPresent() && month.get().isBefore(firstHotMonth)) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        jdbcTemplate.execute("ALTER TABLE " + HOT_TABLE + " DETACH PARTITION " + partition);
+                        jdbcTemplate.execute("ALTER TABLE " + ARCHIVE_TABLE + " ATTACH PARTITION " + partition
+                                + " " + boundsOf(month.get()));
+                    });
+                    log.info("Archived message partition {}", partition);
+                    archived++;
+                } catch (Exception e) {
+                    log.error("Failed to archive message partition {}: ", partition, e);
+                }
+            }
+        }
+        return archived;
+    }
+
+    /**
+     * Drop the archived partitions of months before {@code firstKeptMonth},
+     * along with the reactions of their messages.
+     */
+    private int dropArchivedPartitions(YearMonth firstKeptMonth) {
+        int dropped = 0;
+        for (String partition : partitionsOf(ARCHIVE_TABLE)) {
+            Optional<YearMonth> month = monthOf(partition);
+            if (month.isPresent() && month.get().isBefore(firstKeptMonth)) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        jdbcTemplate.update("DELETE FROM message_reactions r USING " + partition
+                                + " p WHERE r.message_id = p.id");
+                        jdbcTemplate.execute("DROP TABLE " + partition);
+                    });
+                    log.info("Dropped archived message partition {}", partition);
+                    dropped++;
+                } catch (Exception e) {
+                    log.error("Failed to drop archived message partition {}: ", partition, e);
+                }
+            }
+        }
+        return dropped;
+    }
+
+    private boolean isPartitioned(String table) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid "
+                        + "WHERE c.relname = ?",
+                Integer.class, table);
+        return count != null && count > 0;
+    }
+
+    private List<String> partitionsOf(String table) {
+        return jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i "
+                        + "JOIN pg_class c ON c.oid = i.inhrelid "
+                        + "JOIN pg_class p ON p.oid = i.inhparent "
+                        + "WHERE p.relname = ? ORDER BY c.relname",
+                String.class, table);
+    }
+
+    static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+    }
+
+    /**
+     * Month of a monthly partition; empty for the default partition or foreign tables.
+     */
+    static Optional<YearMonth> monthOf(String partitionName) {
+        Matcher matcher = PARTITION_NAME.matcher(partitionName);
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        return Optional.of(YearMonth.parse(matcher.group(1), PARTITION_SUFFIX));
+    }
+
+    /**
+     * Partition bounds of a month, in epoch milliseconds like messages.timestamp.
+     */
+    static String boundsOf(YearMonth month) {
+        return "FOR VALUES FROM (" + startMillis(month) + ") TO (" + startMillis(month.plusMonths(1)) + ")";
+    }
+
+    private static long startMillis(YearMonth month) {
+        return month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
@@ -1,69 +1,368 @@
 package com.changrui.mysterious.domain.messagewall.service;
 
+import com.changrui.mysterious.domain.messagewall.dto.MessageCursor;
+import com.changrui.mysterious.domain.messagewall.dto.MessageHistoryResponse;
 import com.changrui.mysterious.domain.messagewall.dto.MessageResponse;
+import com.changrui.mysterious.domain.messagewall.dto.MessageSearchHit;
+import com.changrui.mysterious.domain.messagewall.dto.MessageSearchResponse;
 import com.changrui.mysterious.domain.messagewall.model.ChatSetting;
 import com.changrui.mysterious.domain.messagewall.model.Message;
 import com.changrui.mysterious.domain.messagewall.model.MessageReaction;
 import com.changrui.mysterious.domain.messagewall.model.MessageReaction.ReactionUser;
+import com.changrui.mysterious.domain.messagewall.model.UserReaction;
 import com.changrui.mysterious.domain.messagewall.repository.ChatSettingRepository;
 import com.changrui.mysterious.domain.messagewall.repository.MessageRepository;
+import com.changrui.mysterious.domain.messagewall.repository.UserReactionRepository;
 import com.changrui.mysterious.domain.profile.service.ActivityService;
+import com.changrui.mysterious.domain.profile.service.AuthorCardCache;
 import com.changrui.mysterious.domain.profile.service.ProfileIntegrationService;
-import java.util.LinkedList;
+import com.changrui.mysterious.domain.user.service.AdminService;
+import com.changrui.mysterious.domain.user.service.UserVerificationService;
+import com.changrui.mysterious.shared.cache.ResourceVersions;
+import com.changrui.mysterious.shared.exception.BadRequestException;
+import com.changrui.mysterious.shared.exception.UnauthorizedException;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.util.HtmlUtils;
 
 /**
  * Service for managing chat messages.
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class MessageService {
 
+    public static final String DEFAULT_CHANNEL_ID = "general";
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+    public static final int MAX_SEARCH_QUERY_LENGTH = 200;
+
+    // ts_headline marks matches with control characters, swapped for <mark>
+    // once the rest of the excerpt has been HTML-escaped
+    private static final String MATCH_START = "\u0002";
+    private static final String MATCH_END = "\u0003";
+    // Activity updates waiting to run; past this, new ones are dropped
+    private static final int ACTIVITY_QUEUE_SIZE = 10_000;
+    private static final String HEADLINE_OPTIONS = "StartSel=" + MATCH_START + ", StopSel=" + MATCH_END
+            + ", MaxWords=20, MinWords=8, MaxFragments=2, FragmentDelimiter=\" … \"";
+
     private final MessageRepository messageRepository;
     private final ChatSettingRepository chatSettingRepository;
     private final ActivityService activityService;
     private final ProfileIntegrationService profileIntegrationService;
+    private final RecentMessageBuffer recentMessageBuffer;
+    private final UserReactionRepository userReactionRepository;
+    private final AdminService adminService;
+    private final UserVerificationService userVerificationService;
+    private final ResourceVersions resourceVersions;
+
+    // Mute flag read on every post and initial load; refreshed once setMuted commits and,
+    // for changes made on other instances, after the TTL
+    @Value("${app.messagewall.mute-cache-ttl-ms:5000}")
+    private long muteCacheTtlMillis;
+    private volatile CachedMute cachedMute;
+    // Profile statistics are best effort, so posting does not wait for them
+    private final ExecutorService activityTracker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(ACTIVITY_QUEUE_SIZE), runnable -> {
+                Thread thread = new Thread(runnable, "message-activity");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardPolicy());
 
     // ==================== Public API ====================
 
-    public List<MessageResponse> getAllMessages() {
-        List<Message> messages = messageRepository.findAllByOrderByTimestampAsc();
-        return profileIntegrationService.enrichMessagesWithProfiles(messages);
+    /**
+     * Get the most recent messages, oldest first, for the initial wall load.
+     * Served from {@link RecentMessageBuffer} when possible; a miss reloads the
+     * buffer for this channel from the database.
+     *
+     * @param channelId channel to read, or null for all channels
+     * @param limit     requested page size, capped at {@link #MAX_PAGE_SIZE}
+     */
+    public List<MessageResponse> getRecentMessages(String channelId, Integer limit) {
+        int pageSize = resolvePageSize(limit);
+        String key = RecentMessageBuffer.keyFor(channelId);
+
+        Optional<List<MessageResponse>> cached = recentMessageBuffer.getLatest(key, pageSize);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        List<MessageResponse> reloaded = reloadRecentBuffer(key, channelId);
+        return reloaded.subList(Math.max(0, reloaded.size() - pageSize), reloaded.size());
+    }
+
+    /**
+     * Get one page of message history using a keyset cursor on (timestamp, id).
+     * Without a cursor the newest page is returned. The cost of a page does not
+     * depend on how much history exists.
+     *
+     * @param channelId channel to read, or null for all channels
+     * @param before    cursor token: return messages older than it
+     * @param after     cursor token: return messages newer than it
+     * @param limit     requested page size, capped at {@link #MAX_PAGE_SIZE}
+     * @return the page, ordered oldest to newest
+     * @throws BadRequestException if both cursors are given or a cursor is invalid
+     */
+    public MessageHistoryResponse getMessageHistory(String channelId, String before, String after, Integer limit) {
+        if (before != null && after != null) {
+            throw new BadRequestException("Only one of 'before' or 'after' can be specified");
+        }
+
+        int pageSize = resolvePageSize(limit);
+        MessageCursor beforeCursor = before != null ? MessageCursor.decode(before) : null;
+        MessageCursor afterCursor = after != null ? MessageCursor.decode(after) : null;
+
+        // Fetch one extra row to know whether another page exists
+        List<Message> rows = queryPage(channelId, beforeCursor, afterCursor, pageSize + 1);
+        boolean hasMore = rows.size() > pageSize;
+        List<Message> page = hasMore ? rows.subList(0, pageSize) : rows;
+        if (page.isEmpty()) {
+            return MessageHistoryResponse.empty();
+        }
+
+        List<MessageResponse> messages = toResponses(inDisplayOrder(page, afterCursor == null));
+        return new MessageHistoryResponse(
+                messages,
+                MessageCursor.of(messages.get(0)).encode(),
+                MessageCursor.of(messages.get(messages.size() - 1)).encode(),
+                hasMore);
+    }
+
+    /**
+     * Full-text search over the whole history, newest first.
+     *
+     * @param query     words to look for; quotes, {@code or} and {@code -} are supported
+     * @param channelId channel to search, or null for all channels
+     * @param authorId  author to search, or null for all authors
+     * @param before    cursor token: return matches older than it
+     * @param limit     requested page size, capped at {@link #MAX_PAGE_SIZE}
+     * @throws BadRequestException if the query is blank or too long, or the cursor is invalid
+     */
+    public MessageSearchResponse searchMessages(String query, String channelId, String authorId, String before,
+            Integer limit) {
+        if (query == null || query.isBlank()) {
+            throw new BadRequestException("Search query is required");
+        }
+        if (query.length() > MAX_SEARCH_QUERY_LENGTH) {
+            throw new BadRequestException("Search query is too long");
+        }
+
+        int pageSize = resolvePageSize(limit);
+        MessageCursor cursor = before != null ? MessageCursor.decode(before) : null;
+
+        // Fetch one extra row to know whether another page exists
+        List<MessageRepository.SearchRow> rows = messageRepository.search(
+                query.trim(),
+                channelId == null || channelId.isBlank() ? null : channelId,
+                authorId == null || authorId.isBlank() ? null : authorId,
+                cursor != null ? cursor.timestamp() : Long.MAX_VALUE,
+                cursor != null ? cursor.id() : "",
+                HEADLINE_OPTIONS,
+                pageSize + 1);
+        boolean hasMore = rows.size() > pageSize;
+        List<MessageRepository.SearchRow> page = hasMore ? rows.subList(0, pageSize) : rows;
+        if (page.isEmpty()) {
+            return MessageSearchResponse.empty();
+        }
+
+        // Messages deleted since the search ran are skipped
+        List<String> ids = page.stream().map(MessageRepository.SearchRow::getId).toList();
+        Map<String, Message> messagesById = new HashMap<>();
+        messageRepository.findAllById(ids).forEach(message -> messagesById.put(message.getId(), message));
+        if (messagesById.size() < ids.size()) {
+            messageRepository.findArchivedByIds(ids).forEach(message -> messagesById.put(message.getId(), message));
+        }
+        List<Message> found = page.stream()
+                .map(row -> messagesById.get(row.getId()))
+                .filter(message -> message != null)
+                .toList();
+
+        Map<String, String> snippets = new HashMap<>();
+        page.forEach(row -> snippets.put(row.getId(), toHtmlSnippet(row.getSnippet())));
+        List<MessageSearchHit> hits = toResponses(found).stream()
+                .map(response -> new MessageSearchHit(response, snippets.get(response.getId())))
+                .toList();
+
+        MessageRepository.SearchRow last = page.get(page.size() - 1);
+        return new MessageSearchResponse(
+                hits,
+                new MessageCursor(last.getTimestamp(), last.getId()).encode(),
+                hasMore);
+    }
+
+    /**
+     * Fill the recent message buffers once the application is up, so the first
+     * wall loads after a restart are already served from memory.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpRecentMessages() {
+        try {
+            reloadRecentBuffer(RecentMessageBuffer.ALL_CHANNELS, null);
+            List<String> channelIds = messageRepository.findDistinctChannelIds();
+            channelIds.forEach(channelId -> reloadRecentBuffer(channelId, channelId));
+            log.info("Recent message buffer warmed up for {} channels", channelIds.size());
+        } catch (Exception e) {
+            // Buffers fill lazily on first read if warm-up fails
+            log.warn("Failed to warm up recent message buffer: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Buffered messages embed their author's avatar: reload them when an
+     * author card changes.
+     */
+    @EventListener
+    public void onAuthorChanged(AuthorCardCache.AuthorChanged event) {
+        recentMessageBuffer.invalidate();
+    }
+
+    /**
+     * Post a message on behalf of a client, over REST or WebSocket.
+     * Applies the mute, verification and quote rules before saving.
+     *
+     * @throws UnauthorizedException if the chat is muted and no admin code is given
+     */
+    public MessageResponse postMessage(Message message, String adminCode) {
+        boolean isAdmin = adminService.isValidAdminCode(adminCode);
+        if (isMuted() && !isAdmin) {
+            throw new UnauthorizedException("Chat is muted by admin");
+        }
+
+        message.setVerified(isAdmin || userVerificationService.userExists(message.getUserId()));
+
+        String quotedId = message.getQuotedMessageId();
+        if (quotedId != null && !quotedId.isEmpty()) {
+            // Quotes almost always target recent messages, which are buffered
+            Optional<MessageResponse> buffered = recentMessageBuffer.find(quotedId);
+            if (buffered.isPresent()) {
+                message.setQuotedName(buffered.get().getName());
+                message.setQuotedMessage(buffered.get().getMessage());
+            } else {
+                Message quoted = getMessageById(quotedId);
+                if (quoted != null) {
+                    message.setQuotedName(quoted.getName());
+                    message.setQuotedMessage(quoted.getMessage());
+                } else {
+                    message.setQuotedMessageId(null);
+                }
+            }
+        }
+
+        return addMessage(message);
     }
 
     public MessageResponse addMessage(Message message) {
+        if (message.getChannelId() == null || message.getChannelId().isBlank()) {
+            message.setChannelId(DEFAULT_CHANNEL_ID);
+        }
+        // The timestamp is the partition key: never trust the client's clock with it
+        message.setTimestamp(System.currentTimeMillis());
         Message saved = messageRepository.save(message);
         recordUserActivity(saved.getUserId());
-        return toResponse(saved);
+        MessageResponse response = toProfileResponse(saved);
+        // A new message has no reactions yet
+        response.setReactions(new ArrayList<>());
+        recentMessageBuffer.add(response);
+        markChanged(saved.getChannelId());
+        return response;
     }
 
+    /**
+     * Find a message, recent or archived.
+     */
     public Message getMessageById(String id) {
-        return messageRepository.findById(id).orElse(null);
+        return messageRepository.findById(id)
+                .or(() -> messageRepository.findArchivedByIds(List.of(id)).stream().findFirst())
+                .orElse(null);
     }
 
+    /**
+     * Delete a message, recent or archived, if it belongs to the given user.
+     *
+     * @return The deleted message, or null if nothing was deleted.
+     */
     @Transactional
-    public boolean deleteMessage(String id, String userId) {
+    public Message deleteMessage(String id, String userId) {
         try {
-            messageRepository.deleteByIdAndUserId(id, userId);
-            return true;
+            Message message = messageRepository.findById(id).orElse(null);
+            if (message != null) {
+                if (messageRepository.deleteByIdAndUserId(id, userId) == 0) {
+                    return null;
+                }
+            } else {
+                message = deleteArchived(id, userId);
+                if (message == null) {
+                    return null;
+                }
+            }
+            userReactionRepository.deleteByMessageIdInBulk(id);
+            recentMessageBuffer.remove(id);
+            markChanged(message.getChannelId());
+            return message;
         } catch (Exception e) {
-            return false;
+            return null;
         }
     }
 
+    /**
+     * Delete a message, recent or archived, regardless of its author.
+     *
+     * @return The deleted message, or null if it did not exist.
+     */
     @Transactional
-    public void deleteMessageById(String id) {
-        messageRepository.deleteById(id);
+    public Message deleteMessageById(String id) {
+        Message message = messageRepository.findById(id).orElse(null);
+        if (message != null) {
+            messageRepository.delete(message);
+        } else {
+            message = deleteArchived(id, null);
+        }
+        if (message != null) {
+            userReactionRepository.deleteByMessageIdInBulk(id);
+            recentMessageBuffer.remove(id);
+            markChanged(message.getChannelId());
+        }
+        return message;
     }
 
+    /**
+     * Whether the chat is muted. Served from memory; the setting is read from
+     * the database at most once per TTL.
+     */
     public boolean isMuted() {
-        return chatSettingRepository.findById(ChatSetting.MUTE_KEY)
-                .map(setting -> "true".equals(setting.getSettingValue()))
-                .orElse(false);
+        CachedMute cached = cachedMute;
+        long now = System.currentTimeMillis();
+        if (cached == null || now - cached.loadedAt() > muteCacheTtlMillis) {
+            boolean muted = chatSettingRepository.findById(ChatSetting.MUTE_KEY)
+                    .map(setting -> "true".equals(setting.getSettingValue()))
+                    .orElse(false);
+            cached = new CachedMute(muted, now);
+            cachedMute = cached;
+        }
+        return cached.muted();
     }
 
     @Transactional
@@ -72,114 +371,428 @@ public class MessageService {
                 .orElse(new ChatSetting(ChatSetting.MUTE_KEY, "false"));
         setting.setSettingValue(String.valueOf(muted));
         chatSettingRepository.save(setting);
+        // A rolled back change must not be served from the cache
+        afterCommit(() -> cachedMute = new CachedMute(muted, System.currentTimeMillis()));
+        // The flag is sent with the initial load
+        resourceVersions.bumpAll(ResourceVersions.MESSAGES);
     }
 
-    public void clearAllMessages() {
-        messageRepository.deleteAll();
+    /**
+     * Delete every message, recent and archived, with bulk statements.
+     *
+     * @return number of messages deleted
+     */
+    @Transactional
+    public int clearAllMessages() {
+        userReactionRepository.deleteAllInBulk();
+        int deleted = messageRepository.deleteAllInBulk() + messageRepository.deleteAllArchivedInBulk();
+        recentMessageBuffer.clear();
+        resourceVersions.bumpAll(ResourceVersions.MESSAGES);
+        log.info("Cleared {} messages from the wall", deleted);
+        return deleted;
     }
 
     /**
      * Add a reaction to a message.
+     * A single idempotent insert; the message row itself is never rewritten and
+     * the other reactors are never loaded.
      * 
-     * @return Updated message as DTO, or null if message not found.
+     * @return The updated message and the applied change, or null if message not found.
      */
     @Transactional
-    public MessageResponse addReaction(String messageId, String userId, String username, String emoji) {
+    public ReactionChange addReaction(String messageId, String userId, String username, String emoji) {
         Message message = messageRepository.findById(messageId).orElse(null);
         if (message == null) {
             return null;
         }
 
-        List<MessageReaction> reactions = getOrCreateReactions(message);
-        Optional<MessageReaction> existing = findReactionByEmoji(reactions, emoji);
-
-        if (existing.isPresent()) {
-            addUserToReaction(existing.get(), userId, username);
-        } else {
-            reactions.add(createNewReaction(emoji, userId, username));
+        long reactedAt = System.currentTimeMillis();
+        int inserted = userReactionRepository.insertIfAbsent(messageId, emoji, userId, username, reactedAt);
+        if (inserted > 0) {
+            markChanged(message.getChannelId());
         }
-
-        message.setReactions(reactions);
-        return toResponse(messageRepository.save(message));
+        return toReactionChange(message, emoji, new ReactionUser(userId, username, reactedAt), inserted);
     }
 
     /**
      * Remove a reaction from a message.
+     * A single delete; the message row itself is never rewritten and the other
+     * reactors are never loaded.
      * 
-     * @return Updated message as DTO, or null if message not found.
+     * @return The updated message and the applied change, or null if message not found.
      */
     @Transactional
-    public MessageResponse removeReaction(String messageId, String userId, String emoji) {
+    public ReactionChange removeReaction(String messageId, String userId, String emoji) {
         Message message = messageRepository.findById(messageId).orElse(null);
         if (message == null) {
             return null;
         }
 
-        List<MessageReaction> reactions = message.getReactions();
-        if (reactions == null || reactions.isEmpty()) {
-            return toResponse(message);
+        int deleted = userReactionRepository.deleteReaction(messageId, emoji, userId);
+        if (deleted > 0) {
+            markChanged(message.getChannelId());
         }
+        return toReactionChange(message, emoji, new ReactionUser(userId, null, 0), -deleted);
+    }
 
-        findReactionByEmoji(reactions, emoji).ifPresent(reaction -> {
-            reaction.getUsers().removeIf(u -> userId.equals(u.getUserId()));
-            reaction.setCount(reaction.getUsers().size());
-            if (reaction.getCount() == 0) {
-                reactions.remove(reaction);
-            }
-        });
+    // ==================== Changes relayed from other nodes ====================
+    // Versions are bumped by the relayed ResourceVersions changes; only the
+    // in-memory state of this service is updated here.
+
+    public void applyRemoteMessageAdded(MessageResponse message) {
+        recentMessageBuffer.add(message);
+    }
+
+    public void applyRemoteMessageDeleted(String messageId) {
+        recentMessageBuffer.remove(messageId);
+    }
+
+    /**
+     * Apply a reaction change to a message buffered here, without reloading it.
+     */
+    public void applyRemoteReactionDelta(String messageId, String emoji, String userId, String username,
+            int delta, int count) {
+        recentMessageBuffer.find(messageId).ifPresent(buffered -> recentMessageBuffer.update(
+                withReaction(buffered, emoji, new ReactionUser(userId, username, System.currentTimeMillis()),
+                        delta, count)));
+    }
+
+    /**
+     * Reload a message whose reactions changed, if it is buffered here.
+     */
+    public void applyRemoteReactionChange(String messageId) {
+        if (recentMessageBuffer.find(messageId).isPresent()) {
+            messageRepository.findById(messageId).ifPresent(this::toBufferedResponse);
+        }
+    }
+
+    public void applyRemoteMute(boolean muted) {
+        cachedMute = new CachedMute(muted, System.currentTimeMillis());
+    }
+
+    public void applyRemoteClear() {
+        recentMessageBuffer.clear();
+    }
+
+    /**
+     * Drop in-memory state after relayed changes may have been missed.
+     */
+    public void invalidateLocalCaches() {
+        recentMessageBuffer.invalidate();
+        cachedMute = null;
+    }
+
+    /**
+     * Full reaction snapshot of a message, for clients resyncing after missed deltas.
+     * 
+     * @return Reactions aggregated per emoji, or null if message not found.
+     */
+    public List<MessageReaction> getReactions(String messageId) {
+        if (!messageRepository.existsById(messageId)) {
+            return null;
+        }
+        return loadReactions(List.of(messageId)).getOrDefault(messageId, new ArrayList<>());
+    }
+
+    /**
+     * Result of a reaction write: the refreshed message, the change actually applied
+     * (+1, -1 or 0 when the write was a no-op) and the resulting count for the emoji.
+     */
+    public record ReactionChange(MessageResponse message, int delta, int count) {
+    }
 
-        message.setReactions(reactions);
-        return toResponse(messageRepository.save(message));
+    private record CachedMute(boolean muted, long loadedAt) {
     }
 
     // ==================== Private Helpers ====================
 
     /**
-     * Convert a Message entity to a MessageResponse DTO with profile enrichment.
+     * Delete an archived message.
+     *
+     * @param userId author the message must belong to, or null for any author
+     * @return the deleted message, or null if nothing was deleted
+     */
+    private Message deleteArchived(String id, String userId) {
+        Message message = messageRepository.findArchivedByIds(List.of(id)).stream().findFirst().orElse(null);
+        if (message == null || messageRepository.deleteArchived(id, userId) == 0) {
+            return null;
+        }
+        return message;
+    }
+
+    /**
+     * Run one keyset query. Rows come newest first unless reading after a cursor.
+     * Archived messages are all older than recent ones, so the archive is only
+     * read before the recent table when going forward, and after it otherwise.
+     */
+    private List<Message> queryPage(String channelId, MessageCursor before, MessageCursor after, int rowCount) {
+        boolean hasChannel = channelId != null && !channelId.isBlank();
+        String archiveChannel = hasChannel ? channelId : null;
+
+        if (after != null) {
+            List<Message> rows = new ArrayList<>(messageRepository.findArchivedAfter(
+                    archiveChannel, after.timestamp(), after.id(), rowCount));
+            int remaining = rowCount - rows.size();
+            if (remaining > 0) {
+                rows.addAll(hasChannel
+                        ? messageRepository.findAfterInChannel(channelId, after.timestamp(), after.id(), remaining)
+                        : messageRepository.findAfter(after.timestamp(), after.id(), remaining));
+            }
+            return rows;
+        }
+
+        List<Message> rows = new ArrayList<>();
+        if (before != null) {
+            rows.addAll(hasChannel
+                    ? messageRepository.findBeforeInChannel(channelId, before.timestamp(), before.id(), rowCount)
+                    : messageRepository.findBefore(before.timestamp(), before.id(), rowCount));
+        } else {
+            Pageable pageable = PageRequest.of(0, rowCount);
+            rows.addAll(hasChannel
+                    ? messageRepository.findLatestInChannel(channelId, pageable)
+                    : messageRepository.findLatest(pageable));
+        }
+        if (rows.size() < rowCount) {
+            rows.addAll(messageRepository.findArchivedBefore(
+                    archiveChannel,
+                    before != null ? before.timestamp() : Long.MAX_VALUE,
+                    before != null ? before.id() : "",
+                    rowCount - rows.size()));
+        }
+        return rows;
+    }
+
+    /**
+     * The wall always displays oldest first.
+     */
+    private List<Message> inDisplayOrder(List<Message> rows, boolean newestFirst) {
+        List<Message> ordered = new ArrayList<>(rows);
+        if (newestFirst) {
+            Collections.reverse(ordered);
+        }
+        return ordered;
+    }
+
+    /**
+     * Reload one recent message buffer from the database.
+     *
+     * @return the reloaded messages, oldest first
+     */
+    private List<MessageResponse> reloadRecentBuffer(String key, String channelId) {
+        int capacity = recentMessageBuffer.getCapacity();
+        long version = recentMessageBuffer.version(key);
+
+        List<Message> rows = queryPage(channelId, null, null, capacity + 1);
+        boolean exhaustive = rows.size() <= capacity;
+        List<Message> page = exhaustive ? rows : rows.subList(0, capacity);
+
+        List<MessageResponse> messages = toResponses(inDisplayOrder(page, true));
+        recentMessageBuffer.replaceIfUnchanged(key, version, messages, exhaustive);
+        return messages;
+    }
+
+    /**
+     * Convert an updated message and refresh it in the recent message buffer.
+     */
+    private MessageResponse toBufferedResponse(Message message) {
+        MessageResponse response = toResponse(message);
+        recentMessageBuffer.update(response);
+        return response;
+    }
+
+    /**
+     * Convert a Message entity to a MessageResponse DTO with profile enrichment
+     * and reactions.
      */
     private MessageResponse toResponse(Message message) {
-        return profileIntegrationService.enrichMessageWithProfile(
-                message,
-                profileIntegrationService.getProfileForMessage(message.getUserId()));
+        MessageResponse response = toProfileResponse(message);
+        attachReactions(List.of(response));
+        return response;
+    }
+
+    private MessageResponse toProfileResponse(Message message) {
+        return profileIntegrationService.enrichMessageWithProfile(message);
+    }
+
+    /**
+     * Convert Message entities to DTOs with profile enrichment and reactions,
+     * using one query for profiles and one for reactions.
+     */
+    private List<MessageResponse> toResponses(List<Message> messages) {
+        List<MessageResponse> responses = profileIntegrationService.enrichMessagesWithProfiles(messages);
+        attachReactions(responses);
+        return responses;
+    }
+
+    private static String toHtmlSnippet(String headline) {
+        if (headline == null) {
+            return null;
+        }
+        return HtmlUtils.htmlEscape(headline)
+                .replace(MATCH_START, "<mark>")
+                .replace(MATCH_END, "</mark>");
+    }
+
+    int resolvePageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
     }
 
     /**
-     * Record user activity for profile statistics.
+     * Record user activity for profile statistics, in the background.
      */
     private void recordUserActivity(String userId) {
         if (userId == null || userId.isEmpty())
             return;
+        activityTracker.execute(() -> {
+            try {
+                activityService.recordMessageActivity(userId);
+                profileIntegrationService.updateLastActiveFromMessage(userId);
+            } catch (Exception e) {
+                // Don't fail the message save if activity tracking fails
+                log.debug("Failed to record message activity of {}: {}", userId, e.getMessage());
+            }
+        });
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        activityTracker.shutdown();
         try {
-            activityService.recordMessageActivity(userId);
-            profileIntegrationService.updateLastActiveFromMessage(userId);
-        } catch (Exception ignored) {
-            // Don't fail the message save if activity tracking fails
+            activityTracker.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private List<MessageReaction> getOrCreateReactions(Message message) {
-        List<MessageReaction> reactions = message.getReactions();
-        return reactions != null ? reactions : new LinkedList<>();
+    /**
+     * Invalidate the ETags of a channel and of the whole wall.
+     */
+    private void markChanged(String channelId) {
+        resourceVersions.bump(ResourceVersions.MESSAGES, RecentMessageBuffer.keyFor(channelId),
+                RecentMessageBuffer.ALL_CHANNELS);
     }
 
-    private Optional<MessageReaction> findReactionByEmoji(List<MessageReaction> reactions, String emoji) {
-        return reactions.stream()
-                .filter(r -> emoji.equals(r.getEmoji()))
-                .findFirst();
+    /**
+     * Describe a reaction write. The emoji's count comes from one count query;
+     * a buffered copy of the message is patched in memory, any other message is
+     * summarized with grouped counts.
+     */
+    private ReactionChange toReactionChange(Message message, String emoji, ReactionUser user, int delta) {
+        int count = (int) userReactionRepository.countByMessageIdAndEmoji(message.getId(), emoji);
+        MessageResponse response = recentMessageBuffer.find(message.getId())
+                .map(buffered -> {
+                    if (delta == 0) {
+                        return buffered;
+                    }
+                    MessageResponse updated = withReaction(buffered, emoji, user, delta, count);
+                    recentMessageBuffer.update(updated);
+                    return updated;
+                })
+                .orElseGet(() -> toReactionSummary(message, user.getUserId()));
+        return new ReactionChange(response, delta, count);
     }
 
-    private void addUserToReaction(MessageReaction reaction, String userId, String username) {
-        boolean alreadyReacted = reaction.getUsers().stream()
-                .anyMatch(u -> userId.equals(u.getUserId()));
-        if (!alreadyReacted) {
-            reaction.getUsers().add(new ReactionUser(userId, username, System.currentTimeMillis()));
-            reaction.setCount(reaction.getUsers().size());
+    /**
+     * Copy of a message with one reaction added (delta > 0) or removed (delta < 0).
+     * Buffered messages are shared with readers, so they are never modified.
+     */
+    private static MessageResponse withReaction(MessageResponse message, String emoji, ReactionUser user,
+            int delta, int count) {
+        List<MessageReaction> reactions = new ArrayList<>();
+        boolean found = false;
+        for (MessageReaction reaction : message.getReactions() != null ? message.getReactions()
+                : List.<MessageReaction>of()) {
+            if (!reaction.getEmoji().equals(emoji)) {
+                reactions.add(reaction);
+                continue;
+            }
+            found = true;
+            List<ReactionUser> users = new ArrayList<>(reaction.getUsers());
+            users.removeIf(existing -> existing.getUserId().equals(user.getUserId()));
+            if (delta > 0) {
+                users.add(user);
+            }
+            if (count > 0) {
+                reactions.add(new MessageReaction(emoji, count, users));
+            }
+        }
+        if (!found && delta > 0) {
+            reactions.add(new MessageReaction(emoji, count, new ArrayList<>(List.of(user))));
+        }
+
+        return new MessageResponse(message.getId(), message.getUserId(), message.getName(), message.getMessage(),
+                message.getTimestamp(), message.isAnonymous(), message.isVerified(), message.getQuotedMessageId(),
+                message.getQuotedName(), message.getQuotedMessage(), message.getChannelId(), reactions,
+                message.getImageUrl(), message.getAvatarUrl());
+    }
+
+    /**
+     * A message with its reaction counts per emoji. Only the given user's own
+     * reactions are listed, which is what the reacting client needs to render
+     * its toggles; the full lists are served by {@link #getReactions(String)}.
+     */
+    private MessageResponse toReactionSummary(Message message, String userId) {
+        Map<String, List<ReactionUser>> own = new HashMap<>();
+        for (UserReaction row : userReactionRepository.findByMessageIdAndUserId(message.getId(), userId)) {
+            own.computeIfAbsent(row.getEmoji(), emoji -> new ArrayList<>())
+                    .add(new ReactionUser(row.getUserId(), row.getUsername(), row.getReactedAt()));
+        }
+        List<MessageReaction> reactions = new ArrayList<>();
+        for (UserReactionRepository.EmojiCount count : userReactionRepository.countByEmoji(message.getId())) {
+            reactions.add(new MessageReaction(count.getEmoji(), (int) count.getCount(),
+                    own.getOrDefault(count.getEmoji(), new ArrayList<>())));
+        }
+
+        MessageResponse response = toProfileResponse(message);
+        response.setReactions(reactions);
+        return response;
+    }
+
+    /**
+     * Load the reactions of all given messages with one query and attach them.
+     */
+    private void attachReactions(List<MessageResponse> responses) {
+        if (responses.isEmpty()) {
+            return;
         }
+        Map<String, List<MessageReaction>> byMessage = loadReactions(
+                responses.stream().map(MessageResponse::getId).toList());
+
+        responses.forEach(response -> response.setReactions(
+                byMessage.getOrDefault(response.getId(), new ArrayList<>())));
     }
 
-    private MessageReaction createNewReaction(String emoji, String userId, String username) {
-        List<ReactionUser> users = new LinkedList<>();
-        users.add(new ReactionUser(userId, username, System.currentTimeMillis()));
-        return new MessageReaction(emoji, 1, users);
+    /**
+     * Reactions of the given messages, aggregated per emoji in order of first reaction.
+     */
+    private Map<String, List<MessageReaction>> loadReactions(List<String> messageIds) {
+        Map<String, Map<String, MessageReaction>> byMessage = new HashMap<>();
+        for (UserReaction row : userReactionRepository.findByMessageIds(messageIds)) {
+            MessageReaction reaction = byMessage
+                    .computeIfAbsent(row.getMessageId(), id -> new LinkedHashMap<>())
+                    .computeIfAbsent(row.getEmoji(), emoji -> new MessageReaction(emoji, 0, new ArrayList<>()));
+            reaction.getUsers().add(new ReactionUser(row.getUserId(), row.getUsername(), row.getReactedAt()));
+            reaction.setCount(reaction.getUsers().size());
+        }
+
+        Map<String, List<MessageReaction>> result = new HashMap<>();
+        byMessage.forEach((id, reactions) -> result.put(id, new ArrayList<>(reactions.values())));
+        return result;
     }
 }
@@ -0,0 +1,351 @@
+package com.changrui.mysterious.domain.messagewall.service;
+
+import com.changrui.mysterious.domain.messagewall.dto.MessageResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded in-memory ring buffers holding the most recent messages of each
+ * channel, plus one buffer for the whole wall.
+ * Serves the hot tail of the message wall without touching the database.
+ * Kept up to date by {@link MessageService} on every write.
+ *
+ * Channel ids come from requests, so at most {@code maxChannels} channel
+ * buffers are kept, the least recently read one being dropped to make room,
+ * and a reload that finds no messages creates no buffer.
+ */
+@Component
+public class RecentMessageBuffer {
+
+    /**
+     * Buffer key used for reads that are not filtered by channel.
+     */
+    public static final String ALL_CHANNELS = "*";
+
+    private final Map<String, ChannelBuffer> buffers = new ConcurrentHashMap<>();
+    // Source of buffer versions, so a recreated buffer never reuses a version
+    private final AtomicLong clock = new AtomicLong();
+    private final int capacity;
+    private final int maxChannels;
+    private final Counter hits;
+    private final Counter misses;
+
+    public RecentMessageBuffer(
+            @Value("${app.messagewall.recent-buffer-size:200}") int capacity,
+            @Value("${app.messagewall.recent-buffer-channels:256}") int maxChannels,
+            MeterRegistry meterRegistry) {
+        this.capacity = Math.max(1, capacity);
+        this.maxChannels = Math.max(1, maxChannels);
+        this.hits = Counter.builder("messagewall.recent.buffer.requests")
+                .tag("result", "hit")
+                .description("Initial-load reads served from the recent message buffer")
+                .register(meterRegistry);
+        this.misses = Counter.builder("messagewall.recent.buffer.requests")
+                .tag("result", "miss")
+                .description("Initial-load reads that fell back to the database")
+                .register(meterRegistry);
+        meterRegistry.gauge("messagewall.recent.buffer.channels", buffers, Map::size);
+    }
+
+    /**
+     * Buffer key for a channel filter (null or blank means the whole wall).
+     */
+    public static String keyFor(String channelId) {
+        return channelId == null || channelId.isBlank() ? ALL_CHANNELS : channelId;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the latest messages of a buffer, oldest first.
+     * Records a hit or a miss.
+     *
+     * @param key   buffer key from {@link #keyFor(String)}
+     * @param limit number of messages wanted
+     * @return the messages, or empty if the buffer cannot answer on its own
+     */
+    public Optional<List<MessageResponse>> getLatest(String key, int limit) {
+        ChannelBuffer buffer = buffers.get(key);
+        List<MessageResponse> result = buffer != null ? buffer.latest(limit) : null;
+        if (result == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(result);
+    }
+
+    /**
+     * Look up a buffered message by id, without touching the hit/miss metrics.
+     */
+    public Optional<MessageResponse> find(String messageId) {
+        for (ChannelBuffer buffer : buffers.values()) {
+            MessageResponse message = buffer.find(messageId);
+            if (message != null) {
+                return Optional.of(message);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Current version of a buffer, to be passed to
+     * {@link #replaceIfUnchanged(String, long, List, boolean)} after a reload.
+     * Buffers that do not exist yet have version 0.
+     */
+    public long version(String key) {
+        ChannelBuffer buffer = buffers.get(key);
+        return buffer != null ? buffer.version() : 0;
+    }
+
+    /**
+     * Replace a buffer with freshly loaded messages, unless it was modified
+     * since {@code expectedVersion} was read (a concurrent write wins).
+     *
+     * @param messages   messages ordered oldest first
+     * @param exhaustive true if the messages are the complete history of the key
+     */
+    public void replaceIfUnchanged(String key, long expectedVersion, List<MessageResponse> messages,
+            boolean exhaustive) {
+        ChannelBuffer buffer = buffers.get(key);
+        if (buffer == null) {
+            if (expectedVersion != 0 || (messages.isEmpty() && !ALL_CHANNELS.equals(key))) {
+                // Dropped since the reload started, or nothing worth keeping
+                return;
+            }
+            // Published already loaded, so no write can slip in between
+            ChannelBuffer loaded = new ChannelBuffer(capacity, clock);
+            loaded.replaceIfUnchanged(loaded.version(), messages, exhaustive);
+            buffer = buffers.putIfAbsent(key, loaded);
+            if (buffer == null) {
+                evictIfFull(key);
+                return;
+            }
+        }
+        buffer.replaceIfUnchanged(expectedVersion, messages, exhaustive);
+    }
+
+    /**
+     * Add a newly posted message to its channel buffer and to the wall buffer.
+     */
+    public void add(MessageResponse message) {
+        buffer(ALL_CHANNELS).add(message);
+        buffer(keyFor(message.getChannelId())).add(message);
+    }
+
+    /**
+     * Replace a message (e.g. after a reaction change) wherever it is buffered.
+     */
+    public void update(MessageResponse message) {
+        buffers.values().forEach(buffer -> buffer.update(message));
+    }
+
+    /**
+     * Remove a deleted message wherever it is buffered.
+     */
+    public void remove(String messageId) {
+        buffers.values().forEach(buffer -> buffer.remove(messageId));
+    }
+
+    /**
+     * Empty every buffer after the wall was cleared.
+     * Empty buffers are known to be complete, so reads stay in memory.
+     */
+    public void clear() {
+        buffer(ALL_CHANNELS);
+        buffers.values().forEach(ChannelBuffer::reset);
+    }
+
+    /**
+     * Forget every buffer, e.g. after messages were removed behind the
+     * service's back, so that they reload from the database on next read.
+     */
+    public void invalidate() {
+        buffers.values().forEach(ChannelBuffer::invalidate);
+    }
+
+    private ChannelBuffer buffer(String key) {
+        ChannelBuffer buffer = buffers.get(key);
+        if (buffer != null) {
+            return buffer;
+        }
+        buffer = buffers.computeIfAbsent(key, k -> new ChannelBuffer(capacity, clock));
+        evictIfFull(key);
+        return buffer;
+    }
+
+    /**
+     * Past {@code maxChannels} channel buffers, drop the one read the longest
+     * time ago, never the wall buffer nor the one just created.
+     */
+    private void evictIfFull(String keep) {
+        int channelBuffers = buffers.size() - (buffers.containsKey(ALL_CHANNELS) ? 1 : 0);
+        if (channelBuffers <= maxChannels) {
+            return;
+        }
+        String oldest = null;
+        long oldestReadAt = Long.MAX_VALUE;
+        for (Map.Entry<String, ChannelBuffer> entry : buffers.entrySet()) {
+            String key = entry.getKey();
+            long readAt = entry.getValue().lastReadAt;
+            if (!key.equals(keep) && !ALL_CHANNELS.equals(key) && readAt < oldestReadAt) {
+                oldest = key;
+                oldestReadAt = readAt;
+            }
+        }
+        if (oldest != null) {
+            buffers.remove(oldest);
+        }
+    }
+
+    /**
+     * Ring buffer for one key. All access is synchronized on the instance;
+     * operations are O(capacity) at worst and capacity is small.
+     */
+    private static final class ChannelBuffer {
+
+        private final int capacity;
+        private final AtomicLong clock;
+        private final Deque<MessageResponse> messages;
+        // Read without the lock, only to pick buffers to evict
+        private volatile long lastReadAt;
+        // True when the buffer holds every message of its key, so reads may be
+        // answered even if it holds fewer messages than requested
+        private boolean exhaustive;
+        private boolean loaded;
+        private long version;
+
+        ChannelBuffer(int capacity, AtomicLong clock) {
+            this.capacity = capacity;
+            this.clock = clock;
+            this.messages = new ArrayDeque<>(capacity);
+            this.version = clock.incrementAndGet();
+            this.lastReadAt = System.nanoTime();
+        }
+
+        synchronized long version() {
+            return version;
+        }
+
+        synchronized List<MessageResponse> latest(int limit) {
+            lastReadAt = System.nanoTime();
+            if (!loaded || (messages.size() < limit && !exhaustive)) {
+                return null;
+            }
+            int skip = Math.max(0, messages.size() - limit);
+            List<MessageResponse> result = new ArrayList<>(Math.min(limit, messages.size()));
+            Iterator<MessageResponse> it = messages.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                MessageResponse message = it.next();
+                if (i >= skip) {
+                    result.add(message);
+                }
+            }
+            return result;
+        }
+
+        synchronized MessageResponse find(String messageId) {
+            for (MessageResponse message : messages) {
+                if (message.getId().equals(messageId)) {
+                    return message;
+                }
+            }
+            return null;
+        }
+
+        synchronized void replaceIfUnchanged(long expectedVersion, List<MessageResponse> loadedMessages,
+                boolean exhaustive) {
+            if (version != expectedVersion) {
+                return;
+            }
+            messages.clear();
+            int skip = Math.max(0, loadedMessages.size() - capacity);
+            for (int i = skip; i < loadedMessages.size(); i++) {
+                messages.addLast(loadedMessages.get(i));
+            }
+            this.exhaustive = exhaustive && skip == 0;
+            this.loaded = true;
+            version = clock.incrementAndGet();
+        }
+
+        synchronized void reset() {
+            messages.clear();
+            exhaustive = true;
+            loaded = true;
+            version = clock.incrementAndGet();
+        }
+
+        synchronized void invalidate() {
+            messages.clear();
+            exhaustive = false;
+            loaded = false;
+            version = clock.incrementAndGet();
+        }
+
+        synchronized void add(MessageResponse message) {
+            version = clock.incrementAndGet();
+            if (!loaded) {
+                return;
+            }
+            // Concurrent posts, and messages relayed from other instances, can
+            // arrive out of timestamp order, so keep the buffer sorted
+            List<MessageResponse> newer = new ArrayList<>();
+            while (!messages.isEmpty() && isAfter(messages.peekLast(), message)) {
+                newer.add(0, messages.pollLast());
+            }
+            messages.addLast(message);
+            newer.forEach(messages::addLast);
+            if (messages.size() > capacity) {
+                messages.pollFirst();
+                exhaustive = false;
+            }
+        }
+
+        synchronized void update(MessageResponse message) {
+            if (!loaded) {
+                return;
+            }
+            boolean replaced = false;
+            List<MessageResponse> updated = new ArrayList<>(messages.size());
+            for (MessageResponse existing : messages) {
+                if (existing.getId().equals(message.getId())) {
+                    updated.add(message);
+                    replaced = true;
+                } else {
+                    updated.add(existing);
+                }
+            }
+            if (replaced) {
+                messages.clear();
+                messages.addAll(updated);
+                version = clock.incrementAndGet();
+            }
+        }
+
+        synchronized void remove(String messageId) {
+            if (messages.removeIf(m -> m.getId().equals(messageId))) {
+                version = clock.incrementAndGet();
+            }
+        }
+
+        private static boolean isAfter(MessageResponse a, MessageResponse b) {
+            if (a.getTimestamp() != b.getTimestamp()) {
+                return a.getTimestamp() > b.getTimestamp();
+            }
+            return a.getId().compareTo(b.getId()) > 0;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.changrui.mysterious.domain.messagewall.service;
+
+import com.changrui.mysterious.domain.messagewall.dto.MessageResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ready-to-send JSON of the initial wall load, plain and gzipped, per
+ * channel and page size.
+ *
+ * A snapshot is tied to the ETag of its channel and to the version of its
+ * {@link RecentMessageBuffer}: it is rebuilt lazily on the first read after
+ * either moved. Readers of a stale snapshot wait for that single rebuild
+ * rather than each serializing the page, so a burst of connections costs
+ * one serialization and then copies of bytes.
+ */
+@Component
+public class RecentMessageSnapshots {
+
+    /**
+     * Serialized page of recent messages.
+     *
+     * @param etag ETag of the channel the page was built for
+     * @param json the page as JSON
+     * @param gzip the same JSON, gzipped
+     */
+    public record Snapshot(String etag, byte[] json, byte[] gzip) {
+
+        /**
+         * Body for a request, gzipped if its {@code Accept-Encoding} allows it.
+         */
+        public byte[] body(boolean gzipped) {
+            return gzipped ? gzip : json;
+        }
+    }
+
+    private final MessageService messageService;
+    private final RecentMessageBuffer recentMessageBuffer;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Slot> slots;
+    private final Counter hits;
+    private final Counter builds;
+
+    public RecentMessageSnapshots(
+            MessageService messageService,
+            RecentMessageBuffer recentMessageBuffer,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.messagewall.snapshot-cache-size:64}") int cacheSize) {
+        this.messageService = messageService;
+        this.recentMessageBuffer = recentMessageBuffer;
+        this.objectMapper = objectMapper;
+        int maxEntries = Math.max(1, cacheSize);
+        this.slots = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Slot> eldest) {
+                return size() > maxEntries;
+            }
+        });
+        this.hits = Counter.builder("messagewall.snapshot.requests")
+                .tag("result", "hit")
+                .description("Initial wall loads served from a serialized snapshot")
+                .register(meterRegistry);
+        this.builds = Counter.builder("messagewall.snapshot.requests")
+                .tag("result", "build")
+                .description("Initial wall loads that serialized a new snapshot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Snapshot of the most recent messages of a channel, as
+     * {@link MessageService#getRecentMessages} would return them.
+     *
+     * @param channelId channel to read, or null for all channels
+     * @param limit     requested page size
+     * @param etag      current ETag of the channel, taken before this call
+     */
+    public Snapshot get(String channelId, Integer limit, String etag) {
+        String key = RecentMessageBuffer.keyFor(channelId);
+        int pageSize = messageService.resolvePageSize(limit);
+        return slots.computeIfAbsent(key + "|" + pageSize, k -> new Slot()).get(channelId, key, pageSize, etag);
+    }
+
+    /**
+     * Whether an {@code Accept-Encoding} header allows a gzipped response.
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+                return parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private Snapshot build(String etag, List<MessageResponse> messages) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(messages);
+            ByteArrayOutputStream gzip = new ByteArrayOutputStream(json.length / 4 + 64);
+            // Built once and sent many times: worth the best compression
+            try (GZIPOutputStream out = new GZIPOutputStream(gzip) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            }) {
+                out.write(json);
+            }
+            return new Snapshot(etag, json, gzip.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize recent messages", e);
+        }
+    }
+
+    /**
+     * Snapshot of one channel and page size. Synchronized, so that a stale
+     * snapshot is rebuilt once.
+     */
+    private final class Slot {
+
+        private Snapshot snapshot;
+        private long bufferVersion;
+
+        synchronized Snapshot get(String channelId, String key, int pageSize, String etag) {
+            long version = recentMessageBuffer.version(key);
+            if (snapshot != null && snapshot.etag().equals(etag) && bufferVersion == version) {
+                hits.increment();
+                return snapshot;
+            }
+            builds.increment();
+            snapshot = build(etag, messageService.getRecentMessages(channelId, pageSize));
+            bufferVersion = version;
+            return snapshot;
+        }
+    }
+}
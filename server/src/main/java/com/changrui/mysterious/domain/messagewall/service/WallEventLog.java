@@ -0,0 +1,130 @@
+package com.changrui.mysterious.domain.messagewall.service;
+
+import com.changrui.mysterious.domain.messagewall.dto.EventReplay;
+import com.changrui.mysterious.domain.messagewall.dto.WebSocketEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded in-memory log of the events sent to wall subscribers, numbered with
+ * a monotonic sequence so that reconnecting clients can fetch only what they
+ * missed instead of the whole history.
+ *
+ * Sequence numbers are only meaningful within one log: each instance start
+ * gets a new {@code logId}, and a client presenting another id must reload.
+ *
+ * All destinations share the log, so busy channels push the events of quiet
+ * ones out. The last sequence number evicted is therefore kept per
+ * destination, and a client only reloads when it missed an evicted event of
+ * a destination it follows.
+ */
+@Component
+public class WallEventLog {
+
+    private final String logId = UUID.randomUUID().toString();
+    private final int capacity;
+    private final Deque<LoggedEvent> events;
+    private long lastSeq;
+    // Highest sequence number of each destination that fell out of the log,
+    // least recently evicted first; at most capacity entries
+    private final Map<String, Long> evictedThrough = new LinkedHashMap<>();
+    // Highest sequence number evicted for the destinations dropped from evictedThrough
+    private long evictedFloor;
+
+    public WallEventLog(
+            @Value("${app.messagewall.event-log-size:1000}") int capacity,
+            MeterRegistry meterRegistry) {
+        this.capacity = Math.max(1, capacity);
+        this.events = new ArrayDeque<>(this.capacity);
+        meterRegistry.gauge("messagewall.event.log.size", events, Deque::size);
+    }
+
+    public String getLogId() {
+        return logId;
+    }
+
+    /**
+     * Number an event and record it for replay.
+     *
+     * @return the event carrying its sequence number
+     */
+    public synchronized WebSocketEvent append(String destination, String type, Object payload) {
+        WebSocketEvent event = new WebSocketEvent(type, payload, ++lastSeq);
+        if (events.size() == capacity) {
+            evict(events.pollFirst());
+        }
+        events.addLast(new LoggedEvent(destination, event));
+        return event;
+    }
+
+    /**
+     * Events sent to each destination after the position given for it, oldest
+     * first. Destinations are flushed on their own windows, so a client's
+     * position can differ from one destination to the next. Destinations
+     * without a position (null) are not replayed; without any, the client
+     * just receives the current position.
+     */
+    public synchronized EventReplay replaySince(String clientLogId, Map<String, Long> afterSeqs) {
+        List<Long> positions = afterSeqs.values().stream().filter(Objects::nonNull).toList();
+        if (positions.isEmpty()) {
+            return new EventReplay(logId, lastSeq, false, List.of());
+        }
+        if (!logId.equals(clientLogId)
+                || afterSeqs.entrySet().stream().anyMatch(this::missedEvicted)
+                || positions.stream().anyMatch(afterSeq -> afterSeq > lastSeq)) {
+            return new EventReplay(logId, lastSeq, true, List.of());
+        }
+
+        List<WebSocketEvent> missed = new ArrayList<>();
+        for (LoggedEvent logged : events) {
+            Long afterSeq = afterSeqs.get(logged.destination());
+            if (afterSeq != null && logged.event().seq() > afterSeq) {
+                missed.add(logged.event());
+            }
+        }
+        return new EventReplay(logId, lastSeq, false, missed);
+    }
+
+    /**
+     * Current position, telling the client to reload instead of replaying.
+     */
+    public synchronized EventReplay snapshotRequired() {
+        return new EventReplay(logId, lastSeq, true, List.of());
+    }
+
+    private void evict(LoggedEvent logged) {
+        // Re-inserted so that entries stay ordered by eviction
+        evictedThrough.remove(logged.destination());
+        evictedThrough.put(logged.destination(), logged.event().seq());
+        if (evictedThrough.size() > capacity) {
+            Iterator<Map.Entry<String, Long>> eldest = evictedThrough.entrySet().iterator();
+            evictedFloor = Math.max(evictedFloor, eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Whether an event of a destination after the client's position on it
+     * fell out of the log.
+     */
+    private boolean missedEvicted(Map.Entry<String, Long> afterSeq) {
+        if (afterSeq.getValue() == null) {
+            return false;
+        }
+        long evicted = Math.max(evictedFloor, evictedThrough.getOrDefault(afterSeq.getKey(), 0L));
+        return afterSeq.getValue() < evicted;
+    }
+
+    private record LoggedEvent(String destination, WebSocketEvent event) {
+    }
+}
@@ -37,6 +37,15 @@ public class OnlineCountController {
                 "showToAll", showToAll)));
     }
 
+    /**
+     * Users currently on a channel, as seen by this instance.
+     */
+    @GetMapping("/channels/{channelId}")
+    public ResponseEntity<ApiResponse<WebSocketPresenceService.ChannelPresence>> getChannelPresence(
+            @PathVariable String channelId) {
+        return ResponseEntity.ok(ApiResponse.success(presenceService.getChannelPresence(channelId)));
+    }
+
     @PostMapping("/toggle-visibility")
     public ResponseEntity<ApiResponse<Map<String, Boolean>>> toggleVisibility(@RequestParam String adminCode) {
         if (!adminService.isValidAdminCode(adminCode)) {
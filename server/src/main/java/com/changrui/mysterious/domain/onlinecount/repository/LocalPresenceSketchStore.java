@@ -0,0 +1,40 @@
+package com.changrui.mysterious.domain.onlinecount.repository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory store for a single instance.
+ */
+public class LocalPresenceSketchStore implements PresenceSketchStore {
+
+    private final Map<String, SavedSketch> sketches = new ConcurrentHashMap<>();
+
+    @Override
+    public void save(String nodeId, byte[] sketch) {
+        sketches.put(nodeId, new SavedSketch(sketch.clone(), System.currentTimeMillis()));
+    }
+
+    @Override
+    public Map<String, byte[]> findFresh(long maxAgeMillis) {
+        long freshAfter = System.currentTimeMillis() - maxAgeMillis;
+        return sketches.entrySet().stream()
+                .filter(entry -> entry.getValue().savedAt() > freshAfter)
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().sketch().clone()));
+    }
+
+    @Override
+    public void delete(String nodeId) {
+        sketches.remove(nodeId);
+    }
+
+    @Override
+    public void deleteStale(long maxAgeMillis) {
+        long freshAfter = System.currentTimeMillis() - maxAgeMillis;
+        sketches.values().removeIf(saved -> saved.savedAt() <= freshAfter);
+    }
+
+    private record SavedSketch(byte[] sketch, long savedAt) {
+    }
+}
@@ -0,0 +1,51 @@
+package com.changrui.mysterious.domain.onlinecount.repository;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Sketches kept in the presence_sketches table of the application database.
+ * Ages are measured with the database clock, so that the clocks of the
+ * instances do not need to agree.
+ */
+public class PostgresPresenceSketchStore implements PresenceSketchStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PostgresPresenceSketchStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void save(String nodeId, byte[] sketch) {
+        jdbcTemplate.update("""
+                INSERT INTO presence_sketches (node_id, sketch, updated_at)
+                VALUES (?, ?, now())
+                ON CONFLICT (node_id) DO UPDATE SET sketch = EXCLUDED.sketch, updated_at = EXCLUDED.updated_at
+                """, nodeId, sketch);
+    }
+
+    @Override
+    public Map<String, byte[]> findFresh(long maxAgeMillis) {
+        Map<String, byte[]> sketches = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT node_id, sketch FROM presence_sketches
+                WHERE updated_at > now() - ? * INTERVAL '1 millisecond'
+                """, rs -> {
+            sketches.put(rs.getString("node_id"), rs.getBytes("sketch"));
+        }, maxAgeMillis);
+        return sketches;
+    }
+
+    @Override
+    public void delete(String nodeId) {
+        jdbcTemplate.update("DELETE FROM presence_sketches WHERE node_id = ?", nodeId);
+    }
+
+    @Override
+    public void deleteStale(long maxAgeMillis) {
+        jdbcTemplate.update("DELETE FROM presence_sketches WHERE updated_at <= now() - ? * INTERVAL '1 millisecond'",
+                maxAgeMillis);
+    }
+}
@@ -0,0 +1,32 @@
+package com.changrui.mysterious.domain.onlinecount.repository;
+
+import java.util.Map;
+
+/**
+ * Store shared by the instances, where each one keeps the sketch of the
+ * users connected to it so that any instance can count the users of the
+ * whole cluster.
+ */
+public interface PresenceSketchStore {
+
+    /**
+     * Save the sketch of a node, replacing its previous one.
+     */
+    void save(String nodeId, byte[] sketch);
+
+    /**
+     * Sketches saved within the given age, by node id.
+     */
+    Map<String, byte[]> findFresh(long maxAgeMillis);
+
+    /**
+     * Delete the sketch of a node, e.g. when it shuts down.
+     */
+    void delete(String nodeId);
+
+    /**
+     * Delete the sketches older than the given age, left by nodes that
+     * stopped without deleting theirs.
+     */
+    void deleteStale(long maxAgeMillis);
+}
@@ -0,0 +1,218 @@
+package com.changrui.mysterious.domain.onlinecount.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Who is connected to this instance: open sessions by user, and by user
+ * within each channel, so that counts never scan the sessions.
+ *
+ * Sessions whose user is unknown count as one user each. As an inbound
+ * channel interceptor, every frame a client sends, heartbeats included,
+ * marks its session as alive; sessions silent for several heartbeat
+ * intervals can then be reaped even if their disconnect event was lost.
+ * Changes are synchronized on the registry; lookups and liveness updates
+ * are not.
+ */
+@Component
+public class PresenceRegistry implements ChannelInterceptor {
+
+    private static final String USER_PREFIX = "user:";
+    private static final String SESSION_PREFIX = "session:";
+    // Heartbeat intervals a session may miss before being reaped
+    private static final int MISSED_HEARTBEATS = 4;
+
+    private final Map<String, SessionPresence> sessions = new ConcurrentHashMap<>();
+    // Open sessions by user key
+    private final Map<String, Integer> users = new ConcurrentHashMap<>();
+    // Open sessions by user key, by channel
+    private final Map<String, Map<String, Integer>> channels = new ConcurrentHashMap<>();
+
+    /**
+     * Record a new session.
+     *
+     * @param userId            user given by the client, or null
+     * @param heartbeatMillis   negotiated interval of the client's heartbeats, 0 if none
+     * @param now               current time in milliseconds
+     * @return whether the user was not connected yet
+     */
+    public synchronized boolean connect(String sessionId, String userId, long heartbeatMillis, long now) {
+        if (sessions.containsKey(sessionId)) {
+            return false;
+        }
+        String userKey = userId != null && !userId.isBlank() ? USER_PREFIX + userId.trim() : SESSION_PREFIX + sessionId;
+        SessionPresence session = new SessionPresence(userKey, heartbeatMillis * MISSED_HEARTBEATS, now);
+        sessions.put(sessionId, session);
+        return increment(users, userKey);
+    }
+
+    /**
+     * Forget a session and its channel subscriptions.
+     *
+     * @return whether that was the last session of its user
+     */
+    public synchronized boolean disconnect(String sessionId) {
+        SessionPresence session = sessions.remove(sessionId);
+        if (session == null) {
+            return false;
+        }
+        for (String channelId : session.subscriptions.values()) {
+            leave(channelId, session.userKey);
+        }
+        return decrement(users, session.userKey);
+    }
+
+    /**
+     * Record a session's subscription to a channel.
+     */
+    public synchronized void subscribe(String sessionId, String subscriptionId, String channelId) {
+        SessionPresence session = sessions.get(sessionId);
+        if (session == null || session.subscriptions.putIfAbsent(subscriptionId, channelId) != null) {
+            return;
+        }
+        increment(channels.computeIfAbsent(channelId, id -> new ConcurrentHashMap<>()), session.userKey);
+    }
+
+    /**
+     * Forget a subscription; subscriptions to anything but a channel are ignored.
+     */
+    public synchronized void unsubscribe(String sessionId, String subscriptionId) {
+        SessionPresence session = sessions.get(sessionId);
+        String channelId = session != null ? session.subscriptions.remove(subscriptionId) : null;
+        if (channelId != null) {
+            leave(channelId, session.userKey);
+        }
+    }
+
+    /**
+     * Mark a session as alive.
+     */
+    public void touch(String sessionId, long now) {
+        SessionPresence session = sessions.get(sessionId);
+        if (session != null) {
+            session.lastSeen = now;
+        }
+    }
+
+    /**
+     * Forget the sessions that stopped sending heartbeats. Sessions that did
+     * not negotiate heartbeats are left to their disconnect event.
+     *
+     * @return ids of the sessions reaped
+     */
+    public List<String> reap(long now) {
+        List<String> reaped = new ArrayList<>();
+        for (Map.Entry<String, SessionPresence> entry : sessions.entrySet()) {
+            SessionPresence session = entry.getValue();
+            if (session.staleAfterMillis > 0 && now - session.lastSeen > session.staleAfterMillis) {
+                reaped.add(entry.getKey());
+            }
+        }
+        reaped.removeIf(sessionId -> !isStale(sessionId, now));
+        return reaped;
+    }
+
+    // Checked again under the lock: a session may have been touched since
+    private synchronized boolean isStale(String sessionId, long now) {
+        SessionPresence session = sessions.get(sessionId);
+        if (session == null || now - session.lastSeen <= session.staleAfterMillis) {
+            return false;
+        }
+        disconnect(sessionId);
+        return true;
+    }
+
+    /**
+     * Users with at least one open session.
+     */
+    public int userCount() {
+        return users.size();
+    }
+
+    /**
+     * Keys of the users with at least one open session: {@code user:<id>},
+     * or {@code session:<id>} for sessions without a user id. A live view.
+     */
+    public Set<String> userKeys() {
+        return Collections.unmodifiableSet(users.keySet());
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Users with at least one session subscribed to a channel.
+     */
+    public int userCount(String channelId) {
+        Map<String, Integer> channel = channels.get(channelId);
+        return channel != null ? channel.size() : 0;
+    }
+
+    /**
+     * Ids of the known users subscribed to a channel.
+     */
+    public Set<String> userIds(String channelId) {
+        Map<String, Integer> channel = channels.getOrDefault(channelId, Map.of());
+        return channel.keySet().stream()
+                .filter(key -> key.startsWith(USER_PREFIX))
+                .map(key -> key.substring(USER_PREFIX.length()))
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId != null) {
+            touch(sessionId, System.currentTimeMillis());
+        }
+        return message;
+    }
+
+    private void leave(String channelId, String userKey) {
+        Map<String, Integer> channel = channels.get(channelId);
+        if (channel != null) {
+            decrement(channel, userKey);
+            if (channel.isEmpty()) {
+                channels.remove(channelId);
+            }
+        }
+    }
+
+    // Returns whether the key was absent
+    private static boolean increment(Map<String, Integer> counts, String key) {
+        return counts.merge(key, 1, Integer::sum) == 1;
+    }
+
+    // Returns whether the key is now absent
+    private static boolean decrement(Map<String, Integer> counts, String key) {
+        return counts.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null) == null;
+    }
+
+    private static final class SessionPresence {
+
+        private final String userKey;
+        // 0 when the session sends no heartbeats
+        private final long staleAfterMillis;
+        private volatile long lastSeen;
+        // Channel by subscription id
+        private final Map<String, String> subscriptions = new HashMap<>();
+
+        SessionPresence(String userKey, long staleAfterMillis, long now) {
+            this.userKey = userKey;
+            this.staleAfterMillis = staleAfterMillis;
+            this.lastSeen = now;
+        }
+    }
+}
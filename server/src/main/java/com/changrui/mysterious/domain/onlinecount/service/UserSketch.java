@@ -0,0 +1,201 @@
+package com.changrui.mysterious.domain.onlinecount.service;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Mergeable sketch of a set of users, to count each user once across the
+ * instances that see them.
+ *
+ * Up to {@link #EXACT_LIMIT} users the sketch is the exact set of their
+ * 64-bit hashes; past it, it turns into a HyperLogLog of 2^14 registers
+ * (standard error about 0.8%). Either way it never takes more than 16 KB,
+ * whatever the number of users. Not thread-safe.
+ */
+public final class UserSketch {
+
+    static final int PRECISION = 14;
+    private static final int REGISTERS = 1 << PRECISION;
+    // As many hashes as fit in the size of the registers
+    static final int EXACT_LIMIT = REGISTERS / Long.BYTES;
+    // Highest rank a register can hold
+    private static final int MAX_RANK = Long.SIZE - PRECISION + 1;
+
+    private static final byte EXACT = 0;
+    private static final byte HYPERLOGLOG = 1;
+
+    // Null once registers are used
+    private Set<Long> hashes = new HashSet<>();
+    private byte[] registers;
+
+    /**
+     * Sketch of the given users.
+     */
+    public static UserSketch of(Iterable<String> userKeys) {
+        UserSketch sketch = new UserSketch();
+        for (String userKey : userKeys) {
+            sketch.add(userKey);
+        }
+        return sketch;
+    }
+
+    public void add(String userKey) {
+        addHash(hash(userKey));
+    }
+
+    /**
+     * Add the users of another sketch to this one.
+     */
+    public void merge(UserSketch other) {
+        if (other.registers == null) {
+            other.hashes.forEach(this::addHash);
+            return;
+        }
+        if (registers == null) {
+            toRegisters();
+        }
+        for (int i = 0; i < REGISTERS; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+    }
+
+    /**
+     * Number of distinct users: exact in the exact form, an estimate past it.
+     * The estimate uses the improved estimator of Ertl ("New cardinality
+     * estimation algorithms for HyperLogLog sketches", 2017), which has no
+     * bias to correct between small and large cardinalities.
+     */
+    public long cardinality() {
+        if (registers == null) {
+            return hashes.size();
+        }
+        int[] histogram = new int[MAX_RANK + 1];
+        for (byte register : registers) {
+            histogram[register]++;
+        }
+        double m = REGISTERS;
+        double z = m * tau(1 - histogram[MAX_RANK] / m);
+        for (int rank = MAX_RANK - 1; rank >= 1; rank--) {
+            z = 0.5 * (z + histogram[rank]);
+        }
+        z += m * sigma(histogram[0] / m);
+        return Math.round(m * m / (2 * Math.log(2) * z));
+    }
+
+    private static double sigma(double x) {
+        if (x == 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double y = 1;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0 || x == 1) {
+            return 0;
+        }
+        double y = 1;
+        double z = 1 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= (1 - x) * (1 - x) * y;
+        } while (z != previous);
+        return z / 3;
+    }
+
+    public byte[] toBytes() {
+        if (registers == null) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + Integer.BYTES + hashes.size() * Long.BYTES);
+            buffer.put(EXACT).putInt(hashes.size());
+            hashes.forEach(buffer::putLong);
+            return buffer.array();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(2 + REGISTERS);
+        buffer.put(HYPERLOGLOG).put((byte) PRECISION).put(registers);
+        return buffer.array();
+    }
+
+    /**
+     * Read a sketch written by {@link #toBytes()}.
+     *
+     * @throws IllegalArgumentException if the bytes are not a sketch
+     */
+    public static UserSketch fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        UserSketch sketch = new UserSketch();
+        try {
+            byte type = buffer.get();
+            if (type == EXACT) {
+                int size = buffer.getInt();
+                if (size < 0 || size > EXACT_LIMIT) {
+                    throw new IllegalArgumentException("Invalid user sketch size: " + size);
+                }
+                for (int i = 0; i < size; i++) {
+                    sketch.hashes.add(buffer.getLong());
+                }
+            } else if (type == HYPERLOGLOG && buffer.get() == PRECISION) {
+                sketch.hashes = null;
+                sketch.registers = new byte[REGISTERS];
+                buffer.get(sketch.registers);
+            } else {
+                throw new IllegalArgumentException("Unsupported user sketch format");
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated user sketch", e);
+        }
+        return sketch;
+    }
+
+    private void addHash(long hash) {
+        if (registers == null) {
+            hashes.add(hash);
+            if (hashes.size() > EXACT_LIMIT) {
+                toRegisters();
+            }
+            return;
+        }
+        // First bits pick the register, the others give the rank
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    private void toRegisters() {
+        Set<Long> exact = hashes;
+        hashes = null;
+        registers = new byte[REGISTERS];
+        exact.forEach(this::addHash);
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters, then the MurmurHash3 finalizer to
+     * spread the bits. Stable across instances and restarts.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,31 +1,142 @@
 package com.changrui.mysterious.domain.onlinecount.service;
 
+import com.changrui.mysterious.domain.messagewall.controller.MessageWebSocketController;
+import com.changrui.mysterious.domain.onlinecount.repository.PresenceSketchStore;
+import com.changrui.mysterious.shared.cluster.EventRelay;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import org.springframework.beans.factory.annotation.Autowired;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 /**
  * Service for tracking online presence via WebSocket connections.
  * No database needed - uses in-memory tracking of active sessions.
+ *
+ * Presence is counted by user: the sessions of one user (several tabs) count
+ * once, and sessions without a user id count as one user each. Sessions that
+ * stop sending heartbeats are reaped, so that a lost disconnect event does
+ * not keep a user online forever.
+ *
+ * Each instance saves a {@link UserSketch} of its users to a shared
+ * {@link PresenceSketchStore}; the online count is the cardinality of the
+ * union of the recent sketches, so a user connected to two instances counts
+ * once. It is exact up to a few thousand users and within about 1% past
+ * that, for a constant 16 KB per instance. The relay only tells the other
+ * instances that a sketch changed.
+ *
+ * Changes are not broadcast one by one: the first change of a window
+ * schedules one broadcast at its end, and nothing is sent if the count is
+ * back where it was. A reconnect storm of N clients thus costs a few frames
+ * per session instead of N.
  */
+@Slf4j
 @Service
 public class WebSocketPresenceService {
 
-    private final Set<String> activeSessions = ConcurrentHashMap.newKeySet();
+    private static final String RELAY_TOPIC = "presence";
+
     private final AtomicBoolean showOnlineCountToAll = new AtomicBoolean(false);
+    private final AtomicBoolean broadcastScheduled = new AtomicBoolean(false);
+    // Set when the sketches of the other nodes must be read again
+    private final AtomicBoolean remoteChanged = new AtomicBoolean(true);
+    private volatile int onlineCount;
+    // Guarded by this
+    private PresenceUpdate lastSent;
+    private byte[] lastSavedSketch;
+    // Union of the sketches of the other nodes
+    private UserSketch remoteSketch = new UserSketch();
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final EventRelay eventRelay;
+    private final PresenceRegistry presenceRegistry;
+    private final PresenceSketchStore sketchStore;
+    private final Counter reapedSessions;
+    private final long sketchMaxAgeMillis;
+    private final long broadcastIntervalMillis;
+    private final long heartbeatMillis;
+    private final ScheduledExecutorService scheduler;
 
-    @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    public WebSocketPresenceService(
+            SimpMessagingTemplate messagingTemplate,
+            EventRelay eventRelay,
+            PresenceRegistry presenceRegistry,
+            PresenceSketchStore sketchStore,
+            MeterRegistry meterRegistry,
+            @Value("${app.cluster.presence-timeout-ms:60000}") long sketchMaxAgeMillis,
+            @Value("${app.websocket.presence-broadcast-ms:1000}") long broadcastIntervalMillis,
+            @Value("${app.websocket.heartbeat-ms:10000}") long heartbeatMillis) {
+        this.messagingTemplate = messagingTemplate;
+        this.eventRelay = eventRelay;
+        this.presenceRegistry = presenceRegistry;
+        this.sketchStore = sketchStore;
+        this.sketchMaxAgeMillis = sketchMaxAgeMillis;
+        this.broadcastIntervalMillis = Math.max(0, broadcastIntervalMillis);
+        this.heartbeatMillis = Math.max(0, heartbeatMillis);
+        Gauge.builder("websocket.presence.users", presenceRegistry, PresenceRegistry::userCount)
+                .description("Distinct users connected to this instance")
+                .register(meterRegistry);
+        Gauge.builder("websocket.presence.sessions", presenceRegistry, PresenceRegistry::sessionCount)
+                .description("WebSocket sessions connected to this instance")
+                .register(meterRegistry);
+        this.reapedSessions = Counter.builder("websocket.presence.reaped")
+                .description("Sessions dropped from presence after missing their heartbeats")
+                .register(meterRegistry);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "presence-broadcast");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    void subscribeToOtherNodes() {
+        eventRelay.subscribe(RELAY_TOPIC, this::applyRemotePresence);
+        eventRelay.onResync(() -> {
+            remoteChanged.set(true);
+            broadcastOnlineCount();
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+        try {
+            sketchStore.delete(eventRelay.getNodeId());
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete the presence sketch of this node: {}", e.getMessage());
+        }
+    }
 
     /**
      * Called when a WebSocket session connects.
+     *
+     * @param userId                user id sent in the CONNECT frame, or null
+     * @param clientHeartbeatMillis interval at which the client offered to send heartbeats, 0 if none
      */
-    public void userConnected(String sessionId) {
-        if (sessionId != null) {
-            activeSessions.add(sessionId);
+    public void userConnected(String sessionId, String userId, long clientHeartbeatMillis) {
+        if (sessionId == null) {
+            return;
+        }
+        // Heartbeats flow only if both sides want them, at the slower of the two intervals
+        long negotiated = clientHeartbeatMillis > 0 && heartbeatMillis > 0
+                ? Math.max(clientHeartbeatMillis, heartbeatMillis)
+                : 0;
+        if (presenceRegistry.connect(sessionId, userId, negotiated, System.currentTimeMillis())) {
             broadcastOnlineCount();
         }
     }
@@ -34,8 +145,50 @@ public class WebSocketPresenceService {
      * Called when a WebSocket session disconnects.
      */
     public void userDisconnected(String sessionId) {
-        if (sessionId != null) {
-            activeSessions.remove(sessionId);
+        if (sessionId == null) {
+            return;
+        }
+        if (presenceRegistry.disconnect(sessionId)) {
+            broadcastOnlineCount();
+        }
+    }
+
+    /**
+     * Called when a session subscribes; only channel topics are tracked.
+     */
+    public void sessionSubscribed(String sessionId, String subscriptionId, String destination) {
+        String prefix = MessageWebSocketController.CHANNEL_TOPIC_PREFIX;
+        if (sessionId != null && subscriptionId != null && destination != null && destination.startsWith(prefix)) {
+            presenceRegistry.subscribe(sessionId, subscriptionId, destination.substring(prefix.length()));
+        }
+    }
+
+    /**
+     * Called when a session unsubscribes.
+     */
+    public void sessionUnsubscribed(String sessionId, String subscriptionId) {
+        if (sessionId != null && subscriptionId != null) {
+            presenceRegistry.unsubscribe(sessionId, subscriptionId);
+        }
+    }
+
+    /**
+     * Users on a channel, from this instance's sessions.
+     */
+    public ChannelPresence getChannelPresence(String channelId) {
+        return new ChannelPresence(channelId, presenceRegistry.userCount(channelId),
+                presenceRegistry.userIds(channelId));
+    }
+
+    /**
+     * Drop the sessions that stopped sending heartbeats.
+     */
+    @Scheduled(fixedRateString = "${app.websocket.presence-reap-ms:15000}")
+    public void reapStaleSessions() {
+        List<String> reaped = presenceRegistry.reap(System.currentTimeMillis());
+        if (!reaped.isEmpty()) {
+            reapedSessions.increment(reaped.size());
+            log.info("Dropped {} WebSocket sessions that missed their heartbeats", reaped.size());
             broadcastOnlineCount();
         }
     }
@@ -44,7 +197,7 @@ public class WebSocketPresenceService {
      * Get current online count.
      */
     public int getOnlineCount() {
-        return activeSessions.size();
+        return onlineCount;
     }
 
     /**
@@ -60,16 +213,113 @@ public class WebSocketPresenceService {
     public boolean toggleShowOnlineCountToAll() {
         boolean newValue = !showOnlineCountToAll.get();
         showOnlineCountToAll.set(newValue);
-        broadcastOnlineCount();
+        eventRelay.publish(RELAY_TOPIC, new RelayedPresence(presenceRegistry.userCount(), newValue));
+        sendOnlineCount();
         return newValue;
     }
 
     /**
-     * Broadcast online count to all connected clients.
+     * Broadcast online count to all connected clients, at the end of the
+     * current window.
      */
     public void broadcastOnlineCount() {
-        messagingTemplate.convertAndSend("/topic/presence",
-                new PresenceUpdate(getOnlineCount(), isShowOnlineCountToAll()));
+        if (broadcastIntervalMillis == 0) {
+            flushOnlineCount();
+        } else if (broadcastScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flushOnlineCount, broadcastIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Save this node's sketch and tell the other nodes if it changed, then
+     * broadcast the online count if it changed.
+     */
+    void flushOnlineCount() {
+        flush(false);
+    }
+
+    /**
+     * Save this node's sketch again so the other nodes keep counting it,
+     * drop the sketches of nodes that stopped, and re-read the others.
+     */
+    @Scheduled(fixedRateString = "${app.cluster.presence-announce-ms:20000}")
+    public void announce() {
+        try {
+            sketchStore.deleteStale(sketchMaxAgeMillis);
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete stale presence sketches: {}", e.getMessage());
+        }
+        remoteChanged.set(true);
+        flush(true);
+    }
+
+    private synchronized void flush(boolean refresh) {
+        // Cleared first, so that a change from now on schedules another window
+        broadcastScheduled.set(false);
+        UserSketch sketch = UserSketch.of(presenceRegistry.userKeys());
+        byte[] bytes = sketch.toBytes();
+        boolean changed = !Arrays.equals(bytes, lastSavedSketch);
+        if ((changed || refresh) && saveSketch(bytes) && changed) {
+            eventRelay.publish(RELAY_TOPIC, new RelayedPresence(presenceRegistry.userCount(), null));
+        }
+        if (remoteChanged.getAndSet(false)) {
+            loadRemoteSketches();
+        }
+        sketch.merge(remoteSketch);
+        onlineCount = (int) sketch.cardinality();
+        sendOnlineCount();
+    }
+
+    private boolean saveSketch(byte[] bytes) {
+        try {
+            sketchStore.save(eventRelay.getNodeId(), bytes);
+            lastSavedSketch = bytes;
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Failed to save the presence sketch of this node: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void loadRemoteSketches() {
+        Map<String, byte[]> sketches;
+        try {
+            sketches = sketchStore.findFresh(sketchMaxAgeMillis);
+        } catch (RuntimeException e) {
+            log.warn("Failed to read the presence sketches of other nodes: {}", e.getMessage());
+            // Read again at the next flush; the last union is kept meanwhile
+            remoteChanged.set(true);
+            return;
+        }
+        UserSketch union = new UserSketch();
+        sketches.forEach((nodeId, bytes) -> {
+            if (nodeId.equals(eventRelay.getNodeId())) {
+                return;
+            }
+            try {
+                union.merge(UserSketch.fromBytes(bytes));
+            } catch (IllegalArgumentException e) {
+                log.warn("Ignoring the presence sketch of node {}: {}", nodeId, e.getMessage());
+            }
+        });
+        remoteSketch = union;
+    }
+
+    private void applyRemotePresence(String originNodeId, JsonNode payload) {
+        JsonNode showToAll = payload.path("showToAll");
+        if (showToAll.isBoolean()) {
+            showOnlineCountToAll.set(showToAll.asBoolean());
+        }
+        remoteChanged.set(true);
+        broadcastOnlineCount();
+    }
+
+    private synchronized void sendOnlineCount() {
+        PresenceUpdate update = new PresenceUpdate(getOnlineCount(), isShowOnlineCountToAll());
+        if (!update.equals(lastSent)) {
+            messagingTemplate.convertAndSend("/topic/presence", update);
+            lastSent = update;
+        }
     }
 
     /**
@@ -77,4 +327,17 @@ public class WebSocketPresenceService {
      */
     public record PresenceUpdate(int count, boolean showToAll) {
     }
+
+    /**
+     * Users on a channel; userIds leaves out the sessions without a user id.
+     */
+    public record ChannelPresence(String channelId, int count, Set<String> userIds) {
+    }
+
+    /**
+     * Notice that a node's sketch changed, with its user count for the logs;
+     * showToAll is only set when it was toggled.
+     */
+    private record RelayedPresence(int users, Boolean showToAll) {
+    }
 }
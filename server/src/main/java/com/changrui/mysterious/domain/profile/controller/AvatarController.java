@@ -5,6 +5,8 @@ import com.changrui.mysterious.domain.profile.middleware.SecureFileUpload;
 import com.changrui.mysterious.domain.profile.middleware.ValidateFileUpload;
 import com.changrui.mysterious.domain.profile.service.AvatarService;
 import com.changrui.mysterious.shared.dto.ApiResponse;
+import com.changrui.mysterious.shared.ratelimit.RateLimiter;
+import jakarta.servlet.http.HttpServletRequest;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
@@ -42,6 +44,9 @@ public class AvatarController {
     @Autowired
     private AvatarService avatarService;
 
+    @Autowired
+    private RateLimiter rateLimiter;
+
     /**
      * Upload avatar file
      */
@@ -51,8 +56,10 @@ public class AvatarController {
     public ResponseEntity<ApiResponse<String>> uploadAvatar(
             @PathVariable String userId,
             @RequestParam("avatar") @ValidateFileUpload(fileType = "avatar", maxSize = 5242880) MultipartFile file,
-            @RequestParam String requesterId) {
+            @RequestParam String requesterId,
+            HttpServletRequest request) {
 
+        rateLimiter.check(RateLimiter.AVATAR_UPLOAD, rateLimiter.clientKey(request));
         String avatarUrl = avatarService.uploadAvatar(userId, file, requesterId);
         return ResponseEntity.ok(ApiResponse.success("Avatar uploaded successfully", avatarUrl));
     }
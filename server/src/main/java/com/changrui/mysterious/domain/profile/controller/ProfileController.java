@@ -192,12 +192,12 @@ public class ProfileController {
     public ResponseEntity<ApiResponse<BasicProfileInfo>> getBasicProfileInfo(
             @PathVariable String userId) {
 
-        var profile = profileIntegrationService.getProfileForMessage(userId);
-        if (profile == null) {
+        var card = profileIntegrationService.getAuthorCard(userId);
+        if (card == null) {
             return ResponseEntity.ok(ApiResponse.success(null));
         }
 
-        var basicInfo = new BasicProfileInfo(profile.getDisplayName(), profile.getResolvedAvatarUrl());
+        var basicInfo = new BasicProfileInfo(card.displayName(), card.avatarUrl());
         return ResponseEntity.ok(ApiResponse.success(basicInfo));
     }
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.changrui.mysterious.domain.profile.dto;
+
+import com.changrui.mysterious.domain.profile.model.UserProfile;
+
+/**
+ * What message display needs to know about a profile.
+ */
+public record AuthorCard(
+    String userId,
+    String displayName,
+    String avatarUrl,
+    boolean isPublic
+) {
+
+    /**
+     * Projection constructor, resolving the default avatar from the gender.
+     */
+    public AuthorCard(String userId, String displayName, String avatarUrl, String gender, boolean isPublic) {
+        this(userId, displayName, UserProfile.resolveAvatarUrl(avatarUrl, gender), isPublic);
+    }
+}
@@ -54,10 +54,7 @@ public class ProfileAuthInterceptor implements HandlerInterceptor {
             );
             
             // Apply rate limiting
-            if (requesterId != null) {
-                String operation = determineOperation(method, requestURI);
-                authMiddleware.verifyRateLimit(requesterId, operation);
-            }
+            authMiddleware.verifyRateLimit(request, determineOperation(method, requestURI));
             
             // Verify access
             // First check if admin access was already granted by PrivacyFilterInterceptor
@@ -75,10 +72,7 @@ public class ProfileAuthInterceptor implements HandlerInterceptor {
             authMiddleware.verifyProfileAccess(userId, requesterId, requireOwnership);
         } else {
             // General endpoints (search, directory)
-            if (requesterId != null) {
-                String operation = determineOperation(method, requestURI);
-                authMiddleware.verifyRateLimit(requesterId, operation);
-            }
+            authMiddleware.verifyRateLimit(request, determineOperation(method, requestURI));
         }
 
         return true;
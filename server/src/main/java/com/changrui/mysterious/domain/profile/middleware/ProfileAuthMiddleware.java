@@ -3,7 +3,9 @@ package com.changrui.mysterious.domain.profile.middleware;
 import com.changrui.mysterious.domain.profile.repository.UserProfileRepository;
 import com.changrui.mysterious.domain.user.service.AdminService;
 import com.changrui.mysterious.shared.exception.NotFoundException;
+import com.changrui.mysterious.shared.exception.RateLimitExceededException;
 import com.changrui.mysterious.shared.exception.UnauthorizedException;
+import com.changrui.mysterious.shared.ratelimit.RateLimiter;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -20,6 +22,7 @@ public class ProfileAuthMiddleware {
 
     private final UserProfileRepository profileRepository;
     private final AdminService adminService;
+    private final RateLimiter rateLimiter;
 
     /**
      * Verify that the requester can access the specified profile.
@@ -147,20 +150,14 @@ public class ProfileAuthMiddleware {
 
     /**
      * Verify rate limiting for profile operations.
-     * This is a placeholder for future rate limiting implementation.
+     * Requests are counted per IP address: the requester id is not authenticated.
      * 
-     * @param requesterId The ID of the user making the request
-     * @param operation   The type of operation being performed
+     * @param request   The HTTP request
+     * @param operation The type of operation being performed
+     * @throws RateLimitExceededException if the limit of the operation is reached
      */
-    public void verifyRateLimit(String requesterId, String operation) {
-        // TODO: Implement rate limiting logic
-        // For now, this is a no-op but provides the structure for future implementation
-
-        // Example rate limits that could be implemented:
-        // - Profile updates: 10 per hour per user
-        // - Avatar uploads: 5 per hour per user
-        // - Profile searches: 100 per hour per user
-        // - Directory access: 50 per hour per user
+    public void verifyRateLimit(HttpServletRequest request, String operation) {
+        rateLimiter.check(operation, rateLimiter.clientKey(request));
     }
 
     /**
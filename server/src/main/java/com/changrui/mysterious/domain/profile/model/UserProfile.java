@@ -73,6 +73,13 @@ public class UserProfile {
      * necessary.
      */
     public String getResolvedAvatarUrl() {
+        return resolveAvatarUrl(avatarUrl, gender);
+    }
+
+    /**
+     * Avatar URL to display for a profile's avatar URL and gender.
+     */
+    public static String resolveAvatarUrl(String avatarUrl, String gender) {
         if (avatarUrl == null || avatarUrl.trim().isEmpty()) {
             if ("H".equalsIgnoreCase(gender) || "M".equalsIgnoreCase(gender) || "B".equalsIgnoreCase(gender)) {
                 return "/avatars/default-B.jpeg";
@@ -1,6 +1,8 @@
 package com.changrui.mysterious.domain.profile.repository;
 
+import com.changrui.mysterious.domain.profile.dto.AuthorCard;
 import com.changrui.mysterious.domain.profile.model.UserProfile;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -19,6 +21,12 @@ public interface UserProfileRepository extends JpaRepository<UserProfile, String
      */
     Optional<UserProfile> findByUserId(String userId);
 
+    /**
+     * Find the author cards of several users, without loading their profiles
+     */
+    @Query("SELECT new com.changrui.mysterious.domain.profile.dto.AuthorCard(p.userId, p.displayName, p.avatarUrl, p.gender, p.isPublic) FROM UserProfile p WHERE p.userId IN :userIds")
+    List<AuthorCard> findAuthorCards(@Param("userIds") Collection<String> userIds);
+
     /**
      * Search profiles by display name (case-insensitive)
      */
@@ -0,0 +1,202 @@
+package com.changrui.mysterious.domain.profile.service;
+
+import com.changrui.mysterious.domain.profile.dto.AuthorCard;
+import com.changrui.mysterious.domain.profile.repository.UserProfileRepository;
+import com.changrui.mysterious.shared.cache.ResourceVersions;
+import com.changrui.mysterious.shared.cluster.EventRelay;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Bounded LRU cache of author cards, so that messages are enriched without
+ * querying profiles in steady state. Users without a profile are cached too.
+ *
+ * Every code path changing a profile's display name, avatar or visibility,
+ * or creating or deleting a profile, must call {@link #evict}. Evictions
+ * apply once the transaction has committed, are relayed to the other
+ * instances, and are announced on this node as {@link AuthorChanged} so that
+ * caches holding enriched messages can drop them.
+ */
+@Service
+public class AuthorCardCache {
+
+    /**
+     * Published when the card of a user may have changed; a null user id
+     * stands for every user.
+     */
+    public record AuthorChanged(String userId) {
+    }
+
+    private static final String RELAY_TOPIC = "authors";
+    // Cached for users without a profile
+    private static final AuthorCard NO_PROFILE = new AuthorCard(null, null, null, false);
+
+    private final UserProfileRepository profileRepository;
+    private final ResourceVersions resourceVersions;
+    private final EventRelay eventRelay;
+    private final ApplicationEventPublisher eventPublisher;
+    // Guarded by itself, as is generation: loads started before an eviction are not kept
+    private final Map<String, AuthorCard> cards;
+    private long generation;
+    private final Counter hits;
+    private final Counter misses;
+
+    public AuthorCardCache(
+            UserProfileRepository profileRepository,
+            ResourceVersions resourceVersions,
+            EventRelay eventRelay,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${app.profile.author-cache-size:10000}") int cacheSize) {
+        this.profileRepository = profileRepository;
+        this.resourceVersions = resourceVersions;
+        this.eventRelay = eventRelay;
+        this.eventPublisher = eventPublisher;
+        int maxEntries = Math.max(1, cacheSize);
+        this.cards = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AuthorCard> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.hits = Counter.builder("profile.author.cache.requests")
+                .tag("result", "hit")
+                .description("Author card lookups served from memory")
+                .register(meterRegistry);
+        this.misses = Counter.builder("profile.author.cache.requests")
+                .tag("result", "miss")
+                .description("Author card lookups that went to the database")
+                .register(meterRegistry);
+        meterRegistry.gauge("profile.author.cache.size", cards, this::size);
+
+        eventRelay.subscribe(RELAY_TOPIC, (origin, payload) -> applyEvict(payload.path("userId").asText(null)));
+        // Evictions may have been missed: forget everything
+        eventRelay.onResync(() -> applyEvict(null));
+    }
+
+    /**
+     * Card of a user, or null if the user has no profile.
+     */
+    public AuthorCard get(String userId) {
+        if (userId == null || userId.isEmpty()) {
+            return null;
+        }
+        return getAll(List.of(userId)).get(userId);
+    }
+
+    /**
+     * Cards of several users, loading the missing ones in a single query.
+     * Users without a profile are absent from the result.
+     */
+    public Map<String, AuthorCard> getAll(Collection<String> userIds) {
+        Map<String, AuthorCard> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        int cached = 0;
+        long loadedAt;
+        synchronized (cards) {
+            loadedAt = generation;
+            for (String userId : userIds) {
+                if (userId == null || userId.isEmpty()) {
+                    continue;
+                }
+                AuthorCard card = cards.get(userId);
+                if (card == null) {
+                    missing.add(userId);
+                    continue;
+                }
+                cached++;
+                if (card != NO_PROFILE) {
+                    found.put(userId, card);
+                }
+            }
+        }
+        hits.increment(cached);
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        misses.increment(missing.size());
+        for (AuthorCard card : profileRepository.findAuthorCards(missing)) {
+            found.put(card.userId(), card);
+        }
+        synchronized (cards) {
+            if (generation == loadedAt) {
+                for (String userId : missing) {
+                    cards.put(userId, found.getOrDefault(userId, NO_PROFILE));
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Forget the card of a user once the current transaction has committed,
+     * on every instance.
+     *
+     * @param userId the user, or null for every user
+     */
+    public void evict(String userId) {
+        afterCommit(() -> {
+            applyEvict(userId);
+            eventRelay.publish(RELAY_TOPIC, new AuthorEviction(userId));
+        });
+        // Cached message pages embed the old card
+        resourceVersions.bumpAll(ResourceVersions.MESSAGES);
+    }
+
+    /**
+     * Forget every card once the current transaction has committed, e.g.
+     * after profiles were created in bulk.
+     */
+    public void evictAll() {
+        evict(null);
+    }
+
+    private int size(Map<String, AuthorCard> map) {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    private void applyEvict(String userId) {
+        synchronized (cards) {
+            generation++;
+            if (userId == null) {
+                cards.clear();
+            } else {
+                cards.remove(userId);
+            }
+        }
+        eventPublisher.publishEvent(new AuthorChanged(userId));
+    }
+
+    /**
+     * Relayed eviction; a null user id stands for every user.
+     */
+    private record AuthorEviction(String userId) {
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
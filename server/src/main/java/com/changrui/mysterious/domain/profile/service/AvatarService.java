@@ -39,6 +39,9 @@ public class AvatarService {
     @Autowired
     private FileUploadMiddleware fileUploadMiddleware;
 
+    @Autowired
+    private AuthorCardCache authorCardCache;
+
     @Value("${app.avatar.upload-dir:../uploads/avatars}")
     private String uploadDir;
 
@@ -151,6 +154,7 @@ public class AvatarService {
 
         profile.setAvatarUrl(avatarUrl);
         profileRepository.save(profile);
+        authorCardCache.evict(userId);
     }
 
     /**
@@ -168,6 +172,7 @@ public class AvatarService {
 
         profile.setAvatarUrl(null);
         profileRepository.save(profile);
+        authorCardCache.evict(userId);
     }
 
     /**
@@ -3,11 +3,11 @@ package com.changrui.mysterious.domain.profile.service;
 import com.changrui.mysterious.domain.messagewall.dto.MessageResponse;
 import com.changrui.mysterious.domain.messagewall.mapper.MessageMapper;
 import com.changrui.mysterious.domain.messagewall.model.Message;
-import com.changrui.mysterious.domain.profile.model.UserProfile;
-import com.changrui.mysterious.domain.profile.repository.UserProfileRepository;
+import com.changrui.mysterious.domain.profile.dto.AuthorCard;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -20,7 +20,7 @@ import org.springframework.stereotype.Service;
 public class ProfileIntegrationService {
 
     @Autowired
-    private UserProfileRepository profileRepository;
+    private AuthorCardCache authorCardCache;
 
     @Autowired
     private ProfileService profileService;
@@ -37,56 +37,33 @@ public class ProfileIntegrationService {
         }
 
         // Get unique user IDs from messages
-        List<String> userIds = messages.stream()
+        Set<String> userIds = messages.stream()
                 .map(Message::getUserId)
-                .filter(userId -> userId != null && !userId.isEmpty())
-                .distinct()
-                .collect(Collectors.toList());
-
-        Map<String, UserProfile> profileMap;
-        if (userIds.isEmpty()) {
-            profileMap = Collections.emptyMap();
-        } else {
-            // Fetch profiles for these users
-            profileMap = profileRepository.findAllById(userIds)
-                    .stream()
-                    .collect(Collectors.toMap(UserProfile::getUserId, profile -> profile));
-        }
+                .collect(Collectors.toSet());
+        Map<String, AuthorCard> cards = authorCardCache.getAll(userIds);
 
         // Convert to DTO and enrich
         return messages.stream()
-                .map(message -> enrichMessageWithProfile(message, profileMap.get(message.getUserId())))
+                .map(message -> enrichMessageWithCard(message, cards.get(message.getUserId())))
                 .collect(Collectors.toList());
     }
 
     /**
      * Enrich a single message with profile information and convert to DTO
      */
-    public MessageResponse enrichMessageWithProfile(Message message, UserProfile profile) {
+    public MessageResponse enrichMessageWithProfile(Message message) {
         if (message == null) {
             return null;
         }
-
-        // Use new Mapper capability
-        String avatarUrl = null;
-        if (profile != null && profile.isPublic()) {
-            avatarUrl = profile.getResolvedAvatarUrl();
-        }
-
-        return messageMapper.toDtoWithAvatar(message, avatarUrl);
+        return enrichMessageWithCard(message, authorCardCache.get(message.getUserId()));
     }
 
     /**
-     * Get profile information for message display
+     * Get profile information for message display, null unless the profile is public
      */
-    public UserProfile getProfileForMessage(String userId) {
-        if (userId == null || userId.isEmpty()) {
-            return null;
-        }
-
-        return profileRepository.findByUserId(userId)
-                .filter(UserProfile::isPublic)
-                .orElse(null);
+    public AuthorCard getAuthorCard(String userId) {
+        AuthorCard card = authorCardCache.get(userId);
+        return card != null && card.isPublic() ? card : null;
     }
 
     /**
@@ -97,4 +74,10 @@ public class ProfileIntegrationService {
             profileService.updateLastActive(userId);
         }
     }
+
+    private MessageResponse enrichMessageWithCard(Message message, AuthorCard card) {
+        // Avatars of private profiles are not shown
+        String avatarUrl = card != null && card.isPublic() ? card.avatarUrl() : null;
+        return messageMapper.toDtoWithAvatar(message, avatarUrl);
+    }
 }
@@ -31,6 +31,7 @@ public class ProfileMigrationService {
     private final UserProfileRepository profileRepository;
     private final PrivacySettingsRepository privacyRepository;
     private final ActivityStatsRepository activityRepository;
+    private final AuthorCardCache authorCardCache;
 
     /**
      * Run migration on startup
@@ -99,6 +100,9 @@ public class ProfileMigrationService {
         }
 
         log.info("Profile migration completed. Created: {}, Updated: {}", profilesCreated, profilesUpdated);
+        if (profilesCreated > 0) {
+            authorCardCache.evictAll();
+        }
     }
 
     /**
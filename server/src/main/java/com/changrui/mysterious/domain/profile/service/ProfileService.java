@@ -37,6 +37,9 @@ public class ProfileService {
     @Autowired
     private ActivityService activityService;
 
+    @Autowired
+    private AuthorCardCache authorCardCache;
+
     /**
      * Create a new user profile
      */
@@ -79,6 +82,7 @@ public class ProfileService {
         }
 
         profile = profileRepository.save(profile);
+        authorCardCache.evict(request.userId());
 
         // Create default privacy settings
         PrivacySettings privacy = new PrivacySettings(request.userId());
@@ -171,6 +175,7 @@ public class ProfileService {
         }
 
         profile = profileRepository.save(profile);
+        authorCardCache.evict(userId);
 
         PrivacySettings privacy = privacyRepository.findByUserId(userId).orElse(null);
         ActivityStats stats = activityRepository.findByUserId(userId).orElse(null);
@@ -201,6 +206,7 @@ public class ProfileService {
                     .orElseThrow(() -> new NotFoundException("Profile not found for user: " + userId));
             profile.setPublic("public".equals(request.profileVisibility()));
             profileRepository.save(profile);
+            authorCardCache.evict(userId);
         }
 
         if (request.showBio() != null) {
@@ -284,6 +290,7 @@ public class ProfileService {
 
         // Delete profile
         profileRepository.deleteById(userId);
+        authorCardCache.evict(userId);
     }
 
     /**
@@ -3,6 +3,7 @@ package com.changrui.mysterious.domain.settings.controller;
 import com.changrui.mysterious.domain.settings.model.SystemSetting;
 import com.changrui.mysterious.domain.settings.service.SystemSettingService;
 import com.changrui.mysterious.domain.user.service.AdminService;
+import com.changrui.mysterious.shared.cache.ResourceVersions;
 import com.changrui.mysterious.shared.dto.ApiResponse;
 import com.changrui.mysterious.shared.exception.UnauthorizedException;
 import java.util.List;
@@ -10,6 +11,7 @@ import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * Controller for system settings management.
@@ -24,9 +26,16 @@ public class SystemSettingController {
     @Autowired
     private AdminService adminService;
 
+    @Autowired
+    private ResourceVersions resourceVersions;
+
     @GetMapping("/public")
-    public ResponseEntity<Map<String, String>> getPublicSettings() {
-        return ResponseEntity.ok(systemSettingService.getPublicSettings());
+    public ResponseEntity<Map<String, String>> getPublicSettings(WebRequest request) {
+        String etag = resourceVersions.etag(ResourceVersions.SETTINGS, "public");
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).body(systemSettingService.getPublicSettings());
     }
 
     @GetMapping
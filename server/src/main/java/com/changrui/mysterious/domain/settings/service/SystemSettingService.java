@@ -2,6 +2,7 @@ package com.changrui.mysterious.domain.settings.service;
 
 import com.changrui.mysterious.domain.settings.model.SystemSetting;
 import com.changrui.mysterious.domain.settings.repository.SystemSettingRepository;
+import com.changrui.mysterious.shared.cache.ResourceVersions;
 import jakarta.annotation.PostConstruct;
 import java.util.HashMap;
 import java.util.List;
@@ -19,6 +20,9 @@ public class SystemSettingService {
     @Autowired
     private SystemSettingRepository systemSettingRepository;
 
+    @Autowired
+    private ResourceVersions resourceVersions;
+
     private static final Map<String, String> DEFAULTS;
     
     static {
@@ -51,12 +55,11 @@ public class SystemSettingService {
 
     public SystemSetting updateSetting(String key, String value) {
         Optional<SystemSetting> existing = systemSettingRepository.findById(key);
-        if (existing.isPresent()) {
-            SystemSetting setting = existing.get();
-            setting.setValue(value);
-            return systemSettingRepository.save(setting);
-        }
-        return systemSettingRepository.save(new SystemSetting(key, value, "System Toggle"));
+        SystemSetting setting = existing.orElseGet(() -> new SystemSetting(key, value, "System Toggle"));
+        setting.setValue(value);
+        SystemSetting saved = systemSettingRepository.save(setting);
+        resourceVersions.bumpAll(ResourceVersions.SETTINGS);
+        return saved;
     }
 
     public Map<String, String> getPublicSettings() {
@@ -4,6 +4,7 @@ import com.changrui.mysterious.domain.user.dto.*;
 import com.changrui.mysterious.domain.user.model.AppUser;
 import com.changrui.mysterious.domain.user.repository.AppUserRepository;
 import com.changrui.mysterious.domain.user.service.AdminService;
+import com.changrui.mysterious.domain.user.service.UserVerificationService;
 import com.changrui.mysterious.shared.dto.ApiResponse;
 import com.changrui.mysterious.shared.exception.ValidationException;
 import jakarta.validation.Valid;
@@ -26,6 +27,9 @@ public class AuthController {
     @Autowired
     private AdminService adminService;
 
+    @Autowired
+    private UserVerificationService userVerificationService;
+
     @Autowired
     private com.changrui.mysterious.domain.profile.service.ProfileService profileService;
 
@@ -37,6 +41,7 @@ public class AuthController {
 
         AppUser newUser = new AppUser(dto.username(), dto.password(), dto.password());
         userRepository.save(newUser);
+        userVerificationService.markUserExists(newUser.getId());
 
         String avatarUrl = null;
         try {
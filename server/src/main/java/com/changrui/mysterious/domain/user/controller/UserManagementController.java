@@ -3,6 +3,7 @@ package com.changrui.mysterious.domain.user.controller;
 import com.changrui.mysterious.domain.user.model.AppUser;
 import com.changrui.mysterious.domain.user.repository.AppUserRepository;
 import com.changrui.mysterious.domain.user.service.AdminService;
+import com.changrui.mysterious.domain.user.service.UserVerificationService;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -24,6 +25,9 @@ public class UserManagementController {
     @Autowired
     private AdminService adminService;
 
+    @Autowired
+    private UserVerificationService userVerificationService;
+
     @GetMapping("/users")
     public ResponseEntity<?> getAllUsers(@RequestParam String superAdminCode) {
         if (!adminService.isSuperAdmin(superAdminCode)) {
@@ -72,6 +76,7 @@ public class UserManagementController {
         try {
             AppUser newUser = new AppUser(username, password, password);
             userRepository.save(newUser);
+            userVerificationService.markUserExists(newUser.getId());
 
             return ResponseEntity.ok(Map.of(
                     "id", newUser.getId(),
@@ -119,6 +124,7 @@ public class UserManagementController {
         }
 
         userRepository.deleteById(id);
+        userVerificationService.forgetUser(id);
         return ResponseEntity.ok(Map.of("message", "User deleted successfully"));
     }
 }
@@ -1,13 +1,22 @@
 package com.changrui.mysterious.domain.user.service;
 
 import com.changrui.mysterious.domain.user.repository.AppUserRepository;
+import com.changrui.mysterious.shared.cluster.EventRelay;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
  * Service for user verification operations.
  * Provides a clean interface for other domains to verify user existence
  * without directly accessing the user repository.
+ *
+ * Existence answers (positive and negative) are kept in a bounded LRU cache;
+ * every code path creating or deleting users must call {@link #markUserExists}
+ * or {@link #forgetUser}. Both are relayed to the other instances.
  */
 @Service
 public class UserVerificationService {
@@ -15,11 +24,62 @@ public class UserVerificationService {
     @Autowired
     private AppUserRepository appUserRepository;
 
+    private static final String RELAY_TOPIC = "users";
+
+    private final Map<String, Boolean> existenceCache;
+    private final EventRelay eventRelay;
+
+    public UserVerificationService(EventRelay eventRelay,
+            @Value("${app.user.existence-cache-size:10000}") int cacheSize) {
+        this.eventRelay = eventRelay;
+        int maxEntries = Math.max(1, cacheSize);
+        this.existenceCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxEntries;
+            }
+        });
+
+        eventRelay.subscribe(RELAY_TOPIC, (origin, payload) -> {
+            String userId = payload.path("userId").asText(null);
+            if (userId != null) {
+                existenceCache.put(userId, payload.path("exists").asBoolean());
+            }
+        });
+        // Changes may have been missed: ask the database again
+        eventRelay.onResync(existenceCache::clear);
+    }
+
     /**
      * Check if a user exists by their ID.
      */
     public boolean userExists(String userId) {
-        return userId != null && appUserRepository.existsById(userId);
+        if (userId == null) {
+            return false;
+        }
+        Boolean cached = existenceCache.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        boolean exists = appUserRepository.existsById(userId);
+        existenceCache.put(userId, exists);
+        return exists;
+    }
+
+    /**
+     * Record a newly created user.
+     */
+    public void markUserExists(String userId) {
+        existenceCache.put(userId, true);
+        eventRelay.publish(RELAY_TOPIC, new UserChange(userId, true));
+    }
+
+    /**
+     * Record a deleted user.
+     */
+    public void forgetUser(String userId) {
+        existenceCache.put(userId, false);
+        eventRelay.publish(RELAY_TOPIC, new UserChange(userId, false));
     }
 
     /**
@@ -28,4 +88,10 @@ public class UserVerificationService {
     public boolean usernameExists(String username) {
         return username != null && appUserRepository.existsByUsername(username);
     }
+
+    /**
+     * Relayed creation or deletion of a user.
+     */
+    private record UserChange(String userId, boolean exists) {
+    }
 }
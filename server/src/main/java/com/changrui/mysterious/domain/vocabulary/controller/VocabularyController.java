@@ -2,11 +2,13 @@ package com.changrui.mysterious.domain.vocabulary.controller;
 
 import com.changrui.mysterious.domain.vocabulary.model.VocabularyItem;
 import com.changrui.mysterious.domain.vocabulary.service.VocabularyService;
+import com.changrui.mysterious.shared.cache.ResourceVersions;
 import java.util.List;
 import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * Controller for vocabulary operations.
@@ -18,6 +20,9 @@ public class VocabularyController {
     @Autowired
     private VocabularyService vocabularyService;
 
+    @Autowired
+    private ResourceVersions resourceVersions;
+
     @GetMapping("/random")
     public ResponseEntity<VocabularyItem> getRandom() {
         VocabularyItem item = vocabularyService.getRandomItem();
@@ -37,8 +42,12 @@ public class VocabularyController {
     }
 
     @GetMapping("/all")
-    public ResponseEntity<List<VocabularyItem>> getAll() {
-        return ResponseEntity.ok(vocabularyService.getAllItems());
+    public ResponseEntity<List<VocabularyItem>> getAll(WebRequest request) {
+        String etag = resourceVersions.etag(ResourceVersions.VOCABULARY, "all");
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).body(vocabularyService.getAllItems());
     }
 
     @PostMapping("/reload")
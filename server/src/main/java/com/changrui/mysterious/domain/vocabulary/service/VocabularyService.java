@@ -2,6 +2,7 @@ package com.changrui.mysterious.domain.vocabulary.service;
 
 import com.changrui.mysterious.domain.vocabulary.model.VocabularyItem;
 import com.changrui.mysterious.domain.vocabulary.repository.VocabularyRepository;
+import com.changrui.mysterious.shared.cache.ResourceVersions;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,6 +17,9 @@ public class VocabularyService {
     @Autowired
     private VocabularyRepository vocabularyRepository;
 
+    @Autowired
+    private ResourceVersions resourceVersions;
+
     private List<VocabularyItem> cachedList = null;
 
     /**
@@ -23,6 +27,7 @@ public class VocabularyService {
      */
     public void loadData() {
         cachedList = vocabularyRepository.findAll();
+        resourceVersions.bumpAll(ResourceVersions.VOCABULARY);
     }
 
     private void ensureCache() {
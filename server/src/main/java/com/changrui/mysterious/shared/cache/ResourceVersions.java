@@ -0,0 +1,140 @@
+package com.changrui.mysterious.shared.cache;
+
+import com.changrui.mysterious.shared.cluster.EventRelay;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-memory version numbers of cacheable read resources, used to build
+ * strong ETags for conditional GETs.
+ *
+ * Readers must take the ETag before loading the data, and writers bump the
+ * version once their transaction has committed (done automatically here), so
+ * an ETag can never be paired with data older than what it stands for.
+ * ETags carry a random per-instance epoch: a client switching instances or
+ * hitting a restarted one simply gets a full response. Bumps are relayed to
+ * the other instances so that none of them answers 304 on stale data.
+ */
+@Component
+public class ResourceVersions {
+
+    public static final String MESSAGES = "messages";
+    public static final String SCORES = "scores";
+    public static final String SETTINGS = "settings";
+    public static final String VOCABULARY = "vocabulary";
+
+    private static final String RELAY_TOPIC = "versions";
+    private static final List<String> NAMESPACES = List.of(MESSAGES, SCORES, SETTINGS, VOCABULARY);
+
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    // Minimum version of every key of a namespace, raised by bumpAll
+    private final Map<String, Long> floors = new ConcurrentHashMap<>();
+    private final EventRelay eventRelay;
+
+    public ResourceVersions(EventRelay eventRelay) {
+        this.eventRelay = eventRelay;
+        eventRelay.subscribe(RELAY_TOPIC, (origin, payload) -> {
+            String namespace = payload.path("namespace").asText();
+            JsonNode keys = payload.path("keys");
+            if (keys.isArray()) {
+                List<String> changed = new ArrayList<>();
+                keys.forEach(key -> changed.add(key.asText()));
+                applyBump(namespace, changed);
+            } else {
+                applyBumpAll(namespace);
+            }
+        });
+        // Bumps may have been missed: treat everything as changed
+        eventRelay.onResync(() -> NAMESPACES.forEach(this::applyBumpAll));
+    }
+
+    /**
+     * Current version of a resource.
+     */
+    public long version(String namespace, String key) {
+        return Math.max(versions.getOrDefault(namespace + "/" + key, 0L), floors.getOrDefault(namespace, 0L));
+    }
+
+    /**
+     * Strong ETag of a resource at its current version.
+     */
+    public String etag(String namespace, String key) {
+        return "\"" + epoch + "-" + version(namespace, key) + "\"";
+    }
+
+    /**
+     * Strong ETag of one representation of a resource at its current version.
+     * The variant (query parameters, content coding...) is part of the tag,
+     * so that two different bodies never share a validator.
+     */
+    public String etag(String namespace, String key, Object... variant) {
+        String variantKey = Arrays.stream(variant).map(String::valueOf).collect(Collectors.joining("\u0000"));
+        UUID hash = UUID.nameUUIDFromBytes(variantKey.getBytes(StandardCharsets.UTF_8));
+        return "\"" + epoch + "-" + version(namespace, key) + "-"
+                + Long.toString(hash.getMostSignificantBits() & Long.MAX_VALUE, 36) + "\"";
+    }
+
+    /**
+     * Mark resources of a namespace as changed.
+     */
+    public void bump(String namespace, String... keys) {
+        afterCommit(() -> {
+            applyBump(namespace, List.of(keys));
+            eventRelay.publish(RELAY_TOPIC, new VersionChange(namespace, List.of(keys)));
+        });
+    }
+
+    /**
+     * Mark every resource of a namespace as changed, including ones never bumped.
+     */
+    public void bumpAll(String namespace) {
+        afterCommit(() -> {
+            applyBumpAll(namespace);
+            eventRelay.publish(RELAY_TOPIC, new VersionChange(namespace, null));
+        });
+    }
+
+    private void applyBump(String namespace, List<String> keys) {
+        long version = clock.incrementAndGet();
+        for (String key : keys) {
+            versions.put(namespace + "/" + key, version);
+        }
+    }
+
+    private void applyBumpAll(String namespace) {
+        floors.put(namespace, clock.incrementAndGet());
+    }
+
+    /**
+     * Relayed bump; null keys stand for the whole namespace.
+     */
+    private record VersionChange(String namespace, List<String> keys) {
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
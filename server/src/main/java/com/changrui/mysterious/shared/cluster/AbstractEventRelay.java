@@ -0,0 +1,229 @@
+package com.changrui.mysterious.shared.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Transport-independent part of a relay: envelopes, listener dispatch,
+ * deduplication by origin node and metrics.
+ *
+ * Transports call {@link #deliver} with every message they receive, including
+ * the ones this node sent; those are recognized by their origin and dropped,
+ * as are messages an origin sent twice. A gap in an origin's sequence, or a
+ * resync notice from it, runs the resync actions.
+ */
+@Slf4j
+public abstract class AbstractEventRelay implements EventRelay {
+
+    /**
+     * Reserved topic of the notices sent in place of events that could not be relayed.
+     */
+    static final String RESYNC_TOPIC = "relay-resync";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ObjectMapper objectMapper;
+    private final int maxMessageBytes;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, List<Listener>> listeners = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastSeqByOrigin = new ConcurrentHashMap<>();
+    private final List<Runnable> resyncActions = new CopyOnWriteArrayList<>();
+    // One thread keeps this node's events in publication order
+    private final ExecutorService sender;
+    private final Timer lag;
+    private final Counter published;
+    private final Counter received;
+    private final Counter dropped;
+
+    protected AbstractEventRelay(ObjectMapper objectMapper, MeterRegistry meterRegistry, int maxMessageBytes) {
+        this.objectMapper = objectMapper;
+        this.maxMessageBytes = maxMessageBytes;
+        this.sender = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-relay-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lag = Timer.builder("cluster.relay.lag")
+                .description("Time between an event's publication on its origin node and its delivery here")
+                .register(meterRegistry);
+        this.published = Counter.builder("cluster.relay.events.published")
+                .description("Events sent to the other nodes")
+                .register(meterRegistry);
+        this.received = Counter.builder("cluster.relay.events.received")
+                .description("Events received from the other nodes")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("cluster.relay.events.dropped")
+                .description("Events that could not be sent")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(String topic, Object payload) {
+        JsonNode tree;
+        try {
+            // Snapshot the payload now, the caller may change it afterwards
+            tree = objectMapper.valueToTree(payload);
+        } catch (Exception e) {
+            log.warn("Failed to serialize relayed {} event: {}", topic, e.getMessage());
+            dropped.increment();
+            return;
+        }
+        long sentAt = System.currentTimeMillis();
+
+        // Numbered on the sender thread, so that sequence order is send order
+        sender.execute(() -> {
+            String message;
+            try {
+                message = serialize(topic, sentAt, tree);
+            } catch (Exception e) {
+                log.warn("Failed to serialize relayed {} event: {}", topic, e.getMessage());
+                dropped.increment();
+                return;
+            }
+            try {
+                send(message);
+                published.increment();
+            } catch (Exception e) {
+                log.warn("Failed to relay {} event: {}", topic, e.getMessage());
+                dropped.increment();
+            }
+        });
+    }
+
+    @Override
+    public void subscribe(String topic, Listener listener) {
+        listeners.computeIfAbsent(topic, key -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    @Override
+    public void onResync(Runnable action) {
+        resyncActions.add(action);
+    }
+
+    /**
+     * Send a serialized envelope to every node.
+     */
+    protected abstract void send(String message) throws Exception;
+
+    /**
+     * Hand a received envelope to the listeners of its topic.
+     */
+    protected void deliver(String message) {
+        RelayEnvelope envelope;
+        try {
+            envelope = objectMapper.readValue(message, RelayEnvelope.class);
+        } catch (Exception e) {
+            log.warn("Ignoring malformed relayed event: {}", e.getMessage());
+            return;
+        }
+        if (nodeId.equals(envelope.origin())) {
+            return;
+        }
+        Delivery delivery = track(envelope);
+        if (delivery == Delivery.DUPLICATE) {
+            return;
+        }
+
+        received.increment();
+        lag.record(Math.max(0, System.currentTimeMillis() - envelope.sentAt()), TimeUnit.MILLISECONDS);
+        if (delivery == Delivery.AFTER_GAP || RESYNC_TOPIC.equals(envelope.topic())) {
+            // The origin failed to send, or could not send, some events
+            log.warn("Missed relayed events from {}, resyncing", envelope.origin());
+            resync();
+            if (RESYNC_TOPIC.equals(envelope.topic())) {
+                return;
+            }
+        }
+        for (Listener listener : listeners.getOrDefault(envelope.topic(), List.of())) {
+            try {
+                listener.onEvent(envelope.origin(), envelope.payload());
+            } catch (Exception e) {
+                log.error("Relayed {} event from {} failed: ", envelope.topic(), envelope.origin(), e);
+            }
+        }
+    }
+
+    /**
+     * To be called by transports when events may have been missed.
+     */
+    protected void resync() {
+        for (Runnable action : resyncActions) {
+            try {
+                action.run();
+            } catch (Exception e) {
+                log.error("Relay resync action failed: ", e);
+            }
+        }
+    }
+
+    /**
+     * Stop sending, letting already queued events go out.
+     */
+    protected void shutdownSender() {
+        sender.shutdown();
+        try {
+            sender.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Number an event and serialize its envelope. An event too large for the
+     * transport is replaced by a resync notice carrying its topic, so that the
+     * other nodes know they missed it.
+     */
+    private String serialize(String topic, long sentAt, JsonNode payload) throws Exception {
+        long seq = sequence.incrementAndGet();
+        String message = objectMapper.writeValueAsString(new RelayEnvelope(nodeId, seq, topic, sentAt, payload));
+        if (message.getBytes(StandardCharsets.UTF_8).length <= maxMessageBytes) {
+            return message;
+        }
+        log.warn("Relayed {} event exceeds {} bytes, sending a resync notice instead", topic, maxMessageBytes);
+        dropped.increment();
+        return objectMapper.writeValueAsString(new RelayEnvelope(nodeId, seq, RESYNC_TOPIC, sentAt,
+                TextNode.valueOf(topic)));
+    }
+
+    /**
+     * Record the sequence number of a received envelope.
+     *
+     * @return whether the envelope was not seen before, and whether envelopes
+     *         of its origin were skipped since the previous one
+     */
+    private Delivery track(RelayEnvelope envelope) {
+        Delivery[] delivery = new Delivery[1];
+        lastSeqByOrigin.compute(envelope.origin(), (origin, last) -> {
+            if (last != null && envelope.seq() <= last) {
+                delivery[0] = Delivery.DUPLICATE;
+                return last;
+            }
+            delivery[0] = last != null && envelope.seq() > last + 1 ? Delivery.AFTER_GAP : Delivery.NEXT;
+            return envelope.seq();
+        });
+        return delivery[0];
+    }
+
+    private enum Delivery {
+        NEXT, AFTER_GAP, DUPLICATE
+    }
+}
@@ -0,0 +1,48 @@
+package com.changrui.mysterious.shared.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Cross-node relay of in-memory events, so that every server instance can
+ * update its own subscribers and caches when another instance changes
+ * something.
+ *
+ * Publishers send what they just applied locally; listeners only ever see
+ * events published by other nodes and must not publish them again.
+ */
+public interface EventRelay {
+
+    /**
+     * Identifier of this node, unique per process start.
+     */
+    String getNodeId();
+
+    /**
+     * Send an event to the other nodes. Never blocks on the transport.
+     *
+     * @param topic   what the event is about, e.g. {@code wall}
+     * @param payload any Jackson-serializable value
+     */
+    void publish(String topic, Object payload);
+
+    /**
+     * Receive the events published on a topic by other nodes.
+     */
+    void subscribe(String topic, Listener listener);
+
+    /**
+     * Run an action whenever this node may have missed events, e.g. after the
+     * transport reconnected, so that caches fed by the relay can be reset.
+     */
+    void onResync(Runnable action);
+
+    @FunctionalInterface
+    interface Listener {
+
+        /**
+         * @param originNodeId node that published the event
+         * @param payload      the published payload, to be read with the expected type
+         */
+        void onEvent(String originNodeId, JsonNode payload) throws Exception;
+    }
+}
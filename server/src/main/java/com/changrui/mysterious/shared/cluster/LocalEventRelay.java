@@ -0,0 +1,31 @@
+package com.changrui.mysterious.shared.cluster;
+
+import java.util.UUID;
+
+/**
+ * Relay of a single-node deployment: there is nobody to tell.
+ */
+public class LocalEventRelay implements EventRelay {
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(String topic, Object payload) {
+        // No other node
+    }
+
+    @Override
+    public void subscribe(String topic, Listener listener) {
+        // No other node
+    }
+
+    @Override
+    public void onResync(Runnable action) {
+        // Nothing is ever missed
+    }
+}
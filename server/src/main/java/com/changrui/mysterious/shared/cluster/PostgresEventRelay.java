@@ -0,0 +1,111 @@
+package com.changrui.mysterious.shared.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Relay over Postgres LISTEN/NOTIFY on the application database, so that
+ * several instances can share the wall without any other infrastructure.
+ *
+ * Events are sent with pg_notify through the connection pool and received on
+ * a dedicated connection held by a listener thread, which reconnects on
+ * failure. NOTIFY payloads are limited to 8000 bytes; wall events are far
+ * below that since messages are capped at 500 characters.
+ */
+@Slf4j
+public class PostgresEventRelay extends AbstractEventRelay {
+
+    static final int MAX_NOTIFY_BYTES = 7900;
+    private static final int POLL_TIMEOUT_MILLIS = 500;
+    private static final long RECONNECT_DELAY_MILLIS = 2000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String channel;
+    private final String url;
+    private final String username;
+    private final String password;
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public PostgresEventRelay(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+            String channel, String url, String username, String password) {
+        super(objectMapper, meterRegistry, MAX_NOTIFY_BYTES);
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid relay channel name: " + channel);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.channel = channel;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        listenerThread = new Thread(this::listen, "event-relay-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+        log.info("Event relay listening on Postgres channel '{}' as node {}", channel, getNodeId());
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        shutdownSender();
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    @Override
+    protected void send(String message) {
+        jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, channel, message);
+    }
+
+    private void listen() {
+        boolean reconnecting = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                if (reconnecting) {
+                    // Events sent while disconnected never reached this node
+                    resync();
+                    reconnecting = false;
+                }
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            deliver(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                reconnecting = true;
+                log.warn("Event relay connection lost, reconnecting: {}", e.getMessage());
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.changrui.mysterious.shared.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Wire format of a relayed event.
+ *
+ * @param origin    node that published the event
+ * @param seq       per-origin sequence number, used to drop duplicates
+ * @param topic     topic of the event
+ * @param sentAt    epoch millis at which the origin published it
+ * @param payload   the event itself
+ */
+public record RelayEnvelope(String origin, long seq, String topic, long sentAt, JsonNode payload) {
+}
@@ -0,0 +1,59 @@
+package com.changrui.mysterious.shared.config;
+
+import com.changrui.mysterious.domain.onlinecount.repository.LocalPresenceSketchStore;
+import com.changrui.mysterious.domain.onlinecount.repository.PostgresPresenceSketchStore;
+import com.changrui.mysterious.domain.onlinecount.repository.PresenceSketchStore;
+import com.changrui.mysterious.shared.cluster.EventRelay;
+import com.changrui.mysterious.shared.cluster.LocalEventRelay;
+import com.changrui.mysterious.shared.cluster.PostgresEventRelay;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Cross-node event relay, selected with {@code app.cluster.relay}:
+ * {@code none} for a single instance, {@code postgres} to share the wall
+ * between instances through Postgres LISTEN/NOTIFY.
+ *
+ * The presence sketches used to count online users across instances follow
+ * the same setting: in memory for a single instance, in Postgres otherwise.
+ */
+@Configuration
+public class ClusterRelayConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.cluster.relay", havingValue = "postgres")
+    public EventRelay postgresEventRelay(
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.cluster.relay-channel:mysterious_events}") String channel,
+            @Value("${spring.datasource.url}") String url,
+            @Value("${spring.datasource.username}") String username,
+            @Value("${spring.datasource.password}") String password) {
+        return new PostgresEventRelay(jdbcTemplate, objectMapper, meterRegistry, channel, url, username, password);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(EventRelay.class)
+    public EventRelay localEventRelay() {
+        return new LocalEventRelay();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.cluster.relay", havingValue = "postgres")
+    public PresenceSketchStore postgresPresenceSketchStore(JdbcTemplate jdbcTemplate) {
+        return new PostgresPresenceSketchStore(jdbcTemplate);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(PresenceSketchStore.class)
+    public PresenceSketchStore localPresenceSketchStore() {
+        return new LocalPresenceSketchStore();
+    }
+}
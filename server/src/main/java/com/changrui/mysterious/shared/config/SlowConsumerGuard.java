@@ -0,0 +1,246 @@
+package com.changrui.mysterious.shared.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+/**
+ * Keeps a client on a slow link from piling up frames on the server.
+ *
+ * Frames for a session are counted from the moment they enter the outbound
+ * channel until they are written to its socket. Once more than
+ * {@code max-pending-frames} are pending the session is lagging, and its
+ * MESSAGE frames go through the configured policy until it has caught up
+ * (half the limit):
+ * <ul>
+ * <li>DROP: frames are dropped, then the session is asked to reload;</li>
+ * <li>COALESCE: only the newest frame of each destination is kept and sent
+ * once caught up; as wall events are deltas, the session is also asked to
+ * reload when frames were replaced;</li>
+ * <li>DISCONNECT: the session is closed, its client reconnects and resumes.</li>
+ * </ul>
+ * The other sessions are not affected: nothing here waits on a socket.
+ * The transport's send time and buffer size limits remain the last resort
+ * (see {@link WebSocketConfig}).
+ */
+@Slf4j
+@Component
+public class SlowConsumerGuard implements ChannelInterceptor {
+
+    public enum Policy {
+        DROP, COALESCE, DISCONNECT
+    }
+
+    /**
+     * Published when a session that lost frames has caught up and must reload
+     * what it displays.
+     */
+    public record ResyncRequired(String sessionId) {
+    }
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final Policy policy;
+    private final int maxPendingFrames;
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+    private final Counter laggingEpisodes;
+    private final Counter droppedFrames;
+    private final Counter disconnects;
+
+    public SlowConsumerGuard(
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${app.websocket.slow-consumer.policy:DROP}") Policy policy,
+            @Value("${app.websocket.slow-consumer.max-pending-frames:64}") int maxPendingFrames) {
+        this.eventPublisher = eventPublisher;
+        this.policy = policy;
+        this.maxPendingFrames = Math.max(2, maxPendingFrames);
+        Gauge.builder("websocket.sessions.lagging", sessions,
+                map -> map.values().stream().filter(SessionState::isLagging).count())
+                .description("WebSocket sessions currently behind on their frames")
+                .register(meterRegistry);
+        this.laggingEpisodes = Counter.builder("websocket.sessions.lagged")
+                .description("Times a WebSocket session fell behind")
+                .register(meterRegistry);
+        this.droppedFrames = Counter.builder("websocket.frames.dropped")
+                .description("Frames not sent to lagging WebSocket sessions")
+                .tag("policy", policy.name().toLowerCase())
+                .register(meterRegistry);
+        this.disconnects = Counter.builder("websocket.sessions.disconnected.slow")
+                .description("WebSocket sessions closed for falling behind")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Decorator factory for the WebSocket transport: tracks the writes of
+     * every session.
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                SessionState state = new SessionState(session);
+                sessions.put(session.getId(), state);
+                super.afterConnectionEstablished(state.trackedSession);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        SessionState state = sessionId != null ? sessions.get(sessionId) : null;
+        if (state == null) {
+            return message;
+        }
+        // Connection frames and heartbeats always go through
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            state.pending.incrementAndGet();
+            return message;
+        }
+        return state.admit(message, channel);
+    }
+
+    /**
+     * Frames accepted for a session and not written yet.
+     */
+    int pendingFrames(String sessionId) {
+        SessionState state = sessions.get(sessionId);
+        return state != null ? state.pending.get() : 0;
+    }
+
+    boolean isLagging(String sessionId) {
+        SessionState state = sessions.get(sessionId);
+        return state != null && state.isLagging();
+    }
+
+    private final class SessionState {
+
+        private final WebSocketSession session;
+        private final WebSocketSession trackedSession;
+        private final AtomicInteger pending = new AtomicInteger();
+        // Guarded by this
+        private boolean lagging;
+        private boolean resyncRequired;
+        private MessageChannel channel;
+        private final Map<String, Message<?>> coalesced = new LinkedHashMap<>();
+
+        SessionState(WebSocketSession session) {
+            this.session = session;
+            this.trackedSession = new WebSocketSessionDecorator(session) {
+                @Override
+                public void sendMessage(WebSocketMessage<?> message) throws IOException {
+                    try {
+                        super.sendMessage(message);
+                    } finally {
+                        written();
+                    }
+                }
+            };
+        }
+
+        synchronized boolean isLagging() {
+            return lagging;
+        }
+
+        synchronized Message<?> admit(Message<?> message, MessageChannel outboundChannel) {
+            if (!lagging && pending.get() >= maxPendingFrames) {
+                lagging = true;
+                laggingEpisodes.increment();
+                log.debug("WebSocket session {} is lagging ({} frames pending)", session.getId(), pending.get());
+            }
+            if (!lagging) {
+                pending.incrementAndGet();
+                return message;
+            }
+
+            switch (policy) {
+                case DROP -> {
+                    droppedFrames.increment();
+                    resyncRequired = true;
+                }
+                case COALESCE -> {
+                    String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+                    if (coalesced.put(destination, message) != null) {
+                        droppedFrames.increment();
+                        resyncRequired = true;
+                    }
+                    channel = outboundChannel;
+                }
+                case DISCONNECT -> {
+                    droppedFrames.increment();
+                    disconnect();
+                }
+            }
+            return null;
+        }
+
+        private void written() {
+            int left = pending.updateAndGet(count -> Math.max(0, count - 1));
+            if (left > maxPendingFrames / 2) {
+                return;
+            }
+            List<Message<?>> kept;
+            MessageChannel outboundChannel;
+            boolean resync;
+            synchronized (this) {
+                if (!lagging) {
+                    return;
+                }
+                lagging = false;
+                kept = new ArrayList<>(coalesced.values());
+                coalesced.clear();
+                outboundChannel = channel;
+                resync = resyncRequired;
+                resyncRequired = false;
+            }
+            // Sent through the channel again, i.e. on its executor and not on this socket-writing thread
+            for (Message<?> message : kept) {
+                outboundChannel.send(message);
+            }
+            if (resync) {
+                eventPublisher.publishEvent(new ResyncRequired(session.getId()));
+            }
+        }
+
+        private void disconnect() {
+            if (!session.isOpen()) {
+                return;
+            }
+            disconnects.increment();
+            log.info("Closing WebSocket session {}: {} frames pending", session.getId(), pending.get());
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                log.debug("Failed to close slow WebSocket session {}: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+}
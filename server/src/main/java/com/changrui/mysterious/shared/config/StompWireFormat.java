@@ -0,0 +1,234 @@
+package com.changrui.mysterious.shared.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+/**
+ * Negotiates the encoding of the payloads pushed to each STOMP session.
+ *
+ * JSON is the default. A client connected to the native WebSocket endpoint
+ * can send {@code accept: application/cbor} (or application/x-jackson-smile)
+ * in its CONNECT frame; the MESSAGE frames it receives are then re-encoded
+ * from JSON into that format, so every event type is covered. SockJS
+ * sessions cannot carry binary frames and always get JSON.
+ *
+ * Binary payloads go out with content-type
+ * {@code application/octet-stream;format=cbor} (or {@code format=smile}):
+ * Spring only sends octet-stream frames as WebSocket binary messages.
+ *
+ * Frames sent by clients with content-type application/cbor or
+ * application/x-jackson-smile are decoded by the converters from
+ * {@link Encoding#messageConverter()}.
+ */
+@Slf4j
+public class StompWireFormat implements ChannelInterceptor {
+
+    static final String ACCEPT_HEADER = "accept";
+    static final String BINARY_FRAMES_ATTRIBUTE = "stompBinaryFrames";
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    /**
+     * Binary encodings a session can ask for.
+     */
+    public enum Encoding {
+        CBOR("application/cbor", "cbor", new CBORFactory()) {
+            @Override
+            Jackson2ObjectMapperBuilder objectMapperBuilder() {
+                return Jackson2ObjectMapperBuilder.cbor();
+            }
+        },
+        SMILE("application/x-jackson-smile", "smile", new SmileFactory()) {
+            @Override
+            Jackson2ObjectMapperBuilder objectMapperBuilder() {
+                return Jackson2ObjectMapperBuilder.smile();
+            }
+        };
+
+        private final MimeType mimeType;
+        private final MimeType frameContentType;
+        private final JsonFactory factory;
+
+        Encoding(String mimeType, String format, JsonFactory factory) {
+            this.mimeType = MimeType.valueOf(mimeType);
+            this.frameContentType = new MimeType(MimeTypeUtils.APPLICATION_OCTET_STREAM, Map.of("format", format));
+            this.factory = factory;
+        }
+
+        abstract Jackson2ObjectMapperBuilder objectMapperBuilder();
+
+        public MimeType getMimeType() {
+            return mimeType;
+        }
+
+        public MimeType getFrameContentType() {
+            return frameContentType;
+        }
+
+        /**
+         * Converter for payloads received with this content type; never used
+         * for payloads without one, which stay JSON.
+         */
+        public MessageConverter messageConverter() {
+            MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(mimeType);
+            converter.setObjectMapper(objectMapperBuilder().build());
+            converter.setStrictContentTypeMatch(true);
+            return converter;
+        }
+
+        /**
+         * Re-encode a JSON document, token by token.
+         */
+        public byte[] fromJson(byte[] json) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+            try (JsonParser parser = JSON.createParser(json); JsonGenerator generator = factory.createGenerator(out)) {
+                parser.nextToken();
+                generator.copyCurrentStructure(parser);
+            }
+            return out.toByteArray();
+        }
+
+        static Encoding fromAcceptHeader(String accept) {
+            try {
+                for (MimeType accepted : MimeTypeUtils.parseMimeTypes(accept)) {
+                    for (Encoding encoding : values()) {
+                        // Wildcards do not opt in: binary frames must be asked for explicitly
+                        if (encoding.mimeType.equalsTypeAndSubtype(accepted)) {
+                            return encoding;
+                        }
+                    }
+                }
+            } catch (InvalidMimeTypeException e) {
+                log.debug("Ignoring invalid STOMP accept header: {}", accept);
+            }
+            return null;
+        }
+    }
+
+    // Encoding of the sessions that negotiated one; absent means JSON
+    private final Map<String, Encoding> sessionEncodings = new ConcurrentHashMap<>();
+    // The broker hands the same payload array to every subscriber: encode it once.
+    // Weak keys compare by identity and go away once the frame is sent to all.
+    private final Map<Encoding, Map<byte[], byte[]>> encodedPayloads = new EnumMap<>(Encoding.class);
+
+    public StompWireFormat() {
+        for (Encoding encoding : Encoding.values()) {
+            encodedPayloads.put(encoding, Collections.synchronizedMap(new WeakHashMap<>()));
+        }
+    }
+
+    /**
+     * Handshake interceptor for endpoints whose sessions can receive binary
+     * frames, i.e. the native WebSocket one.
+     */
+    public static HandshakeInterceptor binaryFramesHandshake() {
+        return new HandshakeInterceptor() {
+            @Override
+            public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                    WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                attributes.put(BINARY_FRAMES_ATTRIBUTE, Boolean.TRUE);
+                return true;
+            }
+
+            @Override
+            public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                    WebSocketHandler wsHandler, Exception exception) {
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (messageType == null || sessionId == null) {
+            return message;
+        }
+        switch (messageType) {
+            case CONNECT -> negotiate(sessionId, message);
+            case DISCONNECT -> sessionEncodings.remove(sessionId);
+            case MESSAGE -> {
+                Encoding encoding = sessionEncodings.get(sessionId);
+                if (encoding != null) {
+                    return encode(message, encoding);
+                }
+            }
+            default -> {
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Encoding negotiated by a session, or null for JSON.
+     */
+    Encoding encodingOf(String sessionId) {
+        return sessionEncodings.get(sessionId);
+    }
+
+    private void negotiate(String sessionId, Message<?> message) {
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(message.getHeaders());
+        if (attributes == null || !Boolean.TRUE.equals(attributes.get(BINARY_FRAMES_ATTRIBUTE))) {
+            return;
+        }
+        String accept = StompHeaderAccessor.wrap(message).getFirstNativeHeader(ACCEPT_HEADER);
+        Encoding encoding = accept != null ? Encoding.fromAcceptHeader(accept) : null;
+        if (encoding != null) {
+            sessionEncodings.put(sessionId, encoding);
+        }
+    }
+
+    private Message<?> encode(Message<?> message, Encoding encoding) {
+        Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        if (!(message.getPayload() instanceof byte[] json) || contentType == null
+                || !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(MimeType.valueOf(contentType.toString()))) {
+            return message;
+        }
+        byte[] encoded;
+        try {
+            encoded = encodedPayloads.get(encoding).computeIfAbsent(json, key -> {
+                try {
+                    return encoding.fromJson(key);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            // The client can tell JSON frames apart by their content type
+            log.warn("Failed to encode STOMP payload as {}, sending JSON: {}", encoding, e.getMessage());
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setContentType(encoding.frameContentType);
+        return MessageBuilder.createMessage(encoded, accessor.getMessageHeaders());
+    }
+}
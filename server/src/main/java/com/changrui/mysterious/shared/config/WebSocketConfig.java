@@ -1,25 +1,74 @@
 package com.changrui.mysterious.shared.config;
 
+import com.changrui.mysterious.domain.onlinecount.service.PresenceRegistry;
+import com.changrui.mysterious.shared.ratelimit.RateLimiter;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 /**
  * WebSocket configuration for real-time messaging.
  * Uses STOMP protocol over WebSocket with SockJS fallback.
+ * Payloads are JSON unless a native WebSocket session negotiates a binary
+ * encoding (see {@link StompWireFormat}). Sessions that fall behind are
+ * handled by {@link SlowConsumerGuard}. The broker exchanges STOMP heartbeats
+ * with clients; {@link PresenceRegistry} notes them to spot dead sessions.
  */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final StompWireFormat wireFormat = new StompWireFormat();
+
+    @Autowired
+    private SlowConsumerGuard slowConsumerGuard;
+
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    @Value("${app.websocket.heartbeat-ms:10000}")
+    private long heartbeatMillis;
+
+    @Value("${app.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMillis;
+
+    @Value("${app.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Autowired
+    public void setMessageBrokerTaskScheduler(
+            @Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler messageBrokerTaskScheduler) {
+        this.messageBrokerTaskScheduler = messageBrokerTaskScheduler;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        // Enable simple broker for topics (server -> client)
-        config.enableSimpleBroker("/topic");
+        // Enable simple broker for topics and per-session queues (server -> client),
+        // with heartbeats both ways; 0 disables them
+        long heartbeat = Math.max(0, heartbeatMillis);
+        config.enableSimpleBroker("/topic", "/queue")
+                .setHeartbeatValue(new long[] { heartbeat, heartbeat })
+                .setTaskScheduler(messageBrokerTaskScheduler);
         // Prefix for messages from client to server
         config.setApplicationDestinationPrefixes("/app");
+        // Prefix for session-targeted destinations, e.g. /user/queue/acks
+        config.setUserDestinationPrefix("/user");
     }
 
     @Override
@@ -27,10 +76,43 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         // WebSocket endpoint with SockJS fallback for browser compatibility
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
+                .addInterceptors(rateLimiter.clientIpHandshake())
                 .withSockJS();
         
         // Native WebSocket endpoint (without SockJS)
         registry.addEndpoint("/ws/websocket")
-                .setAllowedOriginPatterns("*");
+                .setAllowedOriginPatterns("*")
+                .addInterceptors(StompWireFormat.binaryFramesHandshake(), rateLimiter.clientIpHandshake());
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Hard limits per session: past them the transport closes the session
+        registration.setSendTimeLimit(sendTimeLimitMillis)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .addDecoratorFactory(slowConsumerGuard::decorate);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Reads the encoding asked for in CONNECT frames, and notes that the
+        // session is alive on every frame
+        registration.interceptors(wireFormat, presenceRegistry);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // Holds back frames of lagging sessions, then re-encodes the frames of
+        // sessions that asked for a binary encoding
+        registration.interceptors(slowConsumerGuard, wireFormat);
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // Only used for payloads declaring these content types; the default converters are kept
+        for (StompWireFormat.Encoding encoding : StompWireFormat.Encoding.values()) {
+            messageConverters.add(encoding.messageConverter());
+        }
+        return true;
     }
 }
@@ -3,10 +3,14 @@ package com.changrui.mysterious.shared.config;
 import com.changrui.mysterious.domain.onlinecount.service.WebSocketPresenceService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionConnectedEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
 
 /**
  * Listens to WebSocket connection events to track online presence.
@@ -14,6 +18,11 @@ import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 @Component
 public class WebSocketEventListener {
 
+    /**
+     * CONNECT header in which clients give their user id.
+     */
+    public static final String USER_ID_HEADER = "user-id";
+
     @Autowired
     private WebSocketPresenceService presenceService;
 
@@ -21,7 +30,16 @@ public class WebSocketEventListener {
     public void handleWebSocketConnectListener(SessionConnectedEvent event) {
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
         String sessionId = headerAccessor.getSessionId();
-        presenceService.userConnected(sessionId);
+
+        // The user id and heartbeats are in the CONNECT frame the client sent
+        String userId = null;
+        long clientHeartbeatMillis = 0;
+        if (headerAccessor.getHeader(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER) instanceof Message<?> connect) {
+            StompHeaderAccessor connectAccessor = StompHeaderAccessor.wrap(connect);
+            userId = connectAccessor.getFirstNativeHeader(USER_ID_HEADER);
+            clientHeartbeatMillis = connectAccessor.getHeartbeat()[0];
+        }
+        presenceService.userConnected(sessionId, userId, clientHeartbeatMillis);
     }
 
     @EventListener
@@ -30,4 +48,17 @@ public class WebSocketEventListener {
         String sessionId = headerAccessor.getSessionId();
         presenceService.userDisconnected(sessionId);
     }
+
+    @EventListener
+    public void handleWebSocketSubscribeListener(SessionSubscribeEvent event) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
+        presenceService.sessionSubscribed(headerAccessor.getSessionId(), headerAccessor.getSubscriptionId(),
+                headerAccessor.getDestination());
+    }
+
+    @EventListener
+    public void handleWebSocketUnsubscribeListener(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
+        presenceService.sessionUnsubscribed(headerAccessor.getSessionId(), headerAccessor.getSubscriptionId());
+    }
 }
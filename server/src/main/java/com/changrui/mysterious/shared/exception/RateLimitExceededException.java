@@ -0,0 +1,21 @@
+package com.changrui.mysterious.shared.exception;
+
+/**
+ * Exception thrown when a client exceeds the rate limit of an operation.
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public RateLimitExceededException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Seconds to wait before the operation is allowed again, at least 1.
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,220 @@
+package com.changrui.mysterious.shared.ratelimit;
+
+import com.changrui.mysterious.shared.exception.RateLimitExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+/**
+ * Per-client rate limits of write and search operations.
+ *
+ * Limits are written {@code operation=capacity/period}, e.g.
+ * {@code message_post=20/1m}: a client can do 20 posts at once, then one
+ * every 3 seconds. Operations without a configured limit get the default one.
+ * Clients are keyed by IP address (see {@link #clientKey}); forwarding
+ * headers are only believed from the configured trusted proxies. User ids come
+ * from request bodies and are not authenticated, so keying on them would let
+ * a client get a fresh bucket per request.
+ */
+@Slf4j
+@Component
+public class RateLimiter {
+
+    public static final String MESSAGE_POST = "message_post";
+    public static final String REACTION = "reaction";
+    public static final String SCORE_SUBMIT = "score_submit";
+    public static final String MEDIA_UPLOAD = "media_upload";
+    public static final String AVATAR_UPLOAD = "avatar_upload";
+    public static final String PROFILE_SEARCH = "profile_search";
+
+    /**
+     * WebSocket session attribute holding the client's IP address.
+     */
+    public static final String CLIENT_IP_ATTRIBUTE = "ratelimit.clientIp";
+
+    /**
+     * Loopback and private networks, where the reverse proxy of a container
+     * deployment lives.
+     */
+    public static final String DEFAULT_TRUSTED_PROXIES = "127.0.0.0/8,::1,10.0.0.0/8,172.16.0.0/12,192.168.0.0/16";
+
+    private final Map<String, TokenBuckets> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rejections = new ConcurrentHashMap<>();
+    private final String defaultLimit;
+    private final int maxKeys;
+    private final TrustedProxies trustedProxies;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier clock;
+
+    @Autowired
+    public RateLimiter(
+            @Value("${app.ratelimit.limits:}") String limits,
+            @Value("${app.ratelimit.default-limit:300/1m}") String defaultLimit,
+            @Value("${app.ratelimit.max-keys-per-operation:100000}") int maxKeys,
+            @Value("${app.ratelimit.trusted-proxies:" + DEFAULT_TRUSTED_PROXIES + "}") String trustedProxies,
+            MeterRegistry meterRegistry) {
+        this(limits, defaultLimit, maxKeys, trustedProxies, meterRegistry, System::nanoTime);
+    }
+
+    RateLimiter(String limits, String defaultLimit, int maxKeys, String trustedProxies, MeterRegistry meterRegistry,
+            LongSupplier clock) {
+        this.defaultLimit = defaultLimit;
+        this.maxKeys = maxKeys;
+        this.trustedProxies = TrustedProxies.parse(trustedProxies);
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        for (String limit : limits.split(",")) {
+            if (!limit.isBlank()) {
+                String[] parts = limit.split("=", 2);
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Invalid rate limit, expected operation=capacity/period: " + limit);
+                }
+                buckets.put(parts[0].trim(), parse(parts[1]));
+            }
+        }
+        Gauge.builder("ratelimit.buckets", buckets,
+                map -> map.values().stream().mapToInt(TokenBuckets::size).sum())
+                .description("Client buckets held by the rate limiter")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Count an operation against a client's limit.
+     *
+     * @throws RateLimitExceededException if the client has no token left
+     */
+    public void check(String operation, String clientKey) {
+        long waitNanos = tryAcquire(operation, clientKey);
+        if (waitNanos > 0) {
+            rejections.computeIfAbsent(operation, op -> Counter.builder("ratelimit.rejected")
+                    .description("Requests rejected by the rate limiter")
+                    .tag("operation", op)
+                    .register(meterRegistry))
+                    .increment();
+            long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+            throw new RateLimitExceededException(
+                    "Too many requests, retry in " + retryAfterSeconds + "s", retryAfterSeconds);
+        }
+    }
+
+    /**
+     * Take a token without throwing.
+     *
+     * @return 0 if allowed, otherwise the nanoseconds until the next token
+     */
+    public long tryAcquire(String operation, String clientKey) {
+        TokenBuckets table = buckets.get(operation);
+        if (table == null) {
+            table = buckets.computeIfAbsent(operation, op -> parse(defaultLimit));
+        }
+        return table.tryAcquire(clientKey, clock.getAsLong());
+    }
+
+    /**
+     * Forget the clients whose buckets are full again.
+     */
+    @Scheduled(fixedDelayString = "${app.ratelimit.eviction-interval-ms:60000}")
+    public void evictIdleBuckets() {
+        long now = clock.getAsLong();
+        int evicted = buckets.values().stream().mapToInt(table -> table.evictIdle(now)).sum();
+        if (evicted > 0) {
+            log.debug("Evicted {} idle rate limit buckets", evicted);
+        }
+    }
+
+    /**
+     * Key of the client making an HTTP request: its IP address.
+     */
+    public String clientKey(HttpServletRequest request) {
+        return "ip:" + clientIp(request.getHeader("X-Forwarded-For"), request.getHeader("X-Real-IP"),
+                request.getRemoteAddr());
+    }
+
+    /**
+     * Key of the client behind a WebSocket session: the IP address recorded
+     * by {@link #clientIpHandshake()}, or the session if there is none.
+     */
+    public static String sessionClientKey(Map<String, Object> sessionAttributes, String sessionId) {
+        Object clientIp = sessionAttributes != null ? sessionAttributes.get(CLIENT_IP_ATTRIBUTE) : null;
+        return clientIp != null ? "ip:" + clientIp : "session:" + sessionId;
+    }
+
+    /**
+     * Handshake interceptor recording the client's IP address in the
+     * WebSocket session, for {@link #sessionClientKey}.
+     */
+    public HandshakeInterceptor clientIpHandshake() {
+        return new HandshakeInterceptor() {
+            @Override
+            public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                    WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                InetSocketAddress remoteAddress = request.getRemoteAddress();
+                String clientIp = clientIp(request.getHeaders().getFirst("X-Forwarded-For"),
+                        request.getHeaders().getFirst("X-Real-IP"),
+                        remoteAddress != null ? remoteAddress.getAddress().getHostAddress() : null);
+                if (clientIp != null) {
+                    attributes.put(CLIENT_IP_ATTRIBUTE, clientIp);
+                }
+                return true;
+            }
+
+            @Override
+            public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                    WebSocketHandler wsHandler, Exception exception) {
+            }
+        };
+    }
+
+    /**
+     * Address of the client. A request that does not come from a trusted
+     * proxy is keyed by its own address, whatever headers it carries.
+     * Otherwise each proxy appended the address it saw to X-Forwarded-For:
+     * walking back from the last entry, the first address that is not a
+     * trusted proxy is the client; the entries before it are whatever the
+     * client sent.
+     */
+    String clientIp(String forwardedFor, String realIp, String remoteAddr) {
+        if (remoteAddr == null || !trustedProxies.contains(remoteAddr)) {
+            return remoteAddr;
+        }
+        if (forwardedFor != null && !forwardedFor.isBlank()) {
+            String[] hops = forwardedFor.split(",");
+            for (int i = hops.length - 1; i >= 0; i--) {
+                String hop = hops[i].trim();
+                if (!hop.isEmpty() && (i == 0 || !trustedProxies.contains(hop))) {
+                    return hop;
+                }
+            }
+        }
+        if (realIp != null && !realIp.isBlank()) {
+            return realIp.trim();
+        }
+        return remoteAddr;
+    }
+
+    private TokenBuckets parse(String limit) {
+        String[] parts = limit.trim().split("/", 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid rate limit, expected capacity/period: " + limit);
+        }
+        Duration period = DurationStyle.detectAndParse(parts[1].trim());
+        return new TokenBuckets(Integer.parseInt(parts[0].trim()), period, maxKeys);
+    }
+}
@@ -0,0 +1,121 @@
+package com.changrui.mysterious.shared.ratelimit;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets of one operation, one per client key.
+ *
+ * Each bucket is a single {@code long}, the time at which it will be full
+ * again (the "theoretical arrival time" of GCRA), updated by compare-and-set:
+ * a check never takes a lock. A bucket whose time has passed is full and
+ * indistinguishable from a new one, so it can be dropped at any moment.
+ *
+ * Buckets are spread over stripes of bounded size. When a stripe is full of
+ * active buckets, new keys of that stripe share one overflow bucket, so a
+ * flood of distinct keys costs no memory and is itself limited.
+ */
+final class TokenBuckets {
+
+    private static final int STRIPES = 16;
+
+    private final int capacity;
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final int maxKeysPerStripe;
+    @SuppressWarnings("unchecked")
+    private final Map<String, AtomicLong>[] stripes = new Map[STRIPES];
+    private final AtomicLong[] overflow = new AtomicLong[STRIPES];
+
+    TokenBuckets(int capacity, Duration period, int maxKeys) {
+        if (capacity < 1 || period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("Invalid rate limit: " + capacity + "/" + period);
+        }
+        this.capacity = capacity;
+        this.nanosPerToken = Math.max(1, period.toNanos() / capacity);
+        this.burstNanos = nanosPerToken * capacity;
+        this.maxKeysPerStripe = Math.max(1, maxKeys / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ConcurrentHashMap<>();
+            overflow[i] = new AtomicLong(Long.MIN_VALUE);
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Take a token from the bucket of a key.
+     *
+     * @param now current {@link System#nanoTime()}
+     * @return 0 if a token was taken, otherwise the nanoseconds until one is available
+     */
+    long tryAcquire(String key, long now) {
+        AtomicLong bucket = bucketOf(key, now);
+        while (true) {
+            long fullAt = bucket.get();
+            long newFullAt = Math.max(fullAt, now) + nanosPerToken;
+            long wait = newFullAt - burstNanos - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, newFullAt)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Drop the buckets that are full again.
+     *
+     * @return number of buckets dropped
+     */
+    int evictIdle(long now) {
+        int evicted = 0;
+        for (Map<String, AtomicLong> stripe : stripes) {
+            evicted += evictIdle(stripe, now);
+        }
+        return evicted;
+    }
+
+    int size() {
+        int size = 0;
+        for (Map<String, AtomicLong> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private AtomicLong bucketOf(String key, long now) {
+        int index = spread(key.hashCode()) & (STRIPES - 1);
+        Map<String, AtomicLong> stripe = stripes[index];
+        AtomicLong bucket = stripe.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (stripe.size() >= maxKeysPerStripe && evictIdle(stripe, now) == 0) {
+            return overflow[index];
+        }
+        return stripe.computeIfAbsent(key, k -> new AtomicLong(Long.MIN_VALUE));
+    }
+
+    private static int evictIdle(Map<String, AtomicLong> stripe, long now) {
+        int[] evicted = new int[1];
+        // A bucket emptied between the test and the removal loses at most that one token
+        stripe.values().removeIf(bucket -> {
+            boolean idle = bucket.get() <= now;
+            if (idle) {
+                evicted[0]++;
+            }
+            return idle;
+        });
+        return evicted[0];
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,94 @@
+package com.changrui.mysterious.shared.ratelimit;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Addresses of the reverse proxies whose forwarding headers are believed,
+ * written as a comma-separated list of IP addresses and CIDR ranges, e.g.
+ * {@code 127.0.0.1,10.0.0.0/8,::1}.
+ */
+final class TrustedProxies {
+
+    // Only literals are parsed: header values must never trigger DNS lookups
+    private static final Pattern IP_LITERAL = Pattern.compile("[0-9a-fA-F:.]+");
+
+    private final List<Range> ranges;
+
+    private TrustedProxies(List<Range> ranges) {
+        this.ranges = ranges;
+    }
+
+    static TrustedProxies parse(String spec) {
+        List<Range> ranges = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.trim().split("/", 2);
+            byte[] address = toBytes(parts[0]);
+            if (address == null) {
+                throw new IllegalArgumentException("Invalid trusted proxy, expected an IP address or CIDR range: "
+                        + entry);
+            }
+            int prefix = parts.length == 2 ? Integer.parseInt(parts[1]) : address.length * 8;
+            if (prefix < 0 || prefix > address.length * 8) {
+                throw new IllegalArgumentException("Invalid trusted proxy prefix length: " + entry);
+            }
+            ranges.add(new Range(address, prefix));
+        }
+        return new TrustedProxies(List.copyOf(ranges));
+    }
+
+    /**
+     * Whether an address belongs to a trusted proxy; false for anything that
+     * is not an IP address.
+     */
+    boolean contains(String address) {
+        byte[] bytes = address != null ? toBytes(address.trim()) : null;
+        if (bytes == null) {
+            return false;
+        }
+        for (Range range : ranges) {
+            if (range.contains(bytes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] toBytes(String literal) {
+        if (literal.isEmpty() || !IP_LITERAL.matcher(literal).matches()) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(literal).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private record Range(byte[] address, int prefix) {
+
+        boolean contains(byte[] candidate) {
+            if (candidate.length != address.length) {
+                return false;
+            }
+            int fullBytes = prefix / 8;
+            for (int i = 0; i < fullBytes; i++) {
+                if (candidate[i] != address[i]) {
+                    return false;
+                }
+            }
+            int remainingBits = prefix % 8;
+            if (remainingBits == 0) {
+                return true;
+            }
+            int mask = 0xFF << (8 - remainingBits);
+            return (candidate[fullBytes] & mask) == (address[fullBytes] & mask);
+        }
+    }
+}
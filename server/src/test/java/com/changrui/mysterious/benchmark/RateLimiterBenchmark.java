@@ -0,0 +1,70 @@
+package com.changrui.mysterious.benchmark;
+
+import com.changrui.mysterious.shared.ratelimit.RateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Cost of a rate limit check under contention.
+ *
+ * {@code hotKey} has every thread hit the same client's bucket (worst case
+ * for compare-and-set retries); {@code manyKeys} spreads the checks over
+ * 10,000 clients like a busy wall. Limits are high enough that nothing is
+ * rejected, so only the check itself is measured.
+ *
+ * Run with (forked JMH runs need the classpath on the command line):
+ * {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath com.changrui.mysterious.benchmark.RateLimiterBenchmark"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class RateLimiterBenchmark {
+
+    private static final int CLIENTS = 10_000;
+
+    private RateLimiter limiter;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        limiter = new RateLimiter("reaction=1000000000/1s", "1000000000/1s", 100_000,
+                RateLimiter.DEFAULT_TRUSTED_PROXIES, new SimpleMeterRegistry());
+        keys = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            keys[i] = "user:u-" + i;
+        }
+    }
+
+    @Benchmark
+    public long hotKey() {
+        return limiter.tryAcquire(RateLimiter.REACTION, keys[0]);
+    }
+
+    @Benchmark
+    public long manyKeys() {
+        return limiter.tryAcquire(RateLimiter.REACTION, keys[ThreadLocalRandom.current().nextInt(CLIENTS)]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(RateLimiterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,134 @@
+package com.changrui.mysterious.benchmark;
+
+import com.changrui.mysterious.domain.messagewall.dto.MessageResponse;
+import com.changrui.mysterious.domain.messagewall.dto.ReactionUpdatePayload;
+import com.changrui.mysterious.domain.messagewall.dto.WebSocketEvent;
+import com.changrui.mysterious.domain.messagewall.model.MessageReaction;
+import com.changrui.mysterious.shared.config.StompWireFormat.Encoding;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Bytes on the wire and encoding CPU of wall events in JSON, CBOR and Smile.
+ *
+ * {@code serialize} is the cost of writing the event directly in a format;
+ * {@code broadcast} is what the server pays per frame: the JSON written by
+ * the messaging template, re-encoded once for the sessions that negotiated
+ * a binary format.
+ *
+ * Run with (forked JMH runs need the classpath on the command line):
+ * {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath com.changrui.mysterious.benchmark.StompWireFormatBenchmark"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StompWireFormatBenchmark {
+
+    @Param({"typical", "reactionHeavy"})
+    private String payload;
+
+    @Param({"JSON", "CBOR", "SMILE"})
+    private String format;
+
+    private final ObjectMapper json = Jackson2ObjectMapperBuilder.json().build();
+    private ObjectMapper mapper;
+    private Encoding encoding;
+    private WebSocketEvent event;
+
+    @Setup
+    public void setUp() {
+        event = event(payload);
+        encoding = "JSON".equals(format) ? null : Encoding.valueOf(format);
+        mapper = encoding == null ? json : mapperFor(encoding);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return mapper.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public byte[] broadcast() throws Exception {
+        byte[] frame = json.writeValueAsBytes(event);
+        return encoding == null ? frame : encoding.fromJson(frame);
+    }
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper json = Jackson2ObjectMapperBuilder.json().build();
+        System.out.printf("%-14s %8s %8s %8s%n", "payload", "JSON", "CBOR", "SMILE");
+        for (String payload : List.of("typical", "reactionHeavy")) {
+            WebSocketEvent event = event(payload);
+            System.out.printf("%-14s %8d %8d %8d%n", payload, json.writeValueAsBytes(event).length,
+                    mapperFor(Encoding.CBOR).writeValueAsBytes(event).length,
+                    mapperFor(Encoding.SMILE).writeValueAsBytes(event).length);
+        }
+        new Runner(new OptionsBuilder().include(StompWireFormatBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static ObjectMapper mapperFor(Encoding encoding) {
+        return encoding == Encoding.CBOR
+                ? Jackson2ObjectMapperBuilder.cbor().build()
+                : Jackson2ObjectMapperBuilder.smile().build();
+    }
+
+    private static WebSocketEvent event(String payload) {
+        if ("typical".equals(payload)) {
+            MessageResponse message = message("a1b2c3d4-0000-4000-8000-000000000001",
+                    "Quelqu'un a réussi à battre le record du snake ? Je bloque à 180 depuis hier soir.");
+            message.setQuotedMessageId("a1b2c3d4-0000-4000-8000-000000000000");
+            message.setQuotedName("Léa");
+            message.setQuotedMessage("Nouveau record sur le snake !");
+            message.setReactions(reactions(1, 2));
+            return new WebSocketEvent(WebSocketEvent.NEW_MESSAGE, message, 1024L);
+        }
+        // A popular message: every reaction update carries all the reacting users
+        return new WebSocketEvent(WebSocketEvent.REACTION_UPDATED,
+                new ReactionUpdatePayload("a1b2c3d4-0000-4000-8000-000000000001", reactions(8, 25)), 1025L);
+    }
+
+    private static MessageResponse message(String id, String text) {
+        MessageResponse message = new MessageResponse();
+        message.setId(id);
+        message.setUserId("u-7f3e9a21");
+        message.setName("Changrui");
+        message.setMessage(text);
+        message.setTimestamp(1767225600000L);
+        message.setVerified(true);
+        message.setChannelId("general");
+        message.setAvatarUrl("/api/avatars/u-7f3e9a21.webp");
+        return message;
+    }
+
+    private static List<MessageReaction> reactions(int emojis, int usersPerEmoji) {
+        String[] emojiSet = {"👍", "❤️", "😂", "🔥", "😮", "😢", "🎉", "👀"};
+        List<MessageReaction> reactions = new ArrayList<>();
+        for (int e = 0; e < emojis; e++) {
+            List<MessageReaction.ReactionUser> users = new ArrayList<>();
+            for (int u = 0; u < usersPerEmoji; u++) {
+                users.add(new MessageReaction.ReactionUser("u-" + (1000 + u), "user" + u, 1767225600000L + u));
+            }
+            reactions.add(new MessageReaction(emojiSet[e % emojiSet.length], usersPerEmoji, users));
+        }
+        return reactions;
+    }
+}
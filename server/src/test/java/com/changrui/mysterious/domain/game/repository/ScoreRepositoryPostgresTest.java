@@ -0,0 +1,200 @@
+package com.changrui.mysterious.domain.game.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import jakarta.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Tests of the scores migration 012 and of
+ * {@link ScoreRepository#upsertIfBetter} against Postgres, in a scratch
+ * schema of the database given by RELAY_TEST_DB_URL (plus
+ * RELAY_TEST_DB_USERNAME and RELAY_TEST_DB_PASSWORD), like TwoNodeRelayTest.
+ */
+@EnabledIfEnvironmentVariable(named = "RELAY_TEST_DB_URL", matches = ".+")
+class ScoreRepositoryPostgresTest {
+
+    private static final String SCHEMA = "scores_upsert_test";
+    private static final String CHANGELOG = "db/changelog/changes/012-unique-scores-per-user-game.xml";
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private LocalContainerEntityManagerFactoryBean entityManagerFactory;
+    private ScoreRepository scoreRepository;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("currentSchema", SCHEMA);
+        dataSource = new DriverManagerDataSource(System.getenv("RELAY_TEST_DB_URL"),
+                System.getenv("RELAY_TEST_DB_USERNAME"), System.getenv("RELAY_TEST_DB_PASSWORD"));
+        dataSource.setConnectionProperties(properties);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        // The scores table as created by changelog 001, before 012
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA " + SCHEMA);
+        jdbcTemplate.execute("CREATE TABLE scores (id VARCHAR(36) PRIMARY KEY, username VARCHAR(255) NOT NULL, "
+                + "user_id VARCHAR(255) NOT NULL, game_type VARCHAR(255) NOT NULL, score INT NOT NULL, "
+                + "timestamp BIGINT NOT NULL, attempts INT)");
+        jdbcTemplate.execute("CREATE INDEX idx_user_game ON scores (user_id, game_type)");
+        jdbcTemplate.execute("CREATE INDEX idx_game_score ON scores (game_type, score)");
+
+        entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+        entityManagerFactory.setDataSource(dataSource);
+        entityManagerFactory.setPackagesToScan("com.changrui.mysterious.domain.game.model");
+        entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        entityManagerFactory.setJpaPropertyMap(Map.of("hibernate.hbm2ddl.auto", "none"));
+        entityManagerFactory.afterPropertiesSet();
+        EntityManagerFactory factory = entityManagerFactory.getObject();
+        scoreRepository = new JpaRepositoryFactory(SharedEntityManagerCreator.createSharedEntityManager(factory))
+                .getRepository(ScoreRepository.class);
+        transactionTemplate = new TransactionTemplate(new JpaTransactionManager(factory));
+    }
+
+    @AfterEach
+    void tearDown() {
+        entityManagerFactory.destroy();
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+    }
+
+    @Test
+    void migration_KeepsBestScoreOfEachUserAndGame() throws Exception {
+        // Given: duplicates from concurrent submissions
+        insert("a1", "alice", "snake", 100, 2);
+        insert("a2", "alice", "snake", 150, 3);
+        insert("a3", "alice", "snake", 150, 1);
+        insert("b1", "bob", "maze", 0, 1);
+        insert("b2", "bob", "maze", 40, 2);
+        insert("b3", "bob", "maze", 30, 3);
+        insert("c1", "carol", "maze", 0, 2);
+        insert("c2", "carol", "maze", 0, 1);
+        insert("d1", "alice", "maze", 50, 1);
+
+        // When
+        migrate();
+
+        // Then: highest score, lowest real maze time, and the earlier of equal scores
+        assertEquals(List.of("a3", "b3", "c2", "d1"),
+                jdbcTemplate.queryForList("SELECT id FROM scores ORDER BY id", String.class));
+        assertThrows(DataIntegrityViolationException.class, () -> insert("a4", "alice", "snake", 10, 4));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_indexes WHERE schemaname = ? AND indexname = 'idx_user_game'",
+                Integer.class, SCHEMA));
+    }
+
+    @Test
+    void upsertIfBetter_KeepsHighestScore() throws Exception {
+        // Given
+        migrate();
+
+        // When / Then: equal scores do not replace the earlier one
+        assertEquals(1, upsert("s1", "snake", 100, 1));
+        assertEquals(0, upsert("s2", "snake", 90, 2));
+        assertEquals(0, upsert("s3", "snake", 100, 3));
+        assertEquals(1, upsert("s4", "snake", 120, null));
+
+        // The row keeps its id and takes the attempts of the new score
+        Map<String, Object> row = jdbcTemplate.queryForMap("SELECT id, score, attempts FROM scores");
+        assertEquals("s1", row.get("id"));
+        assertEquals(120, row.get("score"));
+        assertNull(row.get("attempts"));
+    }
+
+    @Test
+    void upsertIfBetter_KeepsLowestRealMazeTime() throws Exception {
+        // Given
+        migrate();
+
+        // When / Then: a first 0 is stored, a real time replaces it, 0 never replaces a real time
+        assertEquals(1, upsert("m1", "maze", 0, 1));
+        assertEquals(1, upsert("m2", "maze", 30, 1));
+        assertEquals(0, upsert("m3", "maze", 0, 1));
+        assertEquals(0, upsert("m4", "maze", 40, 1));
+        assertEquals(0, upsert("m5", "maze", 30, 1));
+        assertEquals(1, upsert("m6", "maze", 25, 1));
+
+        assertEquals(List.of(25), jdbcTemplate.queryForList("SELECT score FROM scores", Integer.class));
+        assertEquals(List.of("m1"), jdbcTemplate.queryForList("SELECT id FROM scores", String.class));
+    }
+
+    @Test
+    void upsertIfBetter_ConcurrentSubmissionsKeepOneBestRow() throws Exception {
+        // Given
+        migrate();
+        int submissions = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(submissions);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // When: the same user submits 16 scores at once
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < submissions; i++) {
+            int score = 100 + i;
+            results.add(executor.submit(() -> {
+                start.await();
+                return upsert(UUID.randomUUID().toString(), "snake", score, 1);
+            }));
+        }
+        start.countDown();
+        int saved = 0;
+        for (Future<Integer> result : results) {
+            saved += result.get();
+        }
+        executor.shutdown();
+
+        // Then: no duplicate, no unique violation, and the best score wins
+        assertTrue(saved >= 1);
+        assertEquals(List.of(100 + submissions - 1),
+                jdbcTemplate.queryForList("SELECT score FROM scores", Integer.class));
+    }
+
+    private int upsert(String id, String gameType, int score, Integer attempts) {
+        return transactionTemplate.execute(status -> scoreRepository.upsertIfBetter(id, "Alice", "alice",
+                gameType, score, System.currentTimeMillis(), attempts));
+    }
+
+    private void insert(String id, String userId, String gameType, int score, long timestamp) {
+        jdbcTemplate.update("INSERT INTO scores (id, username, user_id, game_type, score, timestamp) "
+                + "VALUES (?, ?, ?, ?, ?, ?)", id, userId, userId, gameType, score, timestamp);
+    }
+
+    private void migrate() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            Database database = DatabaseFactory.getInstance()
+                    .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+            database.setDefaultSchemaName(SCHEMA);
+            new Liquibase(CHANGELOG, new ClassLoaderResourceAccessor(), database)
+                    .update(new Contexts(), new LabelExpression());
+        }
+    }
+}
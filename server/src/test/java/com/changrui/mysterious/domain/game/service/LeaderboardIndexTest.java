@@ -0,0 +1,59 @@
+package com.changrui.mysterious.domain.game.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.changrui.mysterious.domain.game.model.Score;
+import com.changrui.mysterious.domain.game.repository.ScoreRepository;
+import com.changrui.mysterious.shared.cluster.LocalEventRelay;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for LeaderboardIndex.
+ */
+class LeaderboardIndexTest {
+
+    private final ScoreRepository scoreRepository = mock(ScoreRepository.class);
+
+    @Test
+    void get_DoesNotKeepGameTypesWithoutScores() {
+        // Given
+        when(scoreRepository.findByGameType(anyString())).thenReturn(List.of());
+        LeaderboardIndex index = new LeaderboardIndex(scoreRepository, new LocalEventRelay(), 4);
+
+        // When
+        index.get("unknown");
+        index.get("unknown");
+
+        // Then: loaded each time, never cached
+        verify(scoreRepository, times(2)).findByGameType("unknown");
+    }
+
+    @Test
+    void get_KeepsAtMostTheConfiguredNumberOfLeaderboards() {
+        // Given
+        when(scoreRepository.findByGameType(anyString()))
+                .thenAnswer(invocation -> List.of(score(invocation.getArgument(0))));
+        LeaderboardIndex index = new LeaderboardIndex(scoreRepository, new LocalEventRelay(), 2);
+
+        // When
+        index.get("a");
+        index.get("b");
+        index.get("c");
+        index.get("c");
+
+        // Then: c stayed cached, and one of a and b was dropped for it
+        verify(scoreRepository, times(1)).findByGameType("c");
+        index.get("a");
+        index.get("b");
+        verify(scoreRepository, atLeast(3)).findByGameType(argThat(gameType -> !"c".equals(gameType)));
+    }
+
+    private static Score score(String gameType) {
+        Score score = new Score("alice", "alice", gameType, 100, 1767225600000L);
+        score.setId(gameType + "-1");
+        return score;
+    }
+}
@@ -0,0 +1,115 @@
+package com.changrui.mysterious.domain.game.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.changrui.mysterious.domain.game.model.Score;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for Leaderboard.
+ */
+class LeaderboardTest {
+
+    @Test
+    void of_KeepsOneScorePerUserEvenWhenOneUserDominates() {
+        // Given: one user holds the 60 best scores
+        List<Score> scores = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            scores.add(score("s" + i, "alice", 1000 + i));
+        }
+        scores.add(score("b", "bob", 500));
+        scores.add(score("c", "carol", 400));
+
+        // When
+        Leaderboard leaderboard = Leaderboard.of("brickbreaker", scores);
+
+        // Then
+        assertEquals(List.of("alice", "bob", "carol"), userIds(leaderboard.page(0, 3)));
+        assertEquals(1059, leaderboard.get("alice").getScore());
+        assertEquals(3, leaderboard.size());
+    }
+
+    @Test
+    void of_RanksMazeAscendingWithoutZeroScores() {
+        // When
+        Leaderboard leaderboard = Leaderboard.of("maze", List.of(
+                score("a", "alice", 30), score("b", "bob", 0), score("c", "carol", 12), score("d", "dave", 45)));
+
+        // Then
+        assertEquals(List.of("carol", "alice", "dave"), userIds(leaderboard.page(0, 10)));
+        assertNull(leaderboard.get("bob"));
+    }
+
+    @Test
+    void replace_MovesAndRemovesUsers() {
+        // Given
+        Leaderboard leaderboard = Leaderboard.of("brickbreaker", List.of(
+                score("a", "alice", 300), score("b", "bob", 200), score("c", "carol", 100)));
+
+        // When: carol takes the lead, then bob's score is deleted
+        leaderboard.replace("carol", List.of(score("c2", "carol", 400)));
+        leaderboard.replace("bob", List.of());
+
+        // Then
+        assertEquals(List.of("carol", "alice"), userIds(leaderboard.page(0, 10)));
+        assertEquals(List.of("alice"), userIds(leaderboard.page(1, 10)));
+        assertTrue(leaderboard.page(5, 10).isEmpty());
+        assertEquals("c2", leaderboard.get("carol").getId());
+    }
+
+    @Test
+    void replace_FollowsTheStoredRowAsItImproves() {
+        // Given
+        Leaderboard leaderboard = Leaderboard.of("maze", List.of(score("a", "alice", 30)));
+
+        // When: the upsert improves alice's row in place, a worse run leaves
+        // it as it is, a run without a time is stored but not ranked
+        leaderboard.replace("alice", List.of(score("a", "alice", 20)));
+        leaderboard.replace("alice", List.of(score("a", "alice", 20)));
+        leaderboard.replace("bob", List.of(score("b", "bob", 0)));
+        leaderboard.replace("carol", List.of(score("c", "carol", 40)));
+
+        // Then
+        assertEquals(20, leaderboard.get("alice").getScore());
+        assertEquals("a", leaderboard.get("alice").getId());
+        assertNull(leaderboard.get("bob"));
+        assertEquals(List.of("alice", "carol"), userIds(leaderboard.page(0, 10)));
+    }
+
+    @Test
+    void standing_GivesRankAndNeighboursFromOneRanking() {
+        // Given: maze times, lower is better; u0 has no score
+        List<Score> scores = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            scores.add(score("s" + i, "u" + i, i * 10));
+        }
+        Leaderboard leaderboard = Leaderboard.of("maze", scores);
+
+        // When
+        Leaderboard.Standing middle = leaderboard.standing("u5", 2);
+        Leaderboard.Standing first = leaderboard.standing("u1", 2);
+        Leaderboard.Standing unranked = leaderboard.standing("u0", 2);
+
+        // Then
+        assertEquals(5, middle.rank());
+        assertEquals(9, middle.total());
+        assertEquals(3, middle.firstRank());
+        assertEquals(List.of("u3", "u4", "u5", "u6", "u7"), userIds(middle.scores()));
+        assertEquals(1, first.rank());
+        assertEquals(List.of("u1", "u2", "u3"), userIds(first.scores()));
+        assertEquals(0, unranked.rank());
+        assertTrue(unranked.scores().isEmpty());
+    }
+
+    private static List<String> userIds(List<Score> scores) {
+        return scores.stream().map(Score::getUserId).toList();
+    }
+
+    private static Score score(String id, String userId, int value) {
+        Score score = new Score(userId, userId, "game", value, 1767225600000L);
+        score.setId(id);
+        return score;
+    }
+}
@@ -0,0 +1,175 @@
+package com.changrui.mysterious.domain.messagewall.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import com.changrui.mysterious.domain.messagewall.dto.MessageResponse;
+import com.changrui.mysterious.domain.messagewall.dto.ReactionDeltaPayload;
+import com.changrui.mysterious.domain.messagewall.dto.WebSocketEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+/**
+ * Unit tests for BroadcastCoalescer.
+ * Uses a long window and flushes by hand so that nothing is sent on a timer.
+ */
+class BroadcastCoalescerTest {
+
+    private static final String TOPIC = "/topic/messages";
+    private static final String CONTROL_TOPIC = "/topic/wall/control";
+
+    private SimpMessagingTemplate messagingTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private BroadcastCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new BroadcastCoalescer(messagingTemplate, 60_000, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.shutdown();
+    }
+
+    @Test
+    void flush_SendsSingleEventUnwrapped() {
+        // Given
+        WebSocketEvent event = new WebSocketEvent(WebSocketEvent.MUTE_STATUS, true);
+        coalescer.enqueue(TOPIC, event);
+
+        // When
+        coalescer.flush(TOPIC);
+
+        // Then
+        verify(messagingTemplate).convertAndSend(TOPIC, (Object) event);
+        assertEquals(1.0, meterRegistry.get("messagewall.broadcast.batch.size").summary().totalAmount());
+    }
+
+    @Test
+    void flush_SendsSeveralEventsAsOneBatch() {
+        // Given
+        coalescer.enqueue(TOPIC, newMessage("a"));
+        coalescer.enqueue(TOPIC, newMessage("b"));
+
+        // When
+        List<WebSocketEvent> sent = flushBatch();
+
+        // Then
+        assertEquals(List.of(WebSocketEvent.NEW_MESSAGE, WebSocketEvent.NEW_MESSAGE),
+                sent.stream().map(WebSocketEvent::type).toList());
+        assertEquals(1, meterRegistry.get("messagewall.broadcast.flush.latency").timer().count());
+    }
+
+    @Test
+    void enqueue_NewMessageThenDeleteCancelOut() {
+        // Given
+        coalescer.enqueue(TOPIC, newMessage("a"));
+        coalescer.enqueue(TOPIC, delta("a", "u1", 1, 1));
+        coalescer.enqueue(TOPIC, new WebSocketEvent(WebSocketEvent.DELETE_MESSAGE, "a"));
+
+        // When
+        coalescer.flush(TOPIC);
+
+        // Then
+        verify(messagingTemplate, never()).convertAndSend(eq(TOPIC), any(Object.class));
+        assertEquals(3.0, meterRegistry.get("messagewall.broadcast.events.coalesced").counter().count());
+    }
+
+    @Test
+    void enqueue_ReactionDeltasMergePerUserAndKeepCountsConsistent() {
+        // Given: the emoji starts at 4; u1 adds, u2 adds, u1 removes
+        coalescer.enqueue(TOPIC, delta("m", "u1", 1, 5));
+        coalescer.enqueue(TOPIC, delta("m", "u2", 1, 6));
+        coalescer.enqueue(TOPIC, delta("m", "u1", -1, 5));
+
+        // When
+        coalescer.flush(TOPIC);
+
+        // Then: only u2's change is left, ending on the latest count
+        ArgumentCaptor<Object> frame = ArgumentCaptor.forClass(Object.class);
+        verify(messagingTemplate).convertAndSend(eq(TOPIC), frame.capture());
+        ReactionDeltaPayload payload = (ReactionDeltaPayload) ((WebSocketEvent) frame.getValue()).payload();
+        assertEquals("u2", payload.userId());
+        assertEquals(1, payload.delta());
+        assertEquals(5, payload.count());
+    }
+
+    @Test
+    void enqueue_ClearAllDropsEarlierMessageEventsButKeepsMute() {
+        // Given
+        coalescer.enqueue(TOPIC, newMessage("a"));
+        coalescer.enqueue(TOPIC, new WebSocketEvent(WebSocketEvent.MUTE_STATUS, true));
+        coalescer.enqueue(TOPIC, new WebSocketEvent(WebSocketEvent.CLEAR_ALL, null));
+
+        // When
+        List<WebSocketEvent> sent = flushBatch();
+
+        // Then
+        assertEquals(List.of(WebSocketEvent.MUTE_STATUS, WebSocketEvent.CLEAR_ALL),
+                sent.stream().map(WebSocketEvent::type).toList());
+    }
+
+    @Test
+    void enqueue_ClearSendsEarlierEventsOfOtherDestinationsFirst() {
+        // Given: a message queued on a channel before the clear on the control topic
+        WebSocketEvent message = newMessage("a");
+        WebSocketEvent clear = new WebSocketEvent(WebSocketEvent.CLEAR_ALL, null);
+        coalescer.enqueue(TOPIC, message);
+
+        // When: no window has ended yet
+        coalescer.enqueue(CONTROL_TOPIC, clear);
+
+        // Then
+        InOrder inOrder = inOrder(messagingTemplate);
+        inOrder.verify(messagingTemplate).convertAndSend(TOPIC, (Object) message);
+        inOrder.verify(messagingTemplate).convertAndSend(CONTROL_TOPIC, (Object) clear);
+        coalescer.flushAll();
+        verifyNoMoreInteractions(messagingTemplate);
+    }
+
+    @Test
+    void enqueue_ZeroWindowSendsImmediately() {
+        // Given
+        BroadcastCoalescer immediate = new BroadcastCoalescer(messagingTemplate, 0, meterRegistry);
+        WebSocketEvent event = newMessage("a");
+
+        // When
+        immediate.enqueue(TOPIC, event);
+
+        // Then
+        verify(messagingTemplate).convertAndSend(TOPIC, (Object) event);
+        immediate.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<WebSocketEvent> flushBatch() {
+        coalescer.flush(TOPIC);
+        ArgumentCaptor<Object> frame = ArgumentCaptor.forClass(Object.class);
+        verify(messagingTemplate).convertAndSend(eq(TOPIC), frame.capture());
+        WebSocketEvent batch = (WebSocketEvent) frame.getValue();
+        assertEquals(WebSocketEvent.BATCH, batch.type());
+        return (List<WebSocketEvent>) batch.payload();
+    }
+
+    private static WebSocketEvent newMessage(String id) {
+        MessageResponse message = new MessageResponse();
+        message.setId(id);
+        return new WebSocketEvent(WebSocketEvent.NEW_MESSAGE, message);
+    }
+
+    private static WebSocketEvent delta(String messageId, String userId, int delta, int count) {
+        return new WebSocketEvent(WebSocketEvent.REACTION_DELTA,
+                new ReactionDeltaPayload(messageId, "👍", userId, userId, delta, count));
+    }
+}
@@ -0,0 +1,181 @@
+package com.changrui.mysterious.domain.messagewall.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.changrui.mysterious.shared.cache.ResourceVersions;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Unit tests for MessagePartitionMaintenanceService.
+ */
+class MessagePartitionMaintenanceServiceTest {
+
+    private static final YearMonth NOW = YearMonth.of(2026, 3);
+
+    private JdbcTemplate jdbcTemplate;
+    private RecentMessageBuffer recentMessageBuffer;
+    private ResourceVersions resourceVersions;
+    private MessagePartitionMaintenanceService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            ((Consumer<TransactionStatus>) invocation.getArgument(0)).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        recentMessageBuffer = mock(RecentMessageBuffer.class);
+        resourceVersions = mock(ResourceVersions.class);
+
+        service = new MessagePartitionMaintenanceService(jdbcTemplate, transactionTemplate, recentMessageBuffer,
+                resourceVersions);
+        ReflectionTestUtils.setField(service, "monthsAhead", 1);
+        ReflectionTestUtils.setField(service, "hotMonths", 12);
+        ReflectionTestUtils.setField(service, "archiveRetentionMonths", 0);
+
+        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), anyString())).thenReturn(1);
+    }
+
+    @Test
+    void boundsOf_UsesUtcMonthInEpochMillis() {
+        assertEquals("FOR VALUES FROM (1772323200000) TO (1775001600000)",
+                MessagePartitionMaintenanceService.boundsOf(NOW));
+    }
+
+    @Test
+    void monthOf_IgnoresDefaultPartition() {
+        assertEquals(Optional.of(NOW), MessagePartitionMaintenanceService.monthOf("messages_p202603"));
+        assertEquals(Optional.empty(), MessagePartitionMaintenanceService.monthOf("messages_default"));
+    }
+
+    @Test
+    void maintainPartitions_CreatesMissingMonthsAndArchivesColdOnes() {
+        // Given
+        givenPartitions(MessagePartitionMaintenanceService.HOT_TABLE,
+                "messages_p202502", "messages_p202503", "messages_p202603");
+
+        // When
+        service.maintainPartitions(NOW);
+
+        // Then: April is created, February 2025 is out of the 12 hot months
+        verify(jdbcTemplate).execute(
+                "CREATE TABLE IF NOT EXISTS messages_p202604 PARTITION OF messages "
+                        + MessagePartitionMaintenanceService.boundsOf(NOW.plusMonths(1)));
+        verify(jdbcTemplate).execute("ALTER TABLE messages DETACH PARTITION messages_p202502");
+        verify(jdbcTemplate).execute("ALTER TABLE messages_archive ATTACH PARTITION messages_p202502 "
+                + MessagePartitionMaintenanceService.boundsOf(YearMonth.of(2025, 2)));
+        verify(jdbcTemplate, never()).execute(contains("DETACH PARTITION messages_p202503"));
+        verify(recentMessageBuffer, never()).clear();
+    }
+
+    @Test
+    void maintainPartitions_MovesRowsOutOfDefaultPartitionBeforeAttaching() {
+        // Given: a message dated April already sits in the default partition
+        givenPartitions(MessagePartitionMaintenanceService.HOT_TABLE, "messages_default", "messages_p202603");
+        when(jdbcTemplate.update(startsWith("INSERT INTO messages_p202604"))).thenReturn(1);
+
+        // When
+        service.maintainPartitions(NOW);
+
+        // Then
+        InOrder inOrder = inOrder(jdbcTemplate);
+        inOrder.verify(jdbcTemplate).execute("LOCK TABLE messages_default IN ACCESS EXCLUSIVE MODE");
+        inOrder.verify(jdbcTemplate).execute(
+                "CREATE TABLE messages_p202604 (LIKE messages INCLUDING DEFAULTS INCLUDING GENERATED)");
+        inOrder.verify(jdbcTemplate).update(startsWith("INSERT INTO messages_p202604"));
+        inOrder.verify(jdbcTemplate).update(startsWith("DELETE FROM messages_default WHERE timestamp >= "));
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE messages ATTACH PARTITION messages_p202604 "
+                + MessagePartitionMaintenanceService.boundsOf(NOW.plusMonths(1)));
+    }
+
+    @Test
+    void maintainPartitions_KeepsGoingWhenOnePartitionFails() {
+        // Given: March cannot be created, April can
+        ReflectionTestUtils.setField(service, "hotMonths", 1);
+        givenPartitions(MessagePartitionMaintenanceService.HOT_TABLE, "messages_p202601");
+        doThrow(new DataIntegrityViolationException("updated partition constraint for default partition"))
+                .when(jdbcTemplate).execute(contains("messages_p202603 PARTITION OF"));
+
+        // When
+        service.maintainPartitions(NOW);
+
+        // Then
+        verify(jdbcTemplate).execute(contains("messages_p202604 PARTITION OF"));
+        verify(jdbcTemplate).execute("ALTER TABLE messages DETACH PARTITION messages_p202601");
+    }
+
+    @Test
+    void maintainPartitions_DropsExpiredArchivedPartitionsWithTheirReactions() {
+        // Given
+        ReflectionTestUtils.setField(service, "archiveRetentionMonths", 24);
+        givenPartitions(MessagePartitionMaintenanceService.HOT_TABLE, "messages_p202603", "messages_p202604");
+        givenPartitions(MessagePartitionMaintenanceService.ARCHIVE_TABLE, "messages_p202402", "messages_p202403");
+
+        // When
+        service.maintainPartitions(NOW);
+
+        // Then
+        verify(jdbcTemplate).update(contains("DELETE FROM message_reactions r USING messages_p202402"));
+        verify(jdbcTemplate).execute("DROP TABLE messages_p202402");
+        verify(jdbcTemplate, never()).execute("DROP TABLE messages_p202403");
+        verify(resourceVersions).bumpAll(ResourceVersions.MESSAGES);
+    }
+
+    @Test
+    void maintainPartitions_SkipsUnpartitionedTable() {
+        // Given
+        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), anyString())).thenReturn(0);
+
+        // When
+        service.maintainPartitions(NOW);
+
+        // Then
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void maintainPartitions_SkipsRunWhileAnotherInstanceHoldsTheLock() throws Exception {
+        // Given
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet result = mock(ResultSet.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(result);
+        when(result.next()).thenReturn(true);
+        when(result.getBoolean(1)).thenReturn(false);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenAnswer(
+                invocation -> ((ConnectionCallback<Boolean>) invocation.getArgument(0)).doInConnection(connection));
+
+        // When
+        service.maintainPartitions();
+
+        // Then
+        verify(connection).prepareStatement("SELECT pg_try_advisory_lock(hashtext(?))");
+        verify(connection, never()).prepareStatement("SELECT pg_advisory_unlock(hashtext(?))");
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(String.class), anyString());
+    }
+
+    private void givenPartitions(String table, String... partitions) {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq(table))).thenReturn(List.of(partitions));
+    }
+}
@@ -0,0 +1,171 @@
+package com.changrui.mysterious.domain.messagewall.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.changrui.mysterious.domain.messagewall.dto.MessageResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for RecentMessageBuffer.
+ */
+class RecentMessageBufferTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RecentMessageBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        buffer = new RecentMessageBuffer(3, 2, meterRegistry);
+    }
+
+    @Test
+    void getLatest_MissesUntilLoaded() {
+        assertTrue(buffer.getLatest("general", 2).isEmpty());
+        assertEquals(1.0, meterRegistry.get("messagewall.recent.buffer.requests").tag("result", "miss")
+                .counter().count());
+    }
+
+    @Test
+    void getLatest_ServesTailOfLoadedBuffer() {
+        // Given
+        load("general", List.of(message("a", 1), message("b", 2), message("c", 3)), false);
+
+        // When
+        List<MessageResponse> latest = buffer.getLatest("general", 2).orElseThrow();
+
+        // Then
+        assertEquals(List.of("b", "c"), ids(latest));
+        assertEquals(1.0, meterRegistry.get("messagewall.recent.buffer.requests").tag("result", "hit")
+                .counter().count());
+    }
+
+    @Test
+    void add_KeepsBufferBoundedAndSorted() {
+        // Given
+        load("general", List.of(message("a", 1), message("c", 3)), true);
+        load(RecentMessageBuffer.ALL_CHANNELS, List.of(message("a", 1), message("c", 3)), true);
+
+        // When
+        buffer.add(message("b", 2));
+        buffer.add(message("d", 4));
+
+        // Then
+        assertEquals(List.of("b", "c", "d"), ids(buffer.getLatest("general", 3).orElseThrow()));
+        assertTrue(buffer.getLatest("general", 4).isEmpty(), "Evicted history is no longer complete");
+    }
+
+    @Test
+    void remove_BelowRequestedSizeForcesReload() {
+        // Given
+        load("general", List.of(message("a", 1), message("b", 2), message("c", 3)), false);
+
+        // When
+        buffer.remove("b");
+
+        // Then
+        assertTrue(buffer.getLatest("general", 3).isEmpty());
+        assertEquals(List.of("a", "c"), ids(buffer.getLatest("general", 2).orElseThrow()));
+    }
+
+    @Test
+    void update_ReplacesBufferedMessage() {
+        // Given
+        load("general", List.of(message("a", 1)), true);
+        MessageResponse updated = message("a", 1);
+        updated.setMessage("edited");
+
+        // When
+        buffer.update(updated);
+
+        // Then
+        assertEquals("edited", buffer.getLatest("general", 1).orElseThrow().get(0).getMessage());
+    }
+
+    @Test
+    void replaceIfUnchanged_IgnoresStaleReload() {
+        // Given
+        load("general", List.of(message("a", 1)), true);
+        long staleVersion = buffer.version("general");
+        buffer.add(message("b", 2));
+
+        // When
+        buffer.replaceIfUnchanged("general", staleVersion, List.of(message("a", 1)), true);
+
+        // Then
+        assertEquals(List.of("a", "b"), ids(buffer.getLatest("general", 5).orElseThrow()));
+    }
+
+    @Test
+    void clear_ServesEmptyWallFromMemory() {
+        // Given
+        load("general", List.of(message("a", 1)), false);
+
+        // When
+        buffer.clear();
+
+        // Then
+        assertEquals(List.of(), buffer.getLatest("general", 10).orElseThrow());
+        assertEquals(List.of(), buffer.getLatest(RecentMessageBuffer.ALL_CHANNELS, 10).orElseThrow());
+    }
+
+    @Test
+    void invalidate_FallsBackToDatabaseUntilReloaded() {
+        // Given
+        load("general", List.of(message("a", 1)), true);
+
+        // When
+        buffer.invalidate();
+
+        // Then
+        assertTrue(buffer.getLatest("general", 10).isEmpty());
+        assertTrue(buffer.find("a").isEmpty());
+    }
+
+    @Test
+    void replaceIfUnchanged_KeepsNoBufferForChannelWithoutMessages() {
+        // When
+        load("no-such-channel", List.of(), true);
+
+        // Then
+        assertTrue(buffer.getLatest("no-such-channel", 10).isEmpty());
+        assertEquals(0, buffer.version("no-such-channel"));
+    }
+
+    @Test
+    void replaceIfUnchanged_DropsLeastRecentlyReadChannelPastLimit() {
+        // Given: two channels, general read last
+        load("random", List.of(message("a", 1)), true);
+        load("general", List.of(message("b", 2)), true);
+        buffer.getLatest("random", 1);
+        buffer.getLatest("general", 1);
+
+        // When
+        load("games", List.of(message("c", 3)), true);
+
+        // Then
+        assertTrue(buffer.getLatest("random", 1).isEmpty());
+        assertTrue(buffer.getLatest("general", 1).isPresent());
+        assertTrue(buffer.getLatest("games", 1).isPresent());
+    }
+
+    private void load(String key, List<MessageResponse> messages, boolean exhaustive) {
+        buffer.replaceIfUnchanged(key, buffer.version(key), messages, exhaustive);
+    }
+
+    private static MessageResponse message(String id, long timestamp) {
+        MessageResponse message = new MessageResponse();
+        message.setId(id);
+        message.setTimestamp(timestamp);
+        message.setChannelId("general");
+        message.setMessage("message " + id);
+        return message;
+    }
+
+    private static List<String> ids(List<MessageResponse> messages) {
+        return messages.stream().map(MessageResponse::getId).toList();
+    }
+}
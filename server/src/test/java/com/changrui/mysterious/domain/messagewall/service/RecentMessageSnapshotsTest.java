@@ -0,0 +1,95 @@
+package com.changrui.mysterious.domain.messagewall.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.changrui.mysterious.domain.messagewall.dto.MessageResponse;
+import com.changrui.mysterious.domain.messagewall.service.RecentMessageSnapshots.Snapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Unit tests for RecentMessageSnapshots.
+ */
+class RecentMessageSnapshotsTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private MessageService messageService;
+    private RecentMessageBuffer buffer;
+    private RecentMessageSnapshots snapshots;
+
+    @BeforeEach
+    void setUp() {
+        messageService = mock(MessageService.class);
+        when(messageService.resolvePageSize(any())).thenReturn(50);
+        buffer = new RecentMessageBuffer(10, 16, new SimpleMeterRegistry());
+        snapshots = new RecentMessageSnapshots(messageService, buffer, objectMapper, new SimpleMeterRegistry(), 8);
+    }
+
+    @Test
+    void get_SerializesOnceWhileChannelIsUnchanged() throws Exception {
+        // Given
+        List<MessageResponse> page = List.of(message("m1", "hello"), message("m2", "world"));
+        when(messageService.getRecentMessages("general", 50)).thenReturn(page);
+
+        // When
+        Snapshot first = snapshots.get("general", null, "\"e-1\"");
+        Snapshot second = snapshots.get("general", null, "\"e-1\"");
+
+        // Then: both variants hold the same JSON as a direct serialization
+        assertSame(first, second);
+        verify(messageService, times(1)).getRecentMessages("general", 50);
+        assertArrayEquals(objectMapper.writeValueAsBytes(page), first.body(false));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(first.body(true)))) {
+            assertArrayEquals(first.json(), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void get_RebuildsAfterEtagOrBufferChange() {
+        // Given
+        when(messageService.getRecentMessages("general", 50))
+                .thenReturn(List.of(message("m1", "hello")))
+                .thenReturn(List.of(message("m1", "hello"), message("m2", "new")))
+                .thenReturn(List.of(message("m2", "new")));
+        snapshots.get("general", null, "\"e-1\"");
+
+        // When / Then: a new ETag
+        Snapshot afterBump = snapshots.get("general", null, "\"e-2\"");
+        assertTrue(new String(afterBump.json()).contains("m2"));
+
+        // When / Then: the buffer moved without a bump (e.g. a relayed delete)
+        buffer.add(message("m3", "other"));
+        Snapshot afterBufferChange = snapshots.get("general", null, "\"e-2\"");
+        assertFalse(new String(afterBufferChange.json()).contains("m1"));
+        verify(messageService, times(3)).getRecentMessages("general", 50);
+    }
+
+    @Test
+    void acceptsGzip_HonorsQualityValues() {
+        assertTrue(RecentMessageSnapshots.acceptsGzip("gzip, deflate, br"));
+        assertTrue(RecentMessageSnapshots.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+        assertTrue(RecentMessageSnapshots.acceptsGzip("*"));
+        assertFalse(RecentMessageSnapshots.acceptsGzip("gzip;q=0"));
+        assertFalse(RecentMessageSnapshots.acceptsGzip("identity"));
+        assertFalse(RecentMessageSnapshots.acceptsGzip(null));
+    }
+
+    private static MessageResponse message(String id, String text) {
+        MessageResponse message = new MessageResponse();
+        message.setId(id);
+        message.setUserId("u-1");
+        message.setName("Léa");
+        message.setMessage(text);
+        message.setTimestamp(1767225600000L);
+        message.setChannelId("general");
+        return message;
+    }
+}
@@ -0,0 +1,139 @@
+package com.changrui.mysterious.domain.messagewall.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.changrui.mysterious.domain.messagewall.dto.EventReplay;
+import com.changrui.mysterious.domain.messagewall.dto.WebSocketEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for WallEventLog.
+ */
+class WallEventLogTest {
+
+    private static final String GENERAL = "/topic/messages/general";
+    private static final String OTHER = "/topic/messages/other";
+    private static final String CONTROL = "/topic/wall/control";
+
+    private WallEventLog eventLog;
+
+    @BeforeEach
+    void setUp() {
+        eventLog = new WallEventLog(3, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void append_NumbersEventsInOrder() {
+        // When
+        WebSocketEvent first = eventLog.append(GENERAL, WebSocketEvent.DELETE_MESSAGE, "a");
+        WebSocketEvent second = eventLog.append(CONTROL, WebSocketEvent.MUTE_STATUS, true);
+
+        // Then
+        assertEquals(1L, first.seq());
+        assertEquals(2L, second.seq());
+    }
+
+    @Test
+    void replaySince_ReturnsMissedEventsOfRequestedDestinations() {
+        // Given
+        eventLog.append(GENERAL, WebSocketEvent.DELETE_MESSAGE, "a");
+        eventLog.append(OTHER, WebSocketEvent.DELETE_MESSAGE, "b");
+        eventLog.append(CONTROL, WebSocketEvent.MUTE_STATUS, true);
+
+        // When
+        EventReplay replay = eventLog.replaySince(eventLog.getLogId(), Map.of(GENERAL, 0L, CONTROL, 0L));
+
+        // Then
+        assertFalse(replay.snapshotRequired());
+        assertEquals(3L, replay.latestSeq());
+        assertEquals(List.of(1L, 3L), replay.events().stream().map(WebSocketEvent::seq).toList());
+    }
+
+    @Test
+    void replaySince_ReplaysEachDestinationFromItsOwnPosition() {
+        // Given: the control frame (seq 2) went out before the channel frame (seq 1, 3)
+        eventLog.append(GENERAL, WebSocketEvent.DELETE_MESSAGE, "a");
+        eventLog.append(CONTROL, WebSocketEvent.MUTE_STATUS, true);
+        eventLog.append(GENERAL, WebSocketEvent.DELETE_MESSAGE, "b");
+
+        // When: the client saw the control frame, then lost the connection
+        Map<String, Long> afterSeqs = new HashMap<>();
+        afterSeqs.put(GENERAL, 0L);
+        afterSeqs.put(CONTROL, 2L);
+        afterSeqs.put(OTHER, null);
+        EventReplay replay = eventLog.replaySince(eventLog.getLogId(), afterSeqs);
+
+        // Then
+        assertFalse(replay.snapshotRequired());
+        assertEquals(List.of(1L, 3L), replay.events().stream().map(WebSocketEvent::seq).toList());
+    }
+
+    @Test
+    void replaySince_WithoutPositionReturnsCurrentPositionOnly() {
+        // Given
+        eventLog.append(GENERAL, WebSocketEvent.DELETE_MESSAGE, "a");
+
+        // When
+        EventReplay replay = eventLog.replaySince(null, Collections.singletonMap(GENERAL, null));
+
+        // Then
+        assertFalse(replay.snapshotRequired());
+        assertEquals(1L, replay.latestSeq());
+        assertTrue(replay.events().isEmpty());
+    }
+
+    @Test
+    void replaySince_RequiresSnapshotWhenMissedEventsWereEvicted() {
+        // Given: capacity 3, so event 1 falls out
+        for (int i = 0; i < 4; i++) {
+            eventLog.append(GENERAL, WebSocketEvent.DELETE_MESSAGE, "m" + i);
+        }
+
+        // When
+        EventReplay stale = eventLog.replaySince(eventLog.getLogId(), Map.of(GENERAL, 0L));
+        EventReplay recent = eventLog.replaySince(eventLog.getLogId(), Map.of(GENERAL, 1L));
+
+        // Then
+        assertTrue(stale.snapshotRequired());
+        assertFalse(recent.snapshotRequired());
+        assertEquals(3, recent.events().size());
+    }
+
+    @Test
+    void replaySince_DoesNotRequireSnapshotWhenOnlyOtherDestinationsWereEvicted() {
+        // Given: one event on general, then enough on a busy channel to push it out
+        eventLog.append(GENERAL, WebSocketEvent.DELETE_MESSAGE, "a");
+        for (int i = 0; i < 4; i++) {
+            eventLog.append(OTHER, WebSocketEvent.DELETE_MESSAGE, "m" + i);
+        }
+
+        // When: a general client that saw event 1, and one that missed it
+        EventReplay quiet = eventLog.replaySince(eventLog.getLogId(), Map.of(GENERAL, 1L));
+        EventReplay missed = eventLog.replaySince(eventLog.getLogId(), Map.of(GENERAL, 0L));
+
+        // Then
+        assertFalse(quiet.snapshotRequired());
+        assertTrue(quiet.events().isEmpty());
+        assertEquals(5L, quiet.latestSeq());
+        assertTrue(missed.snapshotRequired());
+    }
+
+    @Test
+    void replaySince_RequiresSnapshotForAnotherLog() {
+        // Given
+        eventLog.append(GENERAL, WebSocketEvent.DELETE_MESSAGE, "a");
+
+        // When
+        EventReplay replay = eventLog.replaySince("previous-instance", Map.of(GENERAL, 1L));
+
+        // Then
+        assertTrue(replay.snapshotRequired());
+        assertEquals(eventLog.getLogId(), replay.logId());
+    }
+}
@@ -0,0 +1,84 @@
+package com.changrui.mysterious.domain.onlinecount.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for PresenceRegistry.
+ */
+class PresenceRegistryTest {
+
+    private PresenceRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new PresenceRegistry();
+    }
+
+    @Test
+    void connect_CountsEachUserOnce() {
+        // When: one user with two tabs, and a session without a user id
+        boolean first = registry.connect("tab-1", "alice", 0, 0);
+        boolean second = registry.connect("tab-2", "alice", 0, 0);
+        registry.connect("anonymous", null, 0, 0);
+
+        // Then
+        assertTrue(first);
+        assertFalse(second);
+        assertEquals(2, registry.userCount());
+        assertEquals(3, registry.sessionCount());
+
+        // When / Then: the user stays online until the last tab closes
+        assertFalse(registry.disconnect("tab-1"));
+        assertTrue(registry.disconnect("tab-2"));
+        assertFalse(registry.disconnect("tab-2"));
+        assertEquals(1, registry.userCount());
+    }
+
+    @Test
+    void reap_DropsOnlySilentSessionsWithHeartbeats() {
+        // Given: heartbeats every 1000 ms, except for the last session
+        registry.connect("alive", "alice", 1000, 0);
+        registry.connect("silent", "bob", 1000, 0);
+        registry.connect("no-heartbeat", "carol", 0, 0);
+
+        // When
+        registry.touch("alive", 9000);
+        List<String> reaped = registry.reap(10000);
+
+        // Then
+        assertEquals(List.of("silent"), reaped);
+        assertEquals(2, registry.userCount());
+        assertTrue(registry.reap(12000).isEmpty());
+    }
+
+    @Test
+    void subscribe_TracksUsersPerChannel() {
+        // Given
+        registry.connect("tab-1", "alice", 0, 0);
+        registry.connect("tab-2", "alice", 0, 0);
+        registry.connect("s-bob", "bob", 0, 0);
+        registry.connect("anonymous", null, 0, 0);
+
+        // When
+        registry.subscribe("tab-1", "sub-0", "general");
+        registry.subscribe("tab-2", "sub-0", "general");
+        registry.subscribe("s-bob", "sub-0", "general");
+        registry.subscribe("s-bob", "sub-1", "random");
+        registry.subscribe("anonymous", "sub-0", "general");
+
+        // Then
+        assertEquals(3, registry.userCount("general"));
+        assertEquals(Set.of("alice", "bob"), registry.userIds("general"));
+
+        // When / Then: leaving by unsubscribing or by disconnecting
+        registry.unsubscribe("tab-1", "sub-0");
+        registry.disconnect("s-bob");
+        assertEquals(Set.of("alice"), registry.userIds("general"));
+        assertEquals(0, registry.userCount("random"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.changrui.mysterious.domain.onlinecount.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for UserSketch.
+ */
+class UserSketchTest {
+
+    @Test
+    void merge_IsExactBelowTheLimit() {
+        // Given: two nodes sharing one user
+        UserSketch first = UserSketch.of(List.of("user:alice", "user:bob"));
+        UserSketch second = UserSketch.of(List.of("user:alice", "user:carol", "user:carol"));
+
+        // When
+        first.merge(second);
+
+        // Then
+        assertEquals(3, first.cardinality());
+    }
+
+    @Test
+    void merge_StaysWithinOnePercentAtScale() {
+        // Given: three nodes of 50,000 users, each sharing half of its users with the next
+        UserSketch union = new UserSketch();
+        for (int node = 0; node < 3; node++) {
+            UserSketch sketch = users(node * 25_000, node * 25_000 + 50_000);
+            union.merge(UserSketch.fromBytes(sketch.toBytes()));
+        }
+
+        // Then: 100,000 distinct users
+        long estimate = union.cardinality();
+        assertTrue(Math.abs(estimate - 100_000) <= 1_000, "estimate " + estimate);
+    }
+
+    @Test
+    void toBytes_StaysBoundedAndRoundTrips() {
+        // Given
+        UserSketch small = users(0, 100);
+        UserSketch large = users(0, 1_000_000);
+
+        // When
+        byte[] smallBytes = small.toBytes();
+        byte[] largeBytes = large.toBytes();
+
+        // Then: a million users take no more room than a few thousand
+        assertTrue(largeBytes.length <= (1 << UserSketch.PRECISION) + 2);
+        assertTrue(users(0, UserSketch.EXACT_LIMIT).toBytes().length <= largeBytes.length + 8);
+        assertEquals(100, UserSketch.fromBytes(smallBytes).cardinality());
+        assertEquals(large.cardinality(), UserSketch.fromBytes(largeBytes).cardinality());
+        assertThrows(IllegalArgumentException.class, () -> UserSketch.fromBytes(new byte[] { 1, 14, 0 }));
+    }
+
+    private static UserSketch users(int from, int to) {
+        return UserSketch.of(IntStream.range(from, to).mapToObj(i -> "user:" + i).toList());
+    }
+}
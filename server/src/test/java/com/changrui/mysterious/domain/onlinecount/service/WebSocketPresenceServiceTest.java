@@ -0,0 +1,188 @@
+package com.changrui.mysterious.domain.onlinecount.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.changrui.mysterious.domain.onlinecount.repository.LocalPresenceSketchStore;
+import com.changrui.mysterious.domain.onlinecount.repository.PresenceSketchStore;
+import com.changrui.mysterious.domain.onlinecount.service.WebSocketPresenceService.PresenceUpdate;
+import com.changrui.mysterious.shared.cluster.LocalEventRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+/**
+ * Unit tests for WebSocketPresenceService, including a reconnect storm:
+ * 1,000 clients reconnecting after a deploy, each subscribed to presence.
+ */
+class WebSocketPresenceServiceTest {
+
+    private static final int CLIENTS = 1000;
+
+    private SimpMessagingTemplate messagingTemplate;
+    private final PresenceRegistry registry = new PresenceRegistry();
+    private WebSocketPresenceService service;
+    private final AtomicLong broadcasts = new AtomicLong();
+    // Frames delivered: each broadcast reaches every connected session
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicReference<PresenceUpdate> lastUpdate = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() {
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        doAnswer(invocation -> {
+            PresenceUpdate update = invocation.getArgument(1);
+            broadcasts.incrementAndGet();
+            frames.addAndGet(update.count());
+            lastUpdate.set(update);
+            return null;
+        }).when(messagingTemplate).convertAndSend(eq("/topic/presence"), any(Object.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void reconnectStorm_WithoutWindow_BroadcastsEveryChange() {
+        // Given: every change sent at once, as before windows existed
+        service = newService(0);
+
+        // When
+        for (int i = 0; i < CLIENTS; i++) {
+            service.userConnected("session-" + i, "user-" + i, 0);
+        }
+
+        // Then: O(N²) frames
+        assertEquals(CLIENTS, broadcasts.get());
+        assertEquals((long) CLIENTS * (CLIENTS + 1) / 2, frames.get());
+    }
+
+    @Test
+    void reconnectStorm_WithWindow_BroadcastsOncePerWindow() throws Exception {
+        // Given
+        long windowMillis = 20;
+        service = newService(windowMillis);
+
+        // When: the clients come back over about 200 ms
+        long start = System.nanoTime();
+        for (int i = 0; i < CLIENTS; i++) {
+            service.userConnected("session-" + i, "user-" + i, 0);
+            LockSupport.parkNanos(200_000);
+        }
+        long stormMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        awaitCount(CLIENTS);
+
+        // Then: one broadcast per window at most, each frame reaching at most every client
+        long maxBroadcasts = stormMillis / windowMillis + 2;
+        assertTrue(broadcasts.get() <= maxBroadcasts,
+                broadcasts.get() + " broadcasts during a " + stormMillis + " ms storm");
+        assertTrue(frames.get() <= maxBroadcasts * CLIENTS, frames.get() + " frames");
+    }
+
+    @Test
+    void broadcastOnlineCount_SkipsUnchangedCount() throws Exception {
+        // Given
+        service = newService(10);
+        service.userConnected("s1", "u1", 0);
+        awaitCount(1);
+        broadcasts.set(0);
+
+        // When: a client drops and comes back within one window
+        service.userDisconnected("s1");
+        service.userConnected("s1", "u1", 0);
+        Thread.sleep(50);
+
+        // Then
+        assertEquals(0, broadcasts.get());
+    }
+
+    @Test
+    void userConnected_CountsUsersRatherThanSessions() {
+        // Given
+        service = newService(0);
+
+        // When: one user with three tabs, and two sessions without a user id
+        service.userConnected("tab-1", "alice", 0);
+        service.userConnected("tab-2", "alice", 0);
+        service.userConnected("tab-3", "alice", 0);
+        service.userConnected("anonymous-1", null, 0);
+        service.userConnected("anonymous-2", null, 0);
+        service.userDisconnected("tab-1");
+
+        // Then: the extra tabs were never broadcast
+        assertEquals(3, service.getOnlineCount());
+        assertEquals(3, broadcasts.get());
+    }
+
+    @Test
+    void reapStaleSessions_DropsSessionsThatMissedHeartbeats() throws Exception {
+        // Given: a 10 ms heartbeat; one client sends them, the other never does
+        service = newService(0, 10);
+        service.userConnected("alive", "alice", 10);
+        service.userConnected("lost", "bob", 10);
+
+        // When: both go quiet for several heartbeats, then one of them speaks
+        Thread.sleep(60);
+        registry.touch("alive", System.currentTimeMillis());
+        service.reapStaleSessions();
+
+        // Then
+        assertEquals(1, service.getOnlineCount());
+        assertEquals(1, lastUpdate.get().count());
+    }
+
+    @Test
+    void getOnlineCount_CountsUsersOnSeveralNodesOnce() {
+        // Given: two nodes sharing a sketch store
+        PresenceSketchStore store = new LocalPresenceSketchStore();
+        service = newService(store, registry, 0, 10000);
+        WebSocketPresenceService otherNode = newService(store, new PresenceRegistry(), 0, 10000);
+
+        // When: alice is connected to both
+        service.userConnected("a-1", "alice", 0);
+        service.userConnected("a-2", "bob", 0);
+        otherNode.userConnected("b-1", "alice", 0);
+        otherNode.userConnected("b-2", "carol", 0);
+        service.announce();
+
+        // Then
+        assertEquals(3, service.getOnlineCount());
+        assertEquals(3, otherNode.getOnlineCount());
+
+        // When / Then: a node that stops is no longer counted
+        otherNode.shutdown();
+        service.announce();
+        assertEquals(2, service.getOnlineCount());
+    }
+
+    private WebSocketPresenceService newService(long windowMillis) {
+        return newService(windowMillis, 10000);
+    }
+
+    private WebSocketPresenceService newService(long windowMillis, long heartbeatMillis) {
+        return newService(new LocalPresenceSketchStore(), registry, windowMillis, heartbeatMillis);
+    }
+
+    private WebSocketPresenceService newService(PresenceSketchStore store, PresenceRegistry presenceRegistry,
+            long windowMillis, long heartbeatMillis) {
+        return new WebSocketPresenceService(messagingTemplate, new LocalEventRelay(), presenceRegistry, store,
+                new SimpleMeterRegistry(), 60000, windowMillis, heartbeatMillis);
+    }
+
+    private void awaitCount(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (lastUpdate.get() == null || lastUpdate.get().count() != count) {
+            assertTrue(System.currentTimeMillis() < deadline, "presence never reached " + count);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.changrui.mysterious.domain.profile.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.changrui.mysterious.domain.profile.dto.AuthorCard;
+import com.changrui.mysterious.domain.profile.repository.UserProfileRepository;
+import com.changrui.mysterious.shared.cache.ResourceVersions;
+import com.changrui.mysterious.shared.cluster.EventRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+/**
+ * Unit tests for AuthorCardCache.
+ */
+class AuthorCardCacheTest {
+
+    private UserProfileRepository profileRepository;
+    private ApplicationEventPublisher eventPublisher;
+    private AuthorCardCache cache;
+
+    @BeforeEach
+    void setUp() {
+        profileRepository = mock(UserProfileRepository.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        cache = new AuthorCardCache(profileRepository, mock(ResourceVersions.class), mock(EventRelay.class),
+                eventPublisher, new SimpleMeterRegistry(), 100);
+    }
+
+    @Test
+    void getAll_LoadsMissingCardsInOneQueryThenServesFromMemory() {
+        // Given
+        when(profileRepository.findAuthorCards(anyCollection()))
+                .thenReturn(List.of(card("alice", "/a.png"), card("bob", "/b.png")));
+
+        // When
+        Map<String, AuthorCard> first = cache.getAll(List.of("alice", "bob", "anonymous"));
+        Map<String, AuthorCard> second = cache.getAll(List.of("alice", "bob", "anonymous"));
+
+        // Then: users without a profile are cached too
+        assertEquals(Map.of("alice", card("alice", "/a.png"), "bob", card("bob", "/b.png")), first);
+        assertEquals(first, second);
+        assertNull(cache.get("anonymous"));
+        verify(profileRepository, times(1)).findAuthorCards(anyCollection());
+    }
+
+    @Test
+    void evict_ReloadsCardAndAnnouncesChange() {
+        // Given
+        when(profileRepository.findAuthorCards(anyCollection()))
+                .thenReturn(List.of(card("alice", "/a.png")))
+                .thenReturn(List.of(card("alice", "/new.png")));
+        cache.get("alice");
+
+        // When
+        cache.evict("alice");
+
+        // Then
+        assertEquals("/new.png", cache.get("alice").avatarUrl());
+        verify(eventPublisher).publishEvent(new AuthorCardCache.AuthorChanged("alice"));
+    }
+
+    @Test
+    void getAll_DoesNotKeepCardsLoadedBeforeAnEviction() {
+        // Given: an eviction lands while cards are being loaded
+        when(profileRepository.findAuthorCards(anyCollection())).thenAnswer(invocation -> {
+            cache.evict("alice");
+            return List.of(card("alice", "/old.png"));
+        }).thenReturn(List.of(card("alice", "/new.png")));
+
+        // When
+        AuthorCard loaded = cache.get("alice");
+
+        // Then: the stale card is returned once but not cached
+        assertEquals("/old.png", loaded.avatarUrl());
+        assertEquals("/new.png", cache.get("alice").avatarUrl());
+    }
+
+    private static AuthorCard card(String userId, String avatarUrl) {
+        return new AuthorCard(userId, userId, avatarUrl, true);
+    }
+}
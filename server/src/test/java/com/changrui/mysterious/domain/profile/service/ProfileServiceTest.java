@@ -45,6 +45,9 @@ class ProfileServiceTest {
     @Mock
     private UserAchievementRepository userAchievementRepository;
 
+    @Mock
+    private AuthorCardCache authorCardCache;
+
     @InjectMocks
     private ProfileService profileService;
 
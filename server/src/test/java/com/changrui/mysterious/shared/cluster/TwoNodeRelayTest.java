@@ -0,0 +1,287 @@
+package com.changrui.mysterious.shared.cluster;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.changrui.mysterious.domain.messagewall.controller.MessageWebSocketController;
+import com.changrui.mysterious.domain.messagewall.dto.MessageResponse;
+import com.changrui.mysterious.domain.messagewall.dto.WebSocketEvent;
+import com.changrui.mysterious.domain.messagewall.service.BroadcastCoalescer;
+import com.changrui.mysterious.domain.messagewall.service.MessageService;
+import com.changrui.mysterious.domain.messagewall.service.WallEventLog;
+import com.changrui.mysterious.shared.cache.ResourceVersions;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Two server instances sharing the wall through an event relay.
+ * The in-memory transport always runs; the Postgres one runs against the
+ * database given by RELAY_TEST_DB_URL (plus RELAY_TEST_DB_USERNAME and
+ * RELAY_TEST_DB_PASSWORD), e.g. a local docker postgres.
+ */
+class TwoNodeRelayTest {
+
+    private static final String CHANNEL_TOPIC = MessageWebSocketController.channelTopic("general");
+
+    private final List<Runnable> cleanups = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        cleanups.forEach(Runnable::run);
+    }
+
+    @Test
+    void messagePostedOnNodeAReachesSubscribersOfNodeB() {
+        // Given
+        List<InMemoryRelay> network = new CopyOnWriteArrayList<>();
+        Node nodeA = startNode(new InMemoryRelay(network));
+        Node nodeB = startNode(new InMemoryRelay(network));
+
+        // When
+        nodeA.controller().broadcastNewMessage(message("m1"));
+
+        // Then: B updates its caches and sends the event to its own subscribers
+        verify(nodeB.messagingTemplate(), timeout(2000)).convertAndSend(eq(CHANNEL_TOPIC),
+                argThat((Object frame) -> isNewMessage(frame, "m1")));
+        verify(nodeB.messageService()).applyRemoteMessageAdded(argThat(m -> "m1".equals(m.getId())));
+        // A ignores its own event coming back from the transport
+        verify(nodeA.messagingTemplate(), after(300).times(1)).convertAndSend(eq(CHANNEL_TOPIC), any(Object.class));
+    }
+
+    @Test
+    void deliver_DropsDuplicatesFromTheSameOrigin() {
+        // Given
+        List<InMemoryRelay> network = new CopyOnWriteArrayList<>();
+        InMemoryRelay relayA = new InMemoryRelay(network);
+        InMemoryRelay relayB = new InMemoryRelay(network);
+        List<String> received = new CopyOnWriteArrayList<>();
+        relayB.subscribe("test", (origin, payload) -> received.add(payload.asText()));
+
+        relayA.publish("test", "once");
+        awaitTrue(() -> received.size() == 1);
+
+        // When: the transport delivers the same envelope again
+        relayB.deliver(relayA.sent.get(0));
+
+        // Then
+        assertEquals(List.of("once"), received);
+        assertEquals(1, relayB.meterRegistry.get("cluster.relay.lag").timer().count());
+    }
+
+    @Test
+    void publish_FromConcurrentThreads_DeliversEveryEvent() throws InterruptedException {
+        // Given
+        List<InMemoryRelay> network = new CopyOnWriteArrayList<>();
+        InMemoryRelay relayA = new InMemoryRelay(network);
+        InMemoryRelay relayB = new InMemoryRelay(network);
+        List<String> received = new CopyOnWriteArrayList<>();
+        relayB.subscribe("test", (origin, payload) -> received.add(payload.asText()));
+        AtomicInteger resyncs = new AtomicInteger();
+        relayB.onResync(resyncs::incrementAndGet);
+        int threads = 8;
+        int eventsPerThread = 200;
+        ExecutorService publishers = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // When
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            publishers.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < eventsPerThread; i++) {
+                    relayA.publish("test", thread + "-" + i);
+                }
+            });
+        }
+        start.countDown();
+        publishers.shutdown();
+        assertTrue(publishers.awaitTermination(5, TimeUnit.SECONDS));
+
+        // Then: none was taken for a duplicate, and none looked missed
+        awaitTrue(() -> received.size() == threads * eventsPerThread);
+        assertEquals(threads * eventsPerThread, Set.copyOf(received).size());
+        assertEquals(0, resyncs.get());
+    }
+
+    @Test
+    void publish_OversizedEvent_MakesOtherNodesResync() {
+        // Given
+        List<InMemoryRelay> network = new CopyOnWriteArrayList<>();
+        InMemoryRelay relayA = new InMemoryRelay(network);
+        InMemoryRelay relayB = new InMemoryRelay(network);
+        List<String> received = new CopyOnWriteArrayList<>();
+        relayB.subscribe("test", (origin, payload) -> received.add(payload.asText()));
+        AtomicInteger resyncs = new AtomicInteger();
+        relayB.onResync(resyncs::incrementAndGet);
+
+        // When
+        relayA.publish("test", "x".repeat(PostgresEventRelay.MAX_NOTIFY_BYTES));
+        relayA.publish("test", "small");
+
+        // Then
+        awaitTrue(() -> received.size() == 1);
+        assertEquals(List.of("small"), received);
+        assertEquals(1, resyncs.get());
+        assertEquals(1, relayA.meterRegistry.get("cluster.relay.events.dropped").counter().count());
+    }
+
+    @Test
+    void deliver_AfterASequenceGap_Resyncs() {
+        // Given
+        List<InMemoryRelay> network = new CopyOnWriteArrayList<>();
+        InMemoryRelay relayA = new InMemoryRelay(network);
+        InMemoryRelay relayC = new InMemoryRelay(new CopyOnWriteArrayList<>());
+        AtomicInteger resyncs = new AtomicInteger();
+        relayC.onResync(resyncs::incrementAndGet);
+        relayA.publish("test", "first");
+        relayA.publish("test", "second");
+        relayA.publish("test", "third");
+        awaitTrue(() -> relayA.sent.size() == 3);
+
+        // When: C only gets the first and the third
+        relayC.deliver(relayA.sent.get(0));
+        relayC.deliver(relayA.sent.get(2));
+
+        // Then
+        assertEquals(1, resyncs.get());
+    }
+
+    @Test
+    void versionBumpOnNodeAInvalidatesEtagsOnNodeB() {
+        // Given
+        List<InMemoryRelay> network = new CopyOnWriteArrayList<>();
+        ResourceVersions versionsA = new ResourceVersions(new InMemoryRelay(network));
+        ResourceVersions versionsB = new ResourceVersions(new InMemoryRelay(network));
+        long before = versionsB.version(ResourceVersions.SCORES, "snake");
+
+        // When
+        versionsA.bump(ResourceVersions.SCORES, "snake");
+
+        // Then
+        awaitTrue(() -> versionsB.version(ResourceVersions.SCORES, "snake") > before);
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "RELAY_TEST_DB_URL", matches = ".+")
+    void messagePostedOnNodeAReachesNodeBThroughPostgres() throws InterruptedException {
+        // Given
+        Node nodeA = startNode(postgresRelay());
+        Node nodeB = startNode(postgresRelay());
+        // Let both listener threads issue their LISTEN
+        Thread.sleep(1000);
+
+        // When
+        nodeA.controller().broadcastNewMessage(message("m1"));
+
+        // Then
+        verify(nodeB.messagingTemplate(), timeout(5000)).convertAndSend(eq(CHANNEL_TOPIC),
+                argThat((Object frame) -> isNewMessage(frame, "m1")));
+        verify(nodeA.messagingTemplate(), after(500).times(1)).convertAndSend(eq(CHANNEL_TOPIC), any(Object.class));
+    }
+
+    private Node startNode(EventRelay relay) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+        MessageService messageService = mock(MessageService.class);
+        BroadcastCoalescer coalescer = new BroadcastCoalescer(messagingTemplate, 0, meterRegistry);
+        cleanups.add(coalescer::shutdown);
+
+        MessageWebSocketController controller = new MessageWebSocketController();
+        ReflectionTestUtils.setField(controller, "broadcastCoalescer", coalescer);
+        ReflectionTestUtils.setField(controller, "wallEventLog", new WallEventLog(100, meterRegistry));
+        ReflectionTestUtils.setField(controller, "messageService", messageService);
+        ReflectionTestUtils.setField(controller, "eventRelay", relay);
+        ReflectionTestUtils.setField(controller, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.invokeMethod(controller, "subscribeToOtherNodes");
+        return new Node(controller, messagingTemplate, messageService);
+    }
+
+    private PostgresEventRelay postgresRelay() {
+        String url = System.getenv("RELAY_TEST_DB_URL");
+        String username = System.getenv("RELAY_TEST_DB_USERNAME");
+        String password = System.getenv("RELAY_TEST_DB_PASSWORD");
+        PostgresEventRelay relay = new PostgresEventRelay(
+                new JdbcTemplate(new DriverManagerDataSource(url, username, password)),
+                new ObjectMapper(), new SimpleMeterRegistry(), "relay_test", url, username, password);
+        relay.start();
+        cleanups.add(relay::stop);
+        return relay;
+    }
+
+    private static boolean isNewMessage(Object frame, String messageId) {
+        return frame instanceof WebSocketEvent event
+                && WebSocketEvent.NEW_MESSAGE.equals(event.type())
+                && messageId.equals(((MessageResponse) event.payload()).getId());
+    }
+
+    private static MessageResponse message(String id) {
+        MessageResponse message = new MessageResponse();
+        message.setId(id);
+        message.setChannelId("general");
+        message.setMessage("hello");
+        message.setTimestamp(1L);
+        return message;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.onSpinWait();
+        }
+    }
+
+    private record Node(MessageWebSocketController controller, SimpMessagingTemplate messagingTemplate,
+            MessageService messageService) {
+    }
+
+    /**
+     * Transport delivering every message to every relay of the network,
+     * including the sender, like NOTIFY does.
+     */
+    private static final class InMemoryRelay extends AbstractEventRelay {
+
+        private final List<InMemoryRelay> network;
+        private final List<String> sent = new CopyOnWriteArrayList<>();
+        private final SimpleMeterRegistry meterRegistry;
+
+        InMemoryRelay(List<InMemoryRelay> network) {
+            this(network, new SimpleMeterRegistry());
+        }
+
+        private InMemoryRelay(List<InMemoryRelay> network, SimpleMeterRegistry meterRegistry) {
+            super(new ObjectMapper(), meterRegistry, PostgresEventRelay.MAX_NOTIFY_BYTES);
+            this.network = network;
+            this.meterRegistry = meterRegistry;
+            network.add(this);
+        }
+
+        @Override
+        protected void send(String message) {
+            sent.add(message);
+            network.forEach(relay -> relay.deliver(message));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.changrui.mysterious.shared.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.changrui.mysterious.shared.config.SlowConsumerGuard.Policy;
+import com.changrui.mysterious.shared.config.SlowConsumerGuard.ResyncRequired;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Unit tests for SlowConsumerGuard.
+ */
+class SlowConsumerGuardTest {
+
+    private static final int MAX_PENDING = 4;
+
+    private ApplicationEventPublisher eventPublisher;
+    private SimpleMeterRegistry meterRegistry;
+    private MessageChannel outboundChannel;
+    // Session handed to the transport, by socket
+    private final Map<WebSocketSession, WebSocketSession> trackedSessions = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        meterRegistry = new SimpleMeterRegistry();
+        outboundChannel = mock(MessageChannel.class);
+    }
+
+    @Test
+    void drop_DropsFramesWhileLaggingThenAsksForResync() throws Exception {
+        // Given
+        SlowConsumerGuard guard = guard(Policy.DROP);
+        WebSocketSession socket = connect(guard, "s1");
+        sendFrames(guard, "s1", "/topic/messages/general", MAX_PENDING);
+
+        // When: the session is full and more frames come
+        Message<?> dropped = guard.preSend(frame("s1", "/topic/messages/general"), outboundChannel);
+
+        // Then
+        assertNull(dropped);
+        assertTrue(guard.isLagging("s1"));
+        assertEquals(1, meterRegistry.get("websocket.sessions.lagging").gauge().value());
+        assertEquals(1, meterRegistry.get("websocket.frames.dropped").counter().count());
+
+        // When: the socket catches up
+        writeFrames(socket, MAX_PENDING / 2);
+
+        // Then
+        assertFalse(guard.isLagging("s1"));
+        verify(eventPublisher).publishEvent(new ResyncRequired("s1"));
+    }
+
+    @Test
+    void laggingSession_DoesNotHoldBackOtherSessions() throws Exception {
+        // Given
+        SlowConsumerGuard guard = guard(Policy.DROP);
+        connect(guard, "slow");
+        connect(guard, "fast");
+        sendFrames(guard, "slow", "/topic/presence", MAX_PENDING + 3);
+
+        // When
+        Message<?> frame = frame("fast", "/topic/presence");
+
+        // Then
+        assertSame(frame, guard.preSend(frame, outboundChannel));
+        assertTrue(guard.isLagging("slow"));
+        assertFalse(guard.isLagging("fast"));
+    }
+
+    @Test
+    void coalesce_SendsNewestFramePerDestinationOnceCaughtUp() throws Exception {
+        // Given
+        SlowConsumerGuard guard = guard(Policy.COALESCE);
+        WebSocketSession socket = connect(guard, "s1");
+        sendFrames(guard, "s1", "/topic/presence", MAX_PENDING);
+        guard.preSend(frame("s1", "/topic/presence"), outboundChannel);
+        Message<?> newestPresence = frame("s1", "/topic/presence");
+        assertNull(guard.preSend(newestPresence, outboundChannel));
+
+        // When
+        writeFrames(socket, MAX_PENDING / 2);
+
+        // Then: the replaced presence frame makes the session reload
+        verify(outboundChannel).send(newestPresence);
+        verify(outboundChannel, times(1)).send(any());
+        verify(eventPublisher).publishEvent(new ResyncRequired("s1"));
+    }
+
+    @Test
+    void disconnect_ClosesLaggingSession() throws Exception {
+        // Given
+        SlowConsumerGuard guard = guard(Policy.DISCONNECT);
+        WebSocketSession socket = connect(guard, "s1");
+        when(socket.isOpen()).thenReturn(true);
+        sendFrames(guard, "s1", "/topic/messages/general", MAX_PENDING);
+
+        // When
+        guard.preSend(frame("s1", "/topic/messages/general"), outboundChannel);
+
+        // Then
+        verify(socket).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(1, meterRegistry.get("websocket.sessions.disconnected.slow").counter().count());
+    }
+
+    private SlowConsumerGuard guard(Policy policy) {
+        return new SlowConsumerGuard(eventPublisher, meterRegistry, policy, MAX_PENDING);
+    }
+
+    /**
+     * Open a session through the decorated handler.
+     *
+     * @return the socket, whose writes are made through the tracked session
+     */
+    private WebSocketSession connect(SlowConsumerGuard guard, String sessionId) throws Exception {
+        WebSocketSession socket = mock(WebSocketSession.class);
+        when(socket.getId()).thenReturn(sessionId);
+        WebSocketHandler handler = mock(WebSocketHandler.class);
+        guard.decorate(handler).afterConnectionEstablished(socket);
+
+        ArgumentCaptor<WebSocketSession> tracked = ArgumentCaptor.forClass(WebSocketSession.class);
+        verify(handler).afterConnectionEstablished(tracked.capture());
+        trackedSessions.put(socket, tracked.getValue());
+        return socket;
+    }
+
+    private void writeFrames(WebSocketSession socket, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            trackedSessions.get(socket).sendMessage(new TextMessage("frame"));
+        }
+    }
+
+    private void sendFrames(SlowConsumerGuard guard, String sessionId, String destination, int count) {
+        for (int i = 0; i < count; i++) {
+            guard.preSend(frame(sessionId, destination), outboundChannel);
+        }
+    }
+
+    private static Message<?> frame(String sessionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[] { '{', '}' }, accessor.getMessageHeaders());
+    }
+}
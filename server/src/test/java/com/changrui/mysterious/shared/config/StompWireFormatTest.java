@@ -0,0 +1,112 @@
+package com.changrui.mysterious.shared.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.changrui.mysterious.shared.config.StompWireFormat.Encoding;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Unit tests for StompWireFormat.
+ */
+class StompWireFormatTest {
+
+    private static final byte[] EVENT = """
+            {"type":"NEW_MESSAGE","seq":42,"payload":{"id":"m1","isAnonymous":false,"timestamp":1767225600000,
+            "reactions":[{"emoji":"👍","count":2,"users":[]}]}}""".getBytes(StandardCharsets.UTF_8);
+
+    private final StompWireFormat wireFormat = new StompWireFormat();
+
+    @Test
+    void nativeSessionAskingForCbor_ReceivesCborFrames() throws Exception {
+        // Given
+        wireFormat.preSend(connect("s1", true, "application/cbor"), null);
+
+        // When
+        Message<?> sent = wireFormat.preSend(message("s1", EVENT), null);
+
+        // Then
+        assertEquals("application/octet-stream;format=cbor",
+                sent.getHeaders().get(MessageHeaders.CONTENT_TYPE).toString());
+        assertEquals(new ObjectMapper().readTree(EVENT), new CBORMapper().readTree((byte[]) sent.getPayload()));
+        assertTrue(((byte[]) sent.getPayload()).length < EVENT.length);
+    }
+
+    @Test
+    void sockJsSession_StaysOnJson() {
+        // Given
+        wireFormat.preSend(connect("s1", false, "application/cbor"), null);
+        Message<byte[]> json = message("s1", EVENT);
+
+        // When / Then
+        assertSame(json, wireFormat.preSend(json, null));
+    }
+
+    @Test
+    void wildcardAccept_StaysOnJson() {
+        wireFormat.preSend(connect("s1", true, "*/*, application/json"), null);
+
+        assertNull(wireFormat.encodingOf("s1"));
+    }
+
+    @Test
+    void samePayload_IsEncodedOnceForAllSessions() {
+        // Given
+        wireFormat.preSend(connect("s1", true, "application/cbor"), null);
+        wireFormat.preSend(connect("s2", true, "application/cbor"), null);
+
+        // When
+        Object first = wireFormat.preSend(message("s1", EVENT), null).getPayload();
+        Object second = wireFormat.preSend(message("s2", EVENT), null).getPayload();
+
+        // Then
+        assertSame(first, second);
+    }
+
+    @Test
+    void disconnect_ForgetsNegotiatedEncoding() {
+        // Given
+        wireFormat.preSend(connect("s1", true, "application/x-jackson-smile"), null);
+        assertEquals(Encoding.SMILE, wireFormat.encodingOf("s1"));
+
+        // When
+        StompHeaderAccessor disconnect = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        disconnect.setSessionId("s1");
+        wireFormat.preSend(MessageBuilder.createMessage(new byte[0], disconnect.getMessageHeaders()), null);
+
+        // Then
+        assertNull(wireFormat.encodingOf("s1"));
+    }
+
+    private static Message<byte[]> connect(String sessionId, boolean nativeWebSocket, String accept) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        Map<String, Object> attributes = new HashMap<>();
+        if (nativeWebSocket) {
+            attributes.put(StompWireFormat.BINARY_FRAMES_ATTRIBUTE, Boolean.TRUE);
+        }
+        accessor.setSessionAttributes(attributes);
+        accessor.setNativeHeader(StompWireFormat.ACCEPT_HEADER, accept);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> message(String sessionId, byte[] payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination("/topic/messages/general");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+}
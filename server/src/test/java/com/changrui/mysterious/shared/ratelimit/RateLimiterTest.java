@@ -0,0 +1,111 @@
+package com.changrui.mysterious.shared.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.changrui.mysterious.shared.exception.RateLimitExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/**
+ * Unit tests for RateLimiter.
+ */
+class RateLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void check_ThrowsWithRetryAfterOnceLimitReached() {
+        // Given
+        RateLimiter limiter = new RateLimiter("message_post=2/1m", "100/1m", 1000,
+                RateLimiter.DEFAULT_TRUSTED_PROXIES, meterRegistry, clock::get);
+        limiter.check(RateLimiter.MESSAGE_POST, "user:a");
+        limiter.check(RateLimiter.MESSAGE_POST, "user:a");
+
+        // When
+        RateLimitExceededException ex = assertThrows(RateLimitExceededException.class,
+                () -> limiter.check(RateLimiter.MESSAGE_POST, "user:a"));
+
+        // Then
+        assertEquals(30, ex.getRetryAfterSeconds());
+        assertEquals(1, meterRegistry.get("ratelimit.rejected").tag("operation", "message_post").counter().count());
+    }
+
+    @Test
+    void check_UsesDefaultLimitForUnlistedOperations() {
+        // Given
+        RateLimiter limiter = new RateLimiter("message_post=2/1m", "1/1h", 1000,
+                RateLimiter.DEFAULT_TRUSTED_PROXIES, meterRegistry, clock::get);
+        limiter.check("profile_view", "user:a");
+
+        // When / Then
+        assertThrows(RateLimitExceededException.class, () -> limiter.check("profile_view", "user:a"));
+        limiter.check(RateLimiter.MESSAGE_POST, "user:a");
+    }
+
+    @Test
+    void clientKey_UsesAddressAppendedByProxy() {
+        // Given: the client sent a forged first entry, the proxy appended the real one
+        RateLimiter limiter = newLimiter("10.0.0.0/8");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.2");
+        request.addHeader("X-Forwarded-For", "198.51.100.1, 203.0.113.7");
+        MockHttpServletRequest direct = new MockHttpServletRequest();
+        direct.setRemoteAddr("10.0.0.3");
+
+        // When / Then
+        assertEquals("ip:203.0.113.7", limiter.clientKey(request));
+        assertEquals("ip:10.0.0.3", limiter.clientKey(direct));
+    }
+
+    @Test
+    void clientKey_SkipsTrustedProxiesInForwardedChain() {
+        // Given: two proxies in a row
+        RateLimiter limiter = newLimiter("10.0.0.0/8, 192.168.1.10");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.2");
+        request.addHeader("X-Forwarded-For", "198.51.100.1, 203.0.113.7, 192.168.1.10");
+
+        // When / Then
+        assertEquals("ip:203.0.113.7", limiter.clientKey(request));
+    }
+
+    @Test
+    void clientKey_IgnoresForwardingHeadersFromUntrustedSenders() {
+        // Given: a client reaching the server directly, with a new forged address on each request
+        RateLimiter limiter = newLimiter("10.0.0.0/8");
+        MockHttpServletRequest forwardedFor = new MockHttpServletRequest();
+        forwardedFor.setRemoteAddr("198.51.100.9");
+        forwardedFor.addHeader("X-Forwarded-For", "203.0.113.7");
+        MockHttpServletRequest realIp = new MockHttpServletRequest();
+        realIp.setRemoteAddr("198.51.100.9");
+        realIp.addHeader("X-Real-IP", "203.0.113.8");
+
+        // When / Then
+        assertEquals("ip:198.51.100.9", limiter.clientKey(forwardedFor));
+        assertEquals("ip:198.51.100.9", limiter.clientKey(realIp));
+    }
+
+    @Test
+    void constructor_RejectsInvalidTrustedProxies() {
+        assertThrows(IllegalArgumentException.class, () -> newLimiter("proxy.internal"));
+        assertThrows(IllegalArgumentException.class, () -> newLimiter("10.0.0.0/33"));
+    }
+
+    @Test
+    void sessionClientKey_UsesHandshakeAddress() {
+        // Given
+        Map<String, Object> attributes = Map.of(RateLimiter.CLIENT_IP_ATTRIBUTE, "203.0.113.7");
+
+        // When / Then
+        assertEquals("ip:203.0.113.7", RateLimiter.sessionClientKey(attributes, "s1"));
+        assertEquals("session:s1", RateLimiter.sessionClientKey(null, "s1"));
+    }
+
+    private RateLimiter newLimiter(String trustedProxies) {
+        return new RateLimiter("message_post=2/1m", "100/1m", 1000, trustedProxies, meterRegistry, clock::get);
+    }
+}
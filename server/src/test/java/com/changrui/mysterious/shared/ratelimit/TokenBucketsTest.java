@@ -0,0 +1,81 @@
+package com.changrui.mysterious.shared.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for TokenBuckets.
+ */
+class TokenBucketsTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    // Any origin: nanoTime values can be negative
+    private static final long T0 = -42 * SECOND;
+
+    @Test
+    void tryAcquire_AllowsBurstThenReportsWait() {
+        // Given: 5 tokens, one every 2 seconds
+        TokenBuckets buckets = new TokenBuckets(5, Duration.ofSeconds(10), 1000);
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, buckets.tryAcquire("user:a", T0));
+        }
+        long wait = buckets.tryAcquire("user:a", T0);
+
+        // Then
+        assertEquals(2 * SECOND, wait);
+        assertEquals(0, buckets.tryAcquire("user:b", T0), "other clients have their own bucket");
+    }
+
+    @Test
+    void tryAcquire_RefillsOverTime() {
+        // Given
+        TokenBuckets buckets = new TokenBuckets(5, Duration.ofSeconds(10), 1000);
+        for (int i = 0; i < 5; i++) {
+            buckets.tryAcquire("user:a", T0);
+        }
+
+        // When / Then: one token back every 2 seconds
+        assertEquals(SECOND, buckets.tryAcquire("user:a", T0 + SECOND));
+        assertEquals(0, buckets.tryAcquire("user:a", T0 + 2 * SECOND));
+        assertTrue(buckets.tryAcquire("user:a", T0 + 2 * SECOND) > 0);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, buckets.tryAcquire("user:a", T0 + 12 * SECOND));
+        }
+    }
+
+    @Test
+    void evictIdle_DropsOnlyFullBuckets() {
+        // Given
+        TokenBuckets buckets = new TokenBuckets(5, Duration.ofSeconds(10), 1000);
+        buckets.tryAcquire("user:idle", T0);
+        buckets.tryAcquire("user:busy", T0 + 9 * SECOND);
+
+        // When
+        int evicted = buckets.evictIdle(T0 + 10 * SECOND);
+
+        // Then
+        assertEquals(1, evicted);
+        assertEquals(1, buckets.size());
+    }
+
+    @Test
+    void tryAcquire_SharesOverflowBucketWhenFullOfActiveClients() {
+        // Given: one key per stripe at most, all of them active
+        TokenBuckets buckets = new TokenBuckets(2, Duration.ofSeconds(10), 16);
+        for (int i = 0; i < 1000; i++) {
+            buckets.tryAcquire("ip:10.0.0." + i, T0);
+        }
+
+        // Then: memory stays bounded and the flood of new keys is itself limited
+        assertTrue(buckets.size() <= 16);
+        assertTrue(buckets.tryAcquire("ip:192.168.1.1", T0) > 0);
+
+        // When: tracked clients become idle
+        // Then: new clients get their own bucket again
+        assertEquals(0, buckets.tryAcquire("ip:192.168.1.1", T0 + 20 * SECOND));
+    }
+}